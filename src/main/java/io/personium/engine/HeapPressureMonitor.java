@@ -0,0 +1,265 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.engine.model.ScriptCacheMap;
+
+/**
+ * Sheds the engine caches when the old generation stays full after garbage collection.
+ * The collection usage threshold of the old generation pool is set to the high watermark. Each time
+ * the usage after a collection is above it, the caches are shed one stage further: the coldest half of
+ * the user scripts, then the compiled scripts, then all user scripts. The engine libraries are kept, since
+ * every request needs them and they would only be compiled again at once.
+ * Once the usage after a collection falls below the low watermark, shedding stops and starts over
+ * from the first stage on the next pressure.
+ */
+final class HeapPressureMonitor implements NotificationListener {
+    /** Logger Object. */
+    private static Logger log = LoggerFactory.getLogger(HeapPressureMonitor.class);
+
+    /**
+     * Shedding stages, in order.
+     */
+    enum Stage {
+        /** No pressure. */
+        NONE,
+        /** The less frequently used half of the user scripts is evicted. */
+        COLDEST,
+        /** User scripts compiled to JVM bytecode are evicted. */
+        COMPILED,
+        /** All user scripts are evicted. */
+        ALL
+    }
+
+    /** Interval(msec) of watching the collections while under pressure. */
+    private static final long POLL_INTERVAL = 1000;
+
+    /** Monitor installed on the JVM. */
+    private static HeapPressureMonitor installed;
+
+    private final double highWatermark;
+    private final double lowWatermark;
+    private final ScriptCacheMap userScriptCache;
+
+    /** Current stage. Guarded by this. */
+    private Stage stage = Stage.NONE;
+    /** Old generation pool watched. Null when not installed. */
+    private MemoryPoolMXBean pool;
+    /** Collection count of the pool when its usage was last evaluated. Guarded by this. */
+    private long evaluatedCollections = -1;
+
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong shedEntries = new AtomicLong();
+    private final AtomicLong recoveries = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param highWatermark used ratio of the old generation at which shedding starts
+     * @param lowWatermark used ratio of the old generation below which shedding stops
+     * @param userScriptCache user script cache
+     */
+    HeapPressureMonitor(double highWatermark, double lowWatermark, ScriptCacheMap userScriptCache) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+        this.userScriptCache = userScriptCache;
+    }
+
+    /**
+     * Watch the old generation of the JVM and shed the caches under pressure.
+     * Does nothing when the JVM has no old generation pool supporting the collection usage threshold.
+     * @param highWatermark used ratio of the old generation at which shedding starts
+     * @param lowWatermark used ratio of the old generation below which shedding stops
+     * @param userScriptCache user script cache
+     */
+    static synchronized void install(double highWatermark, double lowWatermark, ScriptCacheMap userScriptCache) {
+        if (installed != null) {
+            return;
+        }
+        MemoryPoolMXBean oldGen = findOldGen();
+        if (oldGen == null || oldGen.getUsage().getMax() <= 0) {
+            log.info("Heap pressure monitoring is disabled: no old generation pool with a max size.");
+            return;
+        }
+        HeapPressureMonitor monitor = new HeapPressureMonitor(highWatermark, lowWatermark, userScriptCache);
+        monitor.pool = oldGen;
+        oldGen.setCollectionUsageThreshold((long) (oldGen.getUsage().getMax() * monitor.highWatermark));
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(monitor, null, null);
+        // Usage falling below the low watermark is not notified, so it is watched by polling.
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "personium-heap-pressure");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(monitor::poll, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        installed = monitor;
+        log.info(String.format("Heap pressure monitoring of %s: shed at %.2f, recover at %.2f.",
+                oldGen.getName(), monitor.highWatermark, monitor.lowWatermark));
+    }
+
+    /**
+     * Counters of the monitor installed on the JVM.
+     * stage is the ordinal of the current stage, events the number of stages entered,
+     * shedEntries the number of cache entries evicted and recoveries the number of times the pressure ended.
+     * @return counters by name, empty if not installed
+     */
+    static synchronized Map<String, Long> getInstalledStats() {
+        if (installed == null) {
+            return new LinkedHashMap<String, Long>();
+        }
+        return installed.getStats();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            return;
+        }
+        MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+        if (pool.getName().equals(info.getPoolName())) {
+            evaluate(info.getUsage(), collectionCount(pool));
+        }
+    }
+
+    /**
+     * Evaluate the usage after the collections not notified, while under pressure.
+     */
+    private void poll() {
+        try {
+            if (getStage() != Stage.NONE) {
+                evaluate(pool.getCollectionUsage(), collectionCount(pool));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to watch heap pressure: " + e.getMessage());
+        }
+    }
+
+    private synchronized void evaluate(MemoryUsage usage, long collections) {
+        if (usage == null || collections == evaluatedCollections) {
+            return;
+        }
+        evaluatedCollections = collections;
+        update(usage.getUsed(), usage.getMax());
+    }
+
+    /**
+     * Shed the caches one stage further if the usage after a collection is above the high watermark,
+     * or end the pressure if it is below the low watermark.
+     * @param used used size(bytes) of the old generation after a collection
+     * @param max max size(bytes) of the old generation
+     * @return current stage
+     */
+    synchronized Stage update(long used, long max) {
+        if (max <= 0) {
+            return stage;
+        }
+        double ratio = (double) used / max;
+        if (ratio >= highWatermark && stage != Stage.ALL) {
+            stage = Stage.values()[stage.ordinal() + 1];
+            events.incrementAndGet();
+            int count = shed(stage);
+            shedEntries.addAndGet(count);
+            log.warn(String.format("Heap pressure: old generation %.2f used after collection. "
+                    + "Shed %d cache entries (stage %s).", ratio, count, stage));
+        } else if (ratio < lowWatermark && stage != Stage.NONE) {
+            log.info(String.format("Heap pressure ended: old generation %.2f used after collection (stage %s).",
+                    ratio, stage));
+            stage = Stage.NONE;
+            recoveries.incrementAndGet();
+        }
+        return stage;
+    }
+
+    private int shed(Stage target) {
+        switch (target) {
+        case COLDEST:
+            return userScriptCache.shedColdest(userScriptCache.getWeightedSize() / 2);
+        case COMPILED:
+            return userScriptCache.shedIf(cache -> cache.getCurrentOptimizationLevel() >= 0);
+        case ALL:
+            return userScriptCache.shedIf(cache -> true);
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Get current stage.
+     * @return stage
+     */
+    synchronized Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * Counters of the monitor.
+     * @return stage, events, shedEntries and recoveries
+     */
+    synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        stats.put("stage", (long) stage.ordinal());
+        stats.put("events", events.get());
+        stats.put("shedEntries", shedEntries.get());
+        stats.put("recoveries", recoveries.get());
+        return stats;
+    }
+
+    private static MemoryPoolMXBean findOldGen() {
+        for (MemoryPoolMXBean candidate : ManagementFactory.getMemoryPoolMXBeans()) {
+            String name = candidate.getName();
+            if (candidate.getType() == MemoryType.HEAP && candidate.isCollectionUsageThresholdSupported()
+                    && (name.contains("Old") || name.contains("Tenured"))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static long collectionCount(MemoryPoolMXBean target) {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (Arrays.asList(gc.getMemoryPoolNames()).contains(target.getName())) {
+                count += gc.getCollectionCount();
+            }
+        }
+        return count;
+    }
+}
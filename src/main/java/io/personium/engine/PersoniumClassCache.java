@@ -0,0 +1,95 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import org.mozilla.javascript.ClassCache;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Process-wide Rhino ClassCache.
+ * Rhino keeps the reflected Java members (JavaMembers) in a ClassCache bound to a top-level scope,
+ * so they were reflected again for every request scope. This cache is registered on every top-level
+ * scope created by the engine, while the members it holds stay bound to one long-lived sealed scope.
+ * The reflected methods are not returned to scripts as is, but through functions of each scope
+ * (see PersoniumWrapFactory), so that a script cannot modify them for the other scopes.
+ */
+@SuppressWarnings("serial")
+public final class PersoniumClassCache extends ClassCache {
+
+    /** Key under which Rhino looks up the ClassCache of a top-level scope. */
+    private static final String CLASS_CACHE_KEY = "ClassCache";
+
+    /** Singleton. */
+    private static volatile PersoniumClassCache singleton;
+
+    /**
+     * Constructor.
+     * @param cx Rhino Context
+     */
+    private PersoniumClassCache(Context cx) {
+        // The owner scope is the scope the reflected members (NativeJavaMethod etc.) belong to.
+        ScriptableObject ownerScope = new NativeObject();
+        super.associate(ownerScope);
+        cx.initStandardObjects(ownerScope, true);
+    }
+
+    /**
+     * Get the process-wide ClassCache.
+     * @param cx Rhino Context
+     * @return ClassCache
+     */
+    public static PersoniumClassCache getInstance(Context cx) {
+        PersoniumClassCache cache = singleton;
+        if (cache == null) {
+            synchronized (PersoniumClassCache.class) {
+                cache = singleton;
+                if (cache == null) {
+                    cache = new PersoniumClassCache(cx);
+                    singleton = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Create a new top-level scope with the standard objects, sharing this ClassCache.
+     * @param cx Rhino Context
+     * @param sealed whether the standard objects should be sealed
+     * @return top-level scope
+     */
+    public static ScriptableObject initStandardObjects(Context cx, boolean sealed) {
+        ScriptableObject scope = new NativeObject();
+        getInstance(cx).associate(scope);
+        cx.initStandardObjects(scope, sealed);
+        return scope;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Unlike ClassCache#associate, the owner scope of the reflected members is not replaced.
+     */
+    @Override
+    public boolean associate(ScriptableObject topScope) {
+        if (topScope.getParentScope() != null) {
+            throw new IllegalArgumentException();
+        }
+        return this == topScope.associateValue(CLASS_CACHE_KEY, this);
+    }
+}
@@ -21,10 +21,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLDecoder;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -38,9 +37,9 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.CharEncoding;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpStatus;
+import org.mozilla.classfile.ClassFileWriter;
 import org.mozilla.javascript.ContextFactory;
 import org.mozilla.javascript.Function;
-import org.mozilla.javascript.NativeObject;
 import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
@@ -54,15 +53,14 @@ import io.personium.common.utils.CommonUtils;
 import io.personium.engine.adapter.PersoniumEngineDao;
 import io.personium.engine.adapter.PersoniumRequestBodyStream;
 import io.personium.engine.adapter.Require;
-import io.personium.engine.extension.support.AbstractExtensionScriptableObject;
-import io.personium.engine.extension.support.ExtensionJarLoader;
-import io.personium.engine.extension.support.ExtensionLogger;
-import io.personium.engine.extension.support.IExtensionLogger;
-import io.personium.engine.extension.support.JavaClassRevealFilter;
 import io.personium.engine.jsgi.JSGIRequest;
 import io.personium.engine.jsgi.PersoniumResponse;
 import io.personium.engine.model.ScriptCache;
+import io.personium.engine.model.ScriptCacheMap;
+import io.personium.engine.model.ScriptSource;
 import io.personium.engine.source.ISourceManager;
+import io.personium.engine.source.ServiceSourceWatcher;
+import io.personium.engine.utils.EngineLibCompiler;
 import io.personium.engine.utils.PersoniumEngineConfig;
 import io.personium.engine.utils.PersoniumEngineLoggerFactory;
 
@@ -75,17 +73,21 @@ public class PersoniumEngineContext implements Closeable {
 
     private static final String PERSONIUM_SCOPE = "_p";
     private static final String EXTENSION_SCOPE = "extension";
+    /** Placed before the user script, which is a JSGI function. */
+    private static final String JSGI_PREFIX = "fn_jsgi = ";
+    /** Placed before a module, which is compiled as a function taking exports and module. */
+    private static final String MODULE_PREFIX = "(function(exports, module) {";
+    /** Placed after a module. The line break ends a line comment at the end of the module. */
+    private static final String MODULE_SUFFIX = "\n})";
+    /** Directive of a module whose exports are shared across requests. */
+    private static final String SHARED_MODULE_DIRECTIVE = "use shared";
     private static Map<String, Script> engineLibCache = new ConcurrentHashMap<String, Script>();
 
-    private static final int CACHE_MAX_NUM = PersoniumEngineConfig.getScriptCacheMaxNum();
-    @SuppressWarnings("serial")
-	private static Map<String, ScriptCache> userScriptCache = Collections.synchronizedMap(
-            new LinkedHashMap<String, ScriptCache>(16, 0.75f, true) { //CHECKSTYLE IGNORE 16, 0.75 is default.
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<String, ScriptCache> eldest) {
-                    return size() > CACHE_MAX_NUM;
-                }
-            });
+    private static ScriptCacheMap userScriptCache = new ScriptCacheMap(PersoniumEngineConfig.getScriptCacheMaxSize(),
+            PersoniumEngineConfig.getScriptCacheMaxNum(),
+            (long) (PersoniumEngineConfig.getScriptCacheMaxSize()
+                    * PersoniumEngineConfig.getScriptCachePartitionMaxShare()),
+            PersoniumEngineConfig.getScriptCachePartitionReservedSize());
 
     /** Cell Name. */
     private String currentCellName;
@@ -97,10 +99,10 @@ public class PersoniumEngineContext implements Closeable {
     /** Rhino Context. */
     private org.mozilla.javascript.Context cx;
 
-    /** Rhino ContextFactory. */
-    private PersoniumJsContextFactory factory;
     /** Rhino Scope. */
     private Scriptable scope;
+    /** Whether the scope is a child of the shared scope. */
+    private boolean sharedScopeEnabled;
 
     /** Base URL. */
     private String baseUrl;
@@ -108,13 +110,23 @@ public class PersoniumEngineContext implements Closeable {
     /** Script SourceManager. */
     private ISourceManager sourceManager;
 
+    /** Modules required in the request by source name. */
+    private final Map<String, Scriptable> modules = new HashMap<String, Scriptable>();
+
 
     //XXX Debug
     private StringBuilder timeBuilder;
 
 
     static {
-        ContextFactory.initGlobal(new PersoniumJsContextFactory());
+        ContextFactory.initGlobal(PersoniumJsContextFactory.getShared());
+        if (PersoniumEngineConfig.getScriptCacheHeapPressureEnabled()) {
+            HeapPressureMonitor.install(PersoniumEngineConfig.getScriptCacheHeapPressureHighWatermark(),
+                    PersoniumEngineConfig.getScriptCacheHeapPressureLowWatermark(), userScriptCache);
+        }
+        if (ServiceSourceWatcher.isEnabled()) {
+            ScriptRefresher.install(userScriptCache);
+        }
     }
 
     /**
@@ -123,13 +135,20 @@ public class PersoniumEngineContext implements Closeable {
      */
     public PersoniumEngineContext() throws PersoniumEngineException {
         // Rhinoの実行環境を作成する
-        this.factory = new PersoniumJsContextFactory();
-        this.cx = factory.enterContext();
-        this.cx.setLanguageVersion(org.mozilla.javascript.Context.VERSION_ES6);
+        this.cx = PersoniumJsContextFactory.getShared().enterThreadContext();
 
-        this.scope = cx.initStandardObjects();
-
-        cx.setOptimizationLevel(-1);
+        this.sharedScopeEnabled = PersoniumEngineConfig.getScriptSharedScopeEnabled();
+        try {
+            if (this.sharedScopeEnabled) {
+                this.scope = PersoniumSharedScope.newRequestScope(cx);
+            } else {
+                this.scope = PersoniumClassCache.initStandardObjects(cx, false);
+            }
+        } catch (PersoniumEngineException | RuntimeException e) {
+            // close() is never called on a context failing to construct.
+            PersoniumJsContext.exit();
+            throw e;
+        }
     }
 
     /**
@@ -144,64 +163,17 @@ public class PersoniumEngineContext implements Closeable {
 
     /**
      * Publish Extension class to JavaScript.
-     * この際、ロガークラス実体を Extensionクラス側に設定する。
+     * Without the shared scope, the classes are defined into _p.extension of the request scope.
      * @throws PersoniumEngineException When failing to publish
      */
     private void prepareExtensionClass() throws PersoniumEngineException {
-        // Extension用 jarのロード
-        ExtensionJarLoader extLoader = null;
-        try {
-            extLoader = ExtensionJarLoader.getInstance(this.cx.getApplicationClassLoader(),
-                    new JavaClassRevealFilter());
-            factory.initApplicationClassLoader(extLoader.getClassLoader());
-        } catch (IOException e) {
-            throw new PersoniumEngineException("Server Error", PersoniumEngineException.STATUSCODE_SERVER_ERROR, e);
-        } catch (PersoniumEngineException e) {
-            throw e;
-        }
-
-        // Javascript内でプロトタイプとして使用可能な Javaクラスを定義する。
-        // Scope の設定
-        NativeObject pScope = (NativeObject) this.scope.get(PERSONIUM_SCOPE, this.scope);
-        NativeObject declaringClass = (NativeObject) pScope.get(EXTENSION_SCOPE, pScope);
-
-        for (Class<? extends Scriptable> clazz : extLoader.getPrototypeClassSet()) {
-            try {
-                if (AbstractExtensionScriptableObject.class.isAssignableFrom(clazz)) {
-                    // AbstractExtensionScriptableObjectであれば、ロガー設定を行う。
-                    @SuppressWarnings("unchecked")
-                    Class<? extends AbstractExtensionScriptableObject> extensionClazz
-                        = (Class<? extends AbstractExtensionScriptableObject>) clazz;
-                    // Extensionクラス内で利用可能なロガーを渡す。
-                    // この処理の間に例外が発生しても、何も行わず無視する。（ロガー設定はしないまま正常に動作させる。)
-                    try {
-                        Method setLoggerMethod = extensionClazz.getMethod(
-                                "setLogger",
-                                new Class[] {
-                                        Class.class,
-                                        IExtensionLogger.class });
-                        setLoggerMethod.setAccessible(true);
-                        setLoggerMethod.invoke(null,
-                                new Object[] {extensionClazz, new ExtensionLogger(extensionClazz)});
-                    } catch (Exception e) {
-                        log.info("setLogger method cannot be called.", e);
-                    }
-                }
-
-                // ############################################################################3
-                // 以下のメソッドから例外が出力された場合、スクリプト実行の障害となるが、複数の extensionが導入されている場合、
-                // 問題となる extensionを利用していない UserScriptまで実行できなくなるのを防ぐため、ここからは例外は投げない。
-                // 問題のプロトタイプにアクセスした場合、Script実行時のエラーとなる。
-                // ############################################################################3
-                ScriptableObject.defineClass(declaringClass, clazz);
-            } catch (RuntimeException e) {
-                log.warn(String.format("Warn: Extension class(%s) could not be revealed to javascript.: %s",
-                        clazz.getCanonicalName(), e.getMessage()));
-            } catch (Exception e) {
-                log.warn(String.format("Warn: Extension class(%s) could not be revealed to javascript.: %s",
-                        clazz.getCanonicalName(), e.getMessage()));
-            }
+        if (this.sharedScopeEnabled) {
+            // _p.extension of the request scope already inherits the classes defined in the shared scope.
+            return;
         }
+        Scriptable pScope = (Scriptable) this.scope.get(PERSONIUM_SCOPE, this.scope);
+        Scriptable extension = (Scriptable) pScope.get(EXTENSION_SCOPE, pScope);
+        PersoniumExtensionScope.defineClasses(cx, extension);
     }
 
     /**
@@ -235,7 +207,7 @@ public class PersoniumEngineContext implements Closeable {
 
     /**
      * Run JSGI function.
-     * @param source 実行するユーザースクリプト
+     * The source is read only when the script is not in the script cache.
      * @param req Requestオブジェクト
      * @param res Responseオブジェクト
      * @param is リクエストストリームオブジェクト
@@ -245,13 +217,16 @@ public class PersoniumEngineContext implements Closeable {
      * @return Response
      * @throws PersoniumEngineException PersoniumEngine例外
      */
-    public final Response runJsgi(final String source,
-            final HttpServletRequest req,
+    public final Response runJsgi(final HttpServletRequest req,
             final HttpServletResponse res,
             final InputStream is,
             final String serviceSubject,
             long previousPhaseTime,
             String sourceName) throws PersoniumEngineException {
+        // Resolve the script first, so that a missing script fails before the libraries are evaluated.
+        // The source is read only when the script has to be compiled.
+        ScriptCache cache = resolveUserScript(sourceName);
+
         // JSGI実行準備
         // create java-client Contenxt Object
         PersoniumEngineDao ed = createDao(req, serviceSubject);
@@ -263,20 +238,30 @@ public class PersoniumEngineContext implements Closeable {
         javaToJs(createRequireObject(), "_require");
 
         // Load JS files
-        //  "personium-dao.js" 
-        try {
-            loadJs("personium-dao");
-        } catch (IOException e1) {
-            log.info("runJsgi error (DAO load io error) ", e1);
-            throw new PersoniumEngineException("Server Error", PersoniumEngineException.STATUSCODE_SERVER_ERROR, e1);
-        }
+        if (this.sharedScopeEnabled) {
+            // "personium-dao.js" and "personium-lib.js" are already evaluated in the shared scope.
+            Scriptable pScope = (Scriptable) this.scope.get(PERSONIUM_SCOPE, this.scope);
+            Object pjvm = this.scope.get("pjvm", this.scope);
+            pScope.put("pjvm", pScope, pjvm);
+            pScope.put("dcjvm", pScope, pjvm);
+        } else {
+            //  "personium-dao.js"
+            try {
+                loadJs("personium-dao");
+            } catch (IOException e1) {
+                log.info("runJsgi error (DAO load io error) ", e1);
+                throw new PersoniumEngineException("Server Error",
+                        PersoniumEngineException.STATUSCODE_SERVER_ERROR, e1);
+            }
 
-        //  "personium-lib.js"
-        try {
-            loadJs("personium-lib");
-        } catch (IOException e1) {
-            log.info("runJsgi error (personium-lib load io error) ", e1);
-            throw new PersoniumEngineException("Server Error", PersoniumEngineException.STATUSCODE_SERVER_ERROR, e1);
+            //  "personium-lib.js"
+            try {
+                loadJs("personium-lib");
+            } catch (IOException e1) {
+                log.info("runJsgi error (personium-lib load io error) ", e1);
+                throw new PersoniumEngineException("Server Error",
+                        PersoniumEngineException.STATUSCODE_SERVER_ERROR, e1);
+            }
         }
 
         //  jsgi-lib.js
@@ -297,8 +282,8 @@ public class PersoniumEngineContext implements Closeable {
         //  User Script を実行(eval)する
         try {
             Object ret;
-            log.info("eval user script : script size = " + source.length());
-            ret = evalUserScript(source, jsReq, previousPhaseTime, sourceName);
+            log.info("eval user script");
+            ret = evalUserScript(cache, jsReq);
             log.info("[" + PersoniumEngineConfig.getVersion() + "] " + "<<< Request Ended ");
 
             PersoniumResponse pRes = PersoniumResponse.parseJsgiResponse(ret);
@@ -323,68 +308,225 @@ public class PersoniumEngineContext implements Closeable {
         }
     }
 
+    /**
+     * Get the user script from the script cache, or read and compile it.
+     * @param sourceName source name
+     * @return script cache
+     * @throws PersoniumEngineException the script is not found or cannot be compiled
+     */
+    private ScriptCache resolveUserScript(String sourceName) throws PersoniumEngineException {
+        long previousPhaseTime = System.currentTimeMillis();
+        ScriptCache cache = sourceManager.getCachedScript(sourceName, userScriptCache);
+        if (cache != null) {
+            timeBuilder.append("Phase-cache,");
+            timeBuilder.append(System.currentTimeMillis() - previousPhaseTime);
+            timeBuilder.append(",");
+            return cache;
+        }
+        try {
+            cache = compileAndCache(null, sourceName, JSGI_PREFIX, "");
+        } catch (RuntimeException e) {
+            // e.g. a syntax error
+            log.info("User Script Evalucation Error : " + e.getMessage(), e);
+            throw new PersoniumEngineException("Server Error : " + e.getMessage(),
+                    PersoniumEngineException.STATUSCODE_SERVER_ERROR, e);
+        }
+        if (sourceManager.isWatched()) {
+            ScriptRefresher.register(sourceManager, sourceName, null, JSGI_PREFIX, "");
+        }
+        timeBuilder.append("Phase-compile,");
+        timeBuilder.append(System.currentTimeMillis() - previousPhaseTime);
+        timeBuilder.append(",");
+        return cache;
+    }
+
     /**
      * UserScript Evaluation.
-     * @param source User Script Source
-     * @throws IOException
+     * @param cache script cache of the user script
+     * @param jsReq JSGI request
      * @throws PersoniumEngineException
      */
-    private Object evalUserScript(final String source, JSGIRequest jsReq, long previousPhaseTime, String sourceName)
-            throws PersoniumEngineException, ClassNotFoundException, IOException {
-
-        long nowTime = System.currentTimeMillis();
-        previousPhaseTime = nowTime;
-
-        Script script;
-        script = sourceManager.getCachedScript(sourceName, userScriptCache);
-        if (script == null) {
-            script = cx.compileString("fn_jsgi = " + source, null, 1, null);
-            sourceManager.createCachedScript(script, sourceName, userScriptCache);
+    private Object evalUserScript(final ScriptCache cache, JSGIRequest jsReq) throws PersoniumEngineException {
+        long previousPhaseTime = System.currentTimeMillis();
+        long nowTime;
 
+        long execStart = System.nanoTime();
+        Object result = null;
+        try {
+            cache.getScript().exec(cx, scope);
             nowTime = System.currentTimeMillis();
-            timeBuilder.append("Phase-compile,");
-            timeBuilder.append(nowTime - previousPhaseTime);
-            timeBuilder.append(",");
-            previousPhaseTime = nowTime;
-        } else {
-            nowTime = System.currentTimeMillis();
-            timeBuilder.append("Phase-cache,");
+            timeBuilder.append("Phase-exec,");
             timeBuilder.append(nowTime - previousPhaseTime);
             timeBuilder.append(",");
             previousPhaseTime = nowTime;
-        }
 
+            Object fObj = scope.get("fn_jsgi", scope);
+            if (!(fObj instanceof Function)) {
+                log.warn("fn_jsgi not found");
+                throw new PersoniumEngineException("Server Error", PersoniumEngineException.STATUSCODE_SERVER_ERROR);
+            }
+
+            Object[] functionArgs = {jsReq.getRequestObject() };
+
+            previousPhaseTime = System.currentTimeMillis();
 
-        if (script != null) {
-            script.exec(cx, scope);
+            Function f = (Function) fObj;
+            result = f.call(cx, scope, scope, functionArgs);
+        } finally {
+            ScriptPromoter.recordExecution(cache, System.nanoTime() - execStart);
         }
+
         nowTime = System.currentTimeMillis();
-        timeBuilder.append("Phase-exec,");
+        timeBuilder.append("Phase-call,");
         timeBuilder.append(nowTime - previousPhaseTime);
         timeBuilder.append(",");
         previousPhaseTime = nowTime;
 
-        Object fObj = scope.get("fn_jsgi", scope);
-        Object result = null;
-        if (!(fObj instanceof Function)) {
-            log.warn("fn_jsgi not found");
-            throw new PersoniumEngineException("Server Error", PersoniumEngineException.STATUSCODE_SERVER_ERROR);
-        }
+        return result;
+    }
 
-        Object[] functionArgs = {jsReq.getRequestObject() };
+    /**
+     * Get a snapshot of the user script cache.
+     * @return cache entries keyed by script path
+     */
+    public static Map<String, ScriptCache> getUserScriptCacheSnapshot() {
+        return new LinkedHashMap<String, ScriptCache>(userScriptCache);
+    }
 
-        previousPhaseTime = System.currentTimeMillis();
+    /**
+     * Counters of the user script cache.
+     * @return counters by name
+     */
+    public static Map<String, Long> getUserScriptCacheStats() {
+        return userScriptCache.getStats();
+    }
 
-        Function f = (Function) fObj;
-        result = f.call(cx, scope, scope, functionArgs);
+    /**
+     * Counters of the user script cache by cell.
+     * @return counters by routing ID
+     */
+    public static Map<String, Map<String, Long>> getUserScriptCachePartitionStats() {
+        return userScriptCache.getPartitionStats();
+    }
 
-        nowTime = System.currentTimeMillis();
-        timeBuilder.append("Phase-call,");
-        timeBuilder.append(nowTime - previousPhaseTime);
-        timeBuilder.append(",");
-        previousPhaseTime = nowTime;
+    /**
+     * Counters of the cache shedding under heap pressure.
+     * @return counters by name, empty if heap pressure is not monitored
+     */
+    public static Map<String, Long> getHeapPressureStats() {
+        return HeapPressureMonitor.getInstalledStats();
+    }
 
-        return result;
+    /**
+     * Counters of the user script compilation.
+     * deduplicated is the number of requests that waited for a compilation of another request,
+     * and diskCacheHits the number of scripts read from the persistent cache instead of compiled.
+     * sharedScriptHits is the number of scripts shared with another path of the same source,
+     * and sharedScripts the number of distinct compiled scripts.
+     * refreshed is the number of scripts recompiled in the background after their sources changed.
+     * @return counters by name
+     */
+    public static Map<String, Long> getScriptCompilationStats() {
+        Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        stats.put("compiled", ScriptCompiler.getCompiledCount());
+        stats.put("deduplicated", ScriptCompiler.getDeduplicatedCount());
+        stats.put("failed", ScriptCompiler.getFailedCount());
+        stats.put("diskCacheHits", ScriptDiskCache.getHitCount());
+        stats.put("sharedScriptHits", ScriptContentCache.getHitCount());
+        stats.put("sharedScripts", (long) ScriptContentCache.size());
+        stats.put("refreshed", ScriptRefresher.getRefreshedCount());
+        stats.put("refreshFailed", ScriptRefresher.getFailedCount());
+        return stats;
+    }
+
+    /**
+     * Read and compile a user script, and register it to the script cache.
+     * Concurrent requests for the same script share one read and compilation.
+     * @param sourceName source name used in error messages
+     * @param cacheName script name in the script cache, which is also the source file name
+     * @param prefix source placed before the file content
+     * @param suffix source placed after the file content
+     * @return script cache
+     * @throws PersoniumEngineException exception
+     */
+    private ScriptCache compileAndCache(final String sourceName, final String cacheName,
+            final String prefix, final String suffix) throws PersoniumEngineException {
+        return ScriptCompiler.compile(sourceManager.getCacheKey(cacheName),
+                () -> sourceManager.getSource(cacheName, prefix, suffix),
+                source -> cacheUserScript(cx, sourceManager, source, sourceName, cacheName, prefix, suffix));
+    }
+
+    /**
+     * Read and compile a changed user script again, and register it to the script cache.
+     * @param context Rhino Context
+     * @param sourceManager source manager of the script
+     * @param sourceName source name used in error messages
+     * @param cacheName script name in the script cache, which is also the source file name
+     * @param prefix source placed before the file content
+     * @param suffix source placed after the file content
+     * @return script cache
+     * @throws PersoniumEngineException exception
+     */
+    static ScriptCache recompileAndCache(final org.mozilla.javascript.Context context,
+            final ISourceManager sourceManager, final String sourceName,
+            final String cacheName, final String prefix, final String suffix) throws PersoniumEngineException {
+        return ScriptCompiler.recompile(sourceManager.getCacheKey(cacheName),
+                () -> sourceManager.getSource(cacheName, prefix, suffix),
+                source -> cacheUserScript(context, sourceManager, source, sourceName, cacheName, prefix, suffix));
+    }
+
+    /**
+     * Compile a user script and register it to the script cache.
+     * @param context Rhino Context
+     * @param sourceManager source manager of the script
+     * @param source script source
+     * @param sourceName source name used in error messages
+     * @param cacheName script name in the script cache, which is also the source file name
+     * @param prefix source placed before the file content
+     * @param suffix source placed after the file content
+     * @return script cache
+     * @throws PersoniumEngineException exception
+     */
+    private static ScriptCache cacheUserScript(final org.mozilla.javascript.Context context,
+            final ISourceManager sourceManager, final ScriptSource source, final String sourceName,
+            final String cacheName, final String prefix, final String suffix) throws PersoniumEngineException {
+        ScriptCache cache = sourceManager.createCachedScript(
+                compileUserScript(context, sourceManager.getOptimizationLevel(), source, sourceName),
+                cacheName, source.length(), userScriptCache);
+        ScriptPromoter.prepare(cache, source, sourceName,
+                () -> sourceManager.getSource(cacheName, prefix, suffix),
+                () -> userScriptCache.reweigh(sourceManager.getCacheKey(cacheName), cache));
+        if (source.hasDirective(SHARED_MODULE_DIRECTIVE)) {
+            cache.setShareable();
+        }
+        return cache;
+    }
+
+    /**
+     * Compile a user script at the optimization level of the source.
+     * When bytecode cannot be generated (e.g. a method exceeding 64KB), the interpreter is used instead.
+     * Other errors, such as syntax errors, are thrown as they are.
+     * @param context Rhino Context
+     * @param level optimization level of the source
+     * @param source JavaScript source
+     * @param sourceName source name used in error messages
+     * @return compiled script
+     */
+    private static Script compileUserScript(final org.mozilla.javascript.Context context, final int level,
+            final ScriptSource source, final String sourceName) {
+        if (level < 0) {
+            return ScriptContentCache.compile(context, source, sourceName);
+        }
+        context.setOptimizationLevel(level);
+        try {
+            return ScriptContentCache.compile(context, source, sourceName);
+        } catch (ClassFileWriter.ClassFileFormatException e) {
+            // Context.compileReader falls back by itself. ClassCompiler, used for the disk cache, does not.
+            log.info("Failed to compile user script to bytecode. Falling back to interpreter : " + e.getMessage());
+        } finally {
+            context.setOptimizationLevel(-1);
+        }
+        return ScriptContentCache.compile(context, source, sourceName);
     }
 
     /**
@@ -473,29 +615,64 @@ public class PersoniumEngineContext implements Closeable {
      * @throws IOException IO例外
      */
     private Object loadJs(final String name) throws IOException {
-        URL path = getClass().getResource("/js-lib/" + name + ".js");
+        Script jsBuildObject = getEngineLib(cx, name);
+        if (jsBuildObject == null) {
+            return null;
+        }
+        Object ret = jsBuildObject.exec(cx, scope);
+        log.debug("Load JavaScript from Local Resource : " + name);
+        return ret;
+    }
 
-        Script jsBuildObject = null;
-        if (engineLibCache.containsKey(path.toString())) {
-            jsBuildObject = engineLibCache.get(path.toString());
-        } else {
+    /**
+     * Get the compiled engine library.
+     * The class precompiled at build time (see EngineLibCompiler) is used when available,
+     * otherwise the library is compiled from the classpath on first use.
+     * @param context Rhino Context
+     * @param name JavaScriptソース名
+     * @return compiled script
+     * @throws IOException IO例外
+     */
+    static Script getEngineLib(final org.mozilla.javascript.Context context, final String name)
+            throws IOException {
+        Script jsBuildObject = engineLibCache.get(name);
+        if (jsBuildObject != null) {
+            return jsBuildObject;
+        }
+        jsBuildObject = loadPrecompiledEngineLib(name);
+        if (jsBuildObject == null) {
+            URL path = PersoniumEngineContext.class.getResource("/js-lib/" + name + ".js");
             FileInputStream fis = new FileInputStream(URLDecoder.decode(path.getFile(), CharEncoding.UTF_8));
             InputStreamReader isr = null;
             try {
                 isr = new InputStreamReader(fis, "UTF-8");
-                jsBuildObject = cx.compileReader(isr, path.getPath(), 1, null);
+                jsBuildObject = context.compileReader(isr, path.getPath(), 1, null);
             } finally {
                 IOUtils.closeQuietly(isr);
                 IOUtils.closeQuietly(fis);
             }
-            engineLibCache.put(path.toString(), jsBuildObject);
         }
-        if (jsBuildObject == null) {
+        engineLibCache.put(name, jsBuildObject);
+        return jsBuildObject;
+    }
+
+    /**
+     * Instantiate the engine library precompiled at build time.
+     * @param name JavaScriptソース名
+     * @return compiled script, or null if not precompiled
+     */
+    private static Script loadPrecompiledEngineLib(final String name) {
+        String className = EngineLibCompiler.toClassName(name);
+        try {
+            Class<?> clazz = Class.forName(className, true, PersoniumEngineContext.class.getClassLoader());
+            return (Script) clazz.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            log.info("Precompiled engine library not found. Compiling " + name + ".js at runtime.");
+            return null;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            log.warn("Failed to load precompiled engine library " + className, e);
             return null;
         }
-        Object ret = jsBuildObject.exec(cx, scope);
-        log.debug("Load JavaScript from Local Resource : " + path);
-        return ret;
     }
 
     /**
@@ -510,23 +687,33 @@ public class PersoniumEngineContext implements Closeable {
     }
 
     /**
-     * JavaScriptファイルを解析し、オブジェクトに登録.
-     * @param source JavaScriptソースの中身
-     * @param path JavaScriptソース名
-     * @return オブジェクト
+     * Require a module, and return its exports.
+     * A module is evaluated once in a request. The compiled module is looked up in the script cache first,
+     * and the source is read only when the module has to be compiled.
+     * A module starting with the "use shared"; directive is evaluated once per source version instead,
+     * and its frozen exports are returned to every request.
+     * @param moduleName module name, optionally with "./" or ".js"
+     * @return exports of the module
      * @throws PersoniumEngineException exception
      */
-    public Object requireJs(final String source, final String path) throws PersoniumEngineException {
-        long previousPhaseTime = System.currentTimeMillis();
-
-        StringBuilder builder = new StringBuilder();
+    public Object requireJs(final String moduleName) throws PersoniumEngineException {
+        String path = resolveModule(moduleName);
         // Add because there is no extension.
         String jsName = path + ".js";
-        Object ret = null;
-        Script script = sourceManager.getCachedScript(jsName, userScriptCache);
-        if (script == null) {
-            script = cx.compileString(source, path, 1, null);
-            sourceManager.createCachedScript(script, jsName, userScriptCache);
+        Scriptable module = modules.get(jsName);
+        if (module != null) {
+            log.debug("Module already loaded in the request : " + path);
+            return ScriptableObject.getProperty(module, "exports");
+        }
+
+        long previousPhaseTime = System.currentTimeMillis();
+        StringBuilder builder = new StringBuilder();
+        ScriptCache cache = sourceManager.getCachedScript(jsName, userScriptCache);
+        if (cache == null) {
+            cache = compileAndCache(path, jsName, MODULE_PREFIX, MODULE_SUFFIX);
+            if (sourceManager.isWatched()) {
+                ScriptRefresher.register(sourceManager, jsName, path, MODULE_PREFIX, MODULE_SUFFIX);
+            }
             builder.append("========== Require timestamp. ");
             builder.append("Compile,");
         } else {
@@ -537,8 +724,19 @@ public class PersoniumEngineContext implements Closeable {
         builder.append(",");
         previousPhaseTime = System.currentTimeMillis();
 
-        if (script != null) {
-            ret = script.exec(cx, scope);
+        if (cache.isShareable() && PersoniumEngineConfig.getScriptSharedModuleEnabled()) {
+            module = getSharedModule(cache, path);
+            modules.put(jsName, module);
+        } else {
+            // Registered before the evaluation, so that a cyclic require gets the exports built so far.
+            module = newModule(scope, path);
+            modules.put(jsName, module);
+            try {
+                evalModule(cache, scope, module);
+            } catch (RuntimeException e) {
+                modules.remove(jsName);
+                throw e;
+            }
         }
 
         builder.append("Exec,");
@@ -547,7 +745,77 @@ public class PersoniumEngineContext implements Closeable {
         log.debug("Load JavaScript from Require Resource : " + path);
         log.debug(builder.toString());
 
-        return ret;
+        return ScriptableObject.getProperty(module, "exports");
+    }
+
+    /**
+     * Get the module object of a shared module, evaluating the module at the first use of the cache entry.
+     * The module runs in the shared scope, where request bindings such as pjvm and require are not visible.
+     * The module object and everything reachable from it are frozen and sealed.
+     * @param cache cache entry of the module
+     * @param path module name
+     * @return frozen module object
+     * @throws PersoniumEngineException failed to build the shared scope
+     */
+    private Scriptable getSharedModule(final ScriptCache cache, final String path) throws PersoniumEngineException {
+        Scriptable module = (Scriptable) cache.getSharedModule();
+        if (module != null) {
+            return module;
+        }
+        synchronized (cache) {
+            module = (Scriptable) cache.getSharedModule();
+            if (module == null) {
+                ScriptableObject shared = PersoniumSharedScope.getScope(cx);
+                module = newModule(shared, path);
+                evalModule(cache, shared, module);
+                PersoniumSharedScope.freeze(cx, module);
+                cache.setSharedModule(module);
+                log.info("Shared module evaluated : " + path);
+            }
+            return module;
+        }
+    }
+
+    private Scriptable newModule(final Scriptable moduleScope, final String path) {
+        Scriptable module = cx.newObject(moduleScope);
+        ScriptableObject.putProperty(module, "exports", cx.newObject(moduleScope));
+        ScriptableObject.putProperty(module, "id", path);
+        return module;
+    }
+
+    private void evalModule(final ScriptCache cache, final Scriptable moduleScope, final Scriptable module) {
+        long execStart = System.nanoTime();
+        try {
+            Function factory = (Function) cache.getScript().exec(cx, moduleScope);
+            factory.call(cx, moduleScope, moduleScope,
+                    new Object[] {ScriptableObject.getProperty(module, "exports"), module});
+        } finally {
+            ScriptPromoter.recordExecution(cache, System.nanoTime() - execStart);
+        }
+    }
+
+    /**
+     * Resolve the module name to the source name without the extension.
+     * Service sources are not nested, so a name pointing to another directory is not found.
+     * @param moduleName module name
+     * @return source name without ".js"
+     * @throws PersoniumEngineException invalid module name
+     */
+    static String resolveModule(final String moduleName) throws PersoniumEngineException {
+        String path = moduleName == null ? "" : moduleName;
+        while (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        if (path.endsWith(".js")) {
+            path = path.substring(0, path.length() - ".js".length());
+        }
+        if (path.isEmpty() || path.equals(".") || path.equals("..")
+                || path.indexOf('/') >= 0 || path.indexOf('\\') >= 0) {
+            log.info("Invalid module name (" + moduleName + ")");
+            throw new PersoniumEngineException("404 Not Found (Module not found) ",
+                    PersoniumEngineException.STATUSCODE_NOTFOUND);
+        }
+        return path;
     }
 
     @Override
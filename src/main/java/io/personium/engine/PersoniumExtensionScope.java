@@ -0,0 +1,74 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import java.io.IOException;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.engine.extension.support.ExtensionJarLoader;
+import io.personium.engine.extension.support.JavaClassRevealFilter;
+
+/**
+ * Definition of the extension classes into _p.extension.
+ * With the shared scope, they are defined once into the shared _p.extension, which is then sealed.
+ * Otherwise they are defined into _p.extension of each request, so that they belong to the request scope.
+ * The extension jars are loaded only once.
+ */
+final class PersoniumExtensionScope {
+    /** Logger Object. */
+    private static Logger log = LoggerFactory.getLogger(PersoniumExtensionScope.class);
+
+    /**
+     * Constructor.
+     */
+    private PersoniumExtensionScope() {
+    }
+
+    /**
+     * Define the extension classes into the namespace.
+     * A class that cannot be defined is skipped, so that scripts not using it keep working.
+     * @param cx Rhino Context
+     * @param namespace namespace to define the classes in
+     * @throws PersoniumEngineException failed to load the extension jars
+     */
+    static void defineClasses(Context cx, Scriptable namespace) throws PersoniumEngineException {
+        ExtensionJarLoader extLoader;
+        try {
+            extLoader = ExtensionJarLoader.getInstance(cx.getApplicationClassLoader(), new JavaClassRevealFilter());
+        } catch (IOException e) {
+            throw new PersoniumEngineException("Server Error", PersoniumEngineException.STATUSCODE_SERVER_ERROR, e);
+        }
+        PersoniumJsContextFactory.getShared().installApplicationClassLoader(extLoader.getClassLoader());
+
+        for (Class<? extends Scriptable> clazz : extLoader.getPrototypeClassSet()) {
+            // 以下のメソッドから例外が出力された場合、スクリプト実行の障害となるが、複数の extensionが導入されている場合、
+            // 問題となる extensionを利用していない UserScriptまで実行できなくなるのを防ぐため、ここからは例外は投げない。
+            // 問題のプロトタイプにアクセスした場合、Script実行時のエラーとなる。
+            try {
+                ScriptableObject.defineClass(namespace, clazz);
+            } catch (Exception e) {
+                log.warn(String.format("Warn: Extension class(%s) could not be revealed to javascript.: %s",
+                        clazz.getCanonicalName(), e.getMessage()));
+            }
+        }
+    }
+}
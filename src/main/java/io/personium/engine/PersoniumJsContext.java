@@ -18,6 +18,7 @@ package io.personium.engine;
 
 import org.apache.http.HttpStatus;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
 
 /**
  * Personium Engine's customized subclass of RHINO Context.
@@ -25,6 +26,10 @@ import org.mozilla.javascript.Context;
 public class PersoniumJsContext extends Context {
     /** Timeout Value. */
     private long timeout;
+    /** Script timeout(msec) applied to each top-level call. */
+    private int scriptTimeout;
+    /** Application class loader set to this context by the factory. */
+    private ClassLoader factoryClassLoader;
 
     /**
      * Constructor.
@@ -33,6 +38,40 @@ public class PersoniumJsContext extends Context {
     public PersoniumJsContext() {
     }
 
+    /**
+     * Constructor.
+     * @param factory ContextFactory which receives the callbacks of this context
+     */
+    public PersoniumJsContext(final ContextFactory factory) {
+        super(factory);
+    }
+
+    /**
+     * Setter for the script timeout.
+     * @param value script timeout(msec)
+     */
+    public final void setScriptTimeout(final int value) {
+        this.scriptTimeout = value;
+    }
+
+    /**
+     * Set the application class loader of the factory, replacing the one this context may have cached.
+     * @param loader class loader. Nothing is done if null or already set.
+     */
+    final void applyApplicationClassLoader(final ClassLoader loader) {
+        if (loader != null && loader != factoryClassLoader) {
+            setApplicationClassLoader(loader);
+            factoryClassLoader = loader;
+        }
+    }
+
+    /**
+     * Start the timer of a top-level call.
+     */
+    public final void startTimeout() {
+        this.timeout = System.currentTimeMillis() + scriptTimeout;
+    }
+
     /**
      * Setter for the timeout value.
      * @param value Timeout Value in long
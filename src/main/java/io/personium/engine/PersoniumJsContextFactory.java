@@ -32,10 +32,88 @@ public class PersoniumJsContextFactory extends ContextFactory {
     /** Magic number used in setInstructionObserverThreshold. */
     private static final int MVALUE = 10;
 
+    /** Factory shared by the request threads. */
+    private static final PersoniumJsContextFactory SHARED = new PersoniumJsContextFactory();
+
+    /** Context kept for each worker thread. */
+    private static final ThreadLocal<PersoniumJsContext> THREAD_CONTEXT = new ThreadLocal<PersoniumJsContext>();
+
+    /** Whether the application class loader is installed. */
+    private volatile boolean applicationClassLoaderInstalled;
+
+    /** Script timeout(msec). Read once, not for every request. */
+    private final int scriptTimeout;
+    /** Whether FEATURE_DYNAMIC_SCOPE is enabled, i.e. the shared scope is. Read once, not for every check. */
+    private final boolean dynamicScope;
+
+    /**
+     * Constructor.
+     */
+    public PersoniumJsContextFactory() {
+        this.scriptTimeout = PersoniumEngineConfig.getScriptConnectionTimeout();
+        this.dynamicScope = PersoniumEngineConfig.getScriptSharedScopeEnabled();
+    }
+
+    /**
+     * Get the factory shared by the request threads.
+     * @return factory
+     */
+    public static PersoniumJsContextFactory getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Enter the Context of the current thread, which is created on first use and reused afterwards.
+     * Only the per-request state (script timeout) is reset. Leave it with Context.exit().
+     * @return entered Context
+     */
+    public PersoniumJsContext enterThreadContext() {
+        PersoniumJsContext cx = THREAD_CONTEXT.get();
+        if (cx == null) {
+            cx = (PersoniumJsContext) enterContext();
+            // A context already entered on this thread by another factory is used but not kept.
+            if (cx.getFactory() == this) {
+                THREAD_CONTEXT.set(cx);
+            }
+        } else {
+            cx = (PersoniumJsContext) enterContext(cx);
+        }
+        // Contexts made before the installation may have cached the default loader.
+        cx.applyApplicationClassLoader(getApplicationClassLoader());
+        cx.setScriptTimeout(scriptTimeout);
+        cx.setInstructionObserverThreshold(scriptTimeout / MVALUE);
+        return cx;
+    }
+
+    /**
+     * Install the application class loader. Only the first call takes effect.
+     * The loader is set to the current Context as well, and to the thread Contexts when they are entered next.
+     * @param loader class loader
+     */
+    public void installApplicationClassLoader(final ClassLoader loader) {
+        if (applicationClassLoaderInstalled) {
+            return;
+        }
+        synchronized (this) {
+            if (!applicationClassLoaderInstalled) {
+                initApplicationClassLoader(loader);
+                applicationClassLoaderInstalled = true;
+            }
+        }
+        Context cx = Context.getCurrentContext();
+        if (cx instanceof PersoniumJsContext && cx.getFactory() == this) {
+            ((PersoniumJsContext) cx).applyApplicationClassLoader(getApplicationClassLoader());
+        }
+    }
+
     @Override
     protected final Context makeContext() {
-        PersoniumJsContext cx = new PersoniumJsContext();
-        cx.setInstructionObserverThreshold(PersoniumEngineConfig.getScriptConnectionTimeout() / MVALUE);
+        PersoniumJsContext cx = new PersoniumJsContext(this);
+        cx.applyApplicationClassLoader(getApplicationClassLoader());
+        cx.setLanguageVersion(Context.VERSION_ES6);
+        cx.setOptimizationLevel(-1);
+        cx.setScriptTimeout(scriptTimeout);
+        cx.setInstructionObserverThreshold(scriptTimeout / MVALUE);
 
         // ClassShutter registration for java call control
         cx.setClassShutter(new PersoniumClassShutterImpl());
@@ -44,6 +122,16 @@ public class PersoniumJsContextFactory extends ContextFactory {
         return cx;
     }
 
+    @Override
+    protected boolean hasFeature(final Context cx, final int featureIndex) {
+        // Functions defined in the shared scope resolve top-level names (pjvm, _require, ...)
+        // against the per-request scope they are called from. Not needed without the shared scope.
+        if (featureIndex == Context.FEATURE_DYNAMIC_SCOPE) {
+            return dynamicScope;
+        }
+        return super.hasFeature(cx, featureIndex);
+    }
+
     @Override
     protected final Object doTopCall(
             final Callable callable,
@@ -51,8 +139,7 @@ public class PersoniumJsContextFactory extends ContextFactory {
             final Scriptable scope,
             final Scriptable thisObj,
             final Object[] args) {
-        long curTime = System.currentTimeMillis();
-        ((PersoniumJsContext) cx).setTimeout(curTime + PersoniumEngineConfig.getScriptConnectionTimeout());
+        ((PersoniumJsContext) cx).startTimeout();
         return super.doTopCall(callable, cx, scope, thisObj, args);
     }
 
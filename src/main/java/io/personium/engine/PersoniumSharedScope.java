@@ -0,0 +1,180 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sealed top-level scope shared by all requests.
+ * The standard objects and the engine libraries are evaluated into it only once per JVM.
+ * Each request gets a child scope whose prototype is the shared scope.
+ */
+public final class PersoniumSharedScope {
+    /** Logger Object. */
+    private static Logger log = LoggerFactory.getLogger(PersoniumSharedScope.class);
+
+    /** Engine libraries evaluated into the shared scope. */
+    static final String[] SHARED_LIBS = {"personium-dao", "personium-lib"};
+
+    private static final String PERSONIUM_SCOPE = "_p";
+    private static final String PERSONIUM_SCOPE_ALIAS = "dc";
+    private static final String EXTENSION_SCOPE = "extension";
+
+    /** Shared scope. */
+    private static volatile ScriptableObject sharedScope;
+
+    /**
+     * Constructor.
+     */
+    private PersoniumSharedScope() {
+    }
+
+    /**
+     * Get the shared scope, building it on first use.
+     * @param cx Rhino Context
+     * @return shared scope
+     * @throws PersoniumEngineException failed to load engine libraries
+     */
+    static ScriptableObject getScope(Context cx) throws PersoniumEngineException {
+        ScriptableObject scope = sharedScope;
+        if (scope == null) {
+            synchronized (PersoniumSharedScope.class) {
+                scope = sharedScope;
+                if (scope == null) {
+                    scope = build(cx);
+                    sharedScope = scope;
+                }
+            }
+        }
+        return scope;
+    }
+
+    /**
+     * Create a per-request scope.
+     * Its _p namespace inherits from the shared one and owns an extension namespace inheriting
+     * the shared extension classes, so that request bindings never leak into the shared scope.
+     * @param cx Rhino Context
+     * @return per-request scope
+     * @throws PersoniumEngineException failed to load engine libraries
+     */
+    static Scriptable newRequestScope(Context cx) throws PersoniumEngineException {
+        ScriptableObject shared = getScope(cx);
+        Scriptable scope = cx.newObject(shared);
+        scope.setPrototype(shared);
+        scope.setParentScope(null);
+
+        Scriptable sharedPScope = (Scriptable) shared.get(PERSONIUM_SCOPE, shared);
+        Scriptable pScope = cx.newObject(scope);
+        pScope.setPrototype(sharedPScope);
+        Scriptable extension = cx.newObject(scope);
+        extension.setPrototype((Scriptable) sharedPScope.get(EXTENSION_SCOPE, sharedPScope));
+        pScope.put(EXTENSION_SCOPE, pScope, extension);
+        scope.put(PERSONIUM_SCOPE, scope, pScope);
+        scope.put(PERSONIUM_SCOPE_ALIAS, scope, pScope);
+        return scope;
+    }
+
+    /**
+     * Build the shared scope.
+     * @param cx Rhino Context
+     * @return sealed scope
+     * @throws PersoniumEngineException failed to load engine libraries
+     */
+    private static ScriptableObject build(Context cx) throws PersoniumEngineException {
+        long start = System.currentTimeMillis();
+        ScriptableObject scope = PersoniumClassCache.initStandardObjects(cx, true);
+        for (String name : SHARED_LIBS) {
+            try {
+                PersoniumEngineContext.getEngineLib(cx, name).exec(cx, scope);
+            } catch (IOException e) {
+                log.info("shared scope error (" + name + " load io error) ", e);
+                throw new PersoniumEngineException("Server Error", PersoniumEngineException.STATUSCODE_SERVER_ERROR, e);
+            }
+        }
+        Scriptable pScope = (Scriptable) scope.get(PERSONIUM_SCOPE, scope);
+        PersoniumExtensionScope.defineClasses(cx, (Scriptable) pScope.get(EXTENSION_SCOPE, pScope));
+        // Reading every property while sealing also materialises the lazily loaded classes of personium-dao.js.
+        seal(scope);
+        log.info("Shared scope built in " + (System.currentTimeMillis() - start) + " msec.");
+        return scope;
+    }
+
+    /**
+     * Seal the object and everything reachable from it.
+     * @param obj target object
+     */
+    static void seal(Object obj) {
+        seal(obj, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()), so -> { });
+    }
+
+    /**
+     * Freeze and seal the object and everything reachable from it.
+     * Rhino lets push, pop and splice modify a sealed dense array, and Object.freeze leaves the array length
+     * writable. Those are all read-only after this.
+     * @param cx Rhino Context
+     * @param obj target object
+     * @throws PersoniumEngineException failed to load engine libraries
+     */
+    static void freeze(Context cx, Object obj) throws PersoniumEngineException {
+        ScriptableObject scope = getScope(cx);
+        Function freeze = (Function) ScriptableObject.getProperty((Scriptable) scope.get("Object", scope), "freeze");
+        seal(obj, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()), so -> {
+            freeze.call(cx, scope, scope, new Object[] {so});
+            if (so instanceof NativeArray) {
+                so.setAttributes("length", ScriptableObject.READONLY | ScriptableObject.PERMANENT);
+            }
+        });
+    }
+
+    /**
+     * Seal the object and everything reachable from it.
+     * @param obj target object
+     * @param visited objects already visited
+     * @param beforeSeal applied to each object before it is sealed
+     */
+    private static void seal(Object obj, Set<Object> visited, Consumer<ScriptableObject> beforeSeal) {
+        if (!(obj instanceof ScriptableObject)) {
+            return;
+        }
+        ScriptableObject so = (ScriptableObject) obj;
+        if (so.isSealed() || !visited.add(so)) {
+            return;
+        }
+        for (Object id : so.getAllIds()) {
+            if (id instanceof String) {
+                seal(so.get((String) id, so), visited, beforeSeal);
+            } else if (id instanceof Integer) {
+                seal(so.get((Integer) id, so), visited, beforeSeal);
+            }
+        }
+        seal(so.getPrototype(), visited, beforeSeal);
+        beforeSeal.accept(so);
+        so.sealObject();
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpStatus;
+
+import io.personium.engine.model.ScriptCache;
+import io.personium.engine.model.ScriptSource;
+import io.personium.engine.utils.PersoniumEngineConfig;
+
+/**
+ * Single-flight compilation of user scripts.
+ * When several requests miss the script cache for the same script at once, only the first one reads the source
+ * and compiles it, and the others wait for its result up to the script timeout.
+ * A failed read or compilation is reported to every waiting request.
+ */
+final class ScriptCompiler {
+
+    /**
+     * Read of the source performed by the first request.
+     */
+    @FunctionalInterface
+    interface SourceReader {
+        /**
+         * Read the source.
+         * @return script source
+         * @throws PersoniumEngineException exception, e.g. the source is not found
+         */
+        ScriptSource read() throws PersoniumEngineException;
+    }
+
+    /**
+     * Compilation performed by the first request.
+     */
+    @FunctionalInterface
+    interface Compilation {
+        /**
+         * Compile the script and register it to the script cache.
+         * @param source script source
+         * @return created script cache
+         * @throws PersoniumEngineException exception
+         */
+        ScriptCache compile(ScriptSource source) throws PersoniumEngineException;
+    }
+
+    /** Compilations in progress by cache key. */
+    private static final ConcurrentMap<String, Flight> IN_FLIGHT = new ConcurrentHashMap<String, Flight>();
+
+    /** Number of compilations performed. */
+    private static final AtomicLong COMPILED = new AtomicLong();
+    /** Number of compilations saved by waiting for another request. */
+    private static final AtomicLong DEDUPLICATED = new AtomicLong();
+    /** Number of failed compilations. */
+    private static final AtomicLong FAILED = new AtomicLong();
+
+    /**
+     * Constructor.
+     */
+    private ScriptCompiler() {
+    }
+
+    /**
+     * Read and compile the script, or wait for the same compilation already in progress.
+     * @param key script cache key
+     * @param reader read of the source performed when no one else is compiling the script
+     * @param compilation compilation performed when no one else is compiling the script
+     * @return script cache
+     * @throws PersoniumEngineException exception thrown by the read or the compilation,
+     *         or the compilation in progress did not finish within the script timeout
+     */
+    static ScriptCache compile(String key, SourceReader reader, Compilation compilation)
+            throws PersoniumEngineException {
+        Flight flight = new Flight();
+        Flight running = IN_FLIGHT.putIfAbsent(key, flight);
+        if (running != null) {
+            DEDUPLICATED.incrementAndGet();
+            return running.await(PersoniumEngineConfig.getScriptConnectionTimeout());
+        }
+        try {
+            return run(reader, compilation, flight);
+        } finally {
+            IN_FLIGHT.remove(key, flight);
+        }
+    }
+
+    /**
+     * Read and compile the changed script, without joining a compilation in progress,
+     * which may have read the source before the change. Requests arriving meanwhile wait for this one.
+     * @param key script cache key
+     * @param reader read of the source
+     * @param compilation compilation
+     * @return script cache
+     * @throws PersoniumEngineException exception thrown by the read or the compilation
+     */
+    static ScriptCache recompile(String key, SourceReader reader, Compilation compilation)
+            throws PersoniumEngineException {
+        Flight flight = new Flight();
+        IN_FLIGHT.put(key, flight);
+        try {
+            return run(reader, compilation, flight);
+        } finally {
+            IN_FLIGHT.remove(key, flight);
+        }
+    }
+
+    private static ScriptCache run(SourceReader reader, Compilation compilation, Flight flight)
+            throws PersoniumEngineException {
+        COMPILED.incrementAndGet();
+        try {
+            ScriptCache cache = compilation.compile(reader.read());
+            flight.result.complete(cache);
+            return cache;
+        } catch (PersoniumEngineException | RuntimeException | Error e) {
+            FAILED.incrementAndGet();
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Number of compilations performed.
+     * @return count
+     */
+    static long getCompiledCount() {
+        return COMPILED.get();
+    }
+
+    /**
+     * Number of compilations saved by waiting for another request.
+     * @return count
+     */
+    static long getDeduplicatedCount() {
+        return DEDUPLICATED.get();
+    }
+
+    /**
+     * Number of failed compilations.
+     * @return count
+     */
+    static long getFailedCount() {
+        return FAILED.get();
+    }
+
+    /**
+     * Compilation in progress.
+     */
+    private static final class Flight {
+        /** Compilation result. */
+        private final CompletableFuture<ScriptCache> result = new CompletableFuture<ScriptCache>();
+
+        ScriptCache await(long timeout) throws PersoniumEngineException {
+            try {
+                return result.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new PersoniumEngineException("Script TimeOut", HttpStatus.SC_SERVICE_UNAVAILABLE, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PersoniumEngineException("Server Error", PersoniumEngineException.STATUSCODE_SERVER_ERROR,
+                        e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof PersoniumEngineException) {
+                    throw (PersoniumEngineException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
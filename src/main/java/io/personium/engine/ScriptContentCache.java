@@ -0,0 +1,129 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+import io.personium.engine.model.ScriptSource;
+
+/**
+ * Compiled scripts shared by content.
+ * The same bar file installed into many cells yields identical sources under different paths.
+ * Those share one compiled Script, which the per-path entries of the script cache point at.
+ * A Script is kept here only while some per-path entry refers to it.
+ */
+final class ScriptContentCache {
+
+    /** Compiled scripts by hash of the source and the compiler settings. */
+    private static final ConcurrentMap<String, ScriptRef> SCRIPTS = new ConcurrentHashMap<String, ScriptRef>();
+    /** Scripts no longer referred to by the script cache. */
+    private static final ReferenceQueue<Script> RELEASED = new ReferenceQueue<Script>();
+    /** Number of compilations saved by sharing a script. */
+    private static final AtomicLong HITS = new AtomicLong();
+
+    /**
+     * Constructor.
+     */
+    private ScriptContentCache() {
+    }
+
+    /**
+     * Get the compiled script of the same source, or compile it at the optimization level of the context.
+     * @param cx Rhino Context
+     * @param source script source
+     * @param sourceName source name used in error messages
+     * @return compiled script
+     */
+    static Script compile(Context cx, ScriptSource source, String sourceName) {
+        expunge();
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.initFromContext(cx);
+        String key = ScriptDiskCache.key(env, source, sourceName);
+
+        Script script = get(key);
+        if (script != null) {
+            HITS.incrementAndGet();
+            return script;
+        }
+        script = ScriptDiskCache.compile(cx, source, sourceName);
+        // Another request may have compiled the same source meanwhile. Share the first one.
+        while (true) {
+            ScriptRef ref = SCRIPTS.putIfAbsent(key, new ScriptRef(key, script));
+            if (ref == null) {
+                return script;
+            }
+            Script shared = ref.get();
+            if (shared != null) {
+                return shared;
+            }
+            SCRIPTS.remove(key, ref);
+        }
+    }
+
+    /**
+     * Number of compilations saved by sharing a script.
+     * @return count
+     */
+    static long getHitCount() {
+        return HITS.get();
+    }
+
+    /**
+     * Number of distinct scripts held.
+     * @return count
+     */
+    static int size() {
+        expunge();
+        return SCRIPTS.size();
+    }
+
+    private static Script get(String key) {
+        ScriptRef ref = SCRIPTS.get(key);
+        if (ref == null) {
+            return null;
+        }
+        return ref.get();
+    }
+
+    private static void expunge() {
+        ScriptRef ref;
+        while ((ref = (ScriptRef) RELEASED.poll()) != null) {
+            SCRIPTS.remove(ref.key, ref);
+        }
+    }
+
+    /**
+     * Weak reference to a shared script.
+     */
+    private static final class ScriptRef extends WeakReference<Script> {
+        /** Cache key. */
+        private final String key;
+
+        ScriptRef(String key, Script script) {
+            super(script, RELEASED);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.engine.model.ScriptSource;
+import io.personium.engine.utils.PersoniumEngineConfig;
+
+/**
+ * Persistent cache of user scripts compiled to JVM bytecode on the local disk.
+ * The generated classes are stored, and defined again instead of compiling the source after restart.
+ * Interpreted scripts are not stored, since deserializing the interpreter data takes longer than parsing.
+ * Entries are keyed by a hash of the source, the compiler settings and the engine/Rhino version,
+ * so that an entry written by another version is never read.
+ * Each entry is authenticated with an HMAC keyed by the unit secret, checked before any class is defined,
+ * so that bytecode written into the directory by others is never run.
+ * Scripts of sources encrypted at rest are not stored, nor when no unit secret is set.
+ * Failures of the disk cache never fail the request. The script is compiled as usual instead.
+ */
+final class ScriptDiskCache {
+    /** Logger Object. */
+    private static Logger log = LoggerFactory.getLogger(ScriptDiskCache.class);
+
+    /** File header. */
+    private static final int MAGIC = 0x50534332;
+    /** MAC algorithm of the entries. */
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    /** Length of the MAC at the end of an entry(bytes). */
+    private static final int MAC_LENGTH = 32;
+    /** Package of the generated classes. */
+    private static final String GENERATED_CLASS_PREFIX = "io.personium.engine.gen.Script_";
+    /** Eviction removes entries until the total size falls to this ratio of the max size. */
+    private static final double EVICTION_RATIO = 0.9;
+
+    /** Total size of the entries(bytes). -1 until the directory is scanned. */
+    private static final AtomicLong SIZE = new AtomicLong(-1);
+    /** Number of scripts read from the disk. */
+    private static final AtomicLong HITS = new AtomicLong();
+
+    /**
+     * Constructor.
+     */
+    private ScriptDiskCache() {
+    }
+
+    /**
+     * Compile the script at the optimization level of the context, reading and writing the disk cache
+     * when enabled and the level is 0 or higher.
+     * @param cx Rhino Context
+     * @param source script source
+     * @param sourceName source name used in error messages
+     * @return compiled script
+     */
+    static Script compile(Context cx, ScriptSource source, String sourceName) {
+        if (cx.getOptimizationLevel() < 0) {
+            return compileReader(cx, source, sourceName);
+        }
+        String secret = PersoniumEngineConfig.getTokenSecretKey();
+        if (!PersoniumEngineConfig.getScriptDiskCacheEnabled() || source.isEncrypted() || secret == null) {
+            // When bytecode cannot be generated, Rhino parses the source again for the interpreter,
+            // which a Reader already consumed cannot give.
+            return cx.compileString(source.getText(), sourceName, 1, null);
+        }
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.initFromContext(cx);
+        File dir = new File(PersoniumEngineConfig.getScriptDiskCacheDir());
+        String key = key(env, source, sourceName);
+        File file = new File(dir, key);
+        Mac mac = newMac(secret, key);
+
+        if (file.isFile()) {
+            try {
+                Script script = read(cx, file, mac);
+                // Keep recently used entries from the eviction.
+                file.setLastModified(System.currentTimeMillis());
+                HITS.incrementAndGet();
+                return script;
+            } catch (SignatureException e) {
+                log.warn("Discarding compiled script failing authentication " + file);
+                file.delete();
+            } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+                log.info("Discarding unreadable compiled script " + file + " : " + e.getMessage());
+                file.delete();
+            }
+        }
+
+        // ClassCompiler accepts only a String.
+        String text = source.getText();
+        Script script;
+        byte[] entry;
+        try {
+            Object[] classes = new ClassCompiler(env).compileToClassFiles(text, sourceName, 1,
+                    GENERATED_CLASS_PREFIX + key.substring(0, 16));
+            script = define(cx, classes);
+            entry = serialize(classes, mac);
+        } catch (IOException | ReflectiveOperationException e) {
+            log.info("Failed to prepare compiled script for the disk cache : " + e.getMessage());
+            return cx.compileString(text, sourceName, 1, null);
+        }
+        write(dir, file, entry);
+        return script;
+    }
+
+    /**
+     * Compile the script for the interpreter from a Reader over the source bytes.
+     * Rhino tokenizes the Reader as it goes, without making a String of the whole source.
+     * @param cx Rhino Context
+     * @param source script source
+     * @param sourceName source name used in error messages
+     * @return compiled script
+     */
+    private static Script compileReader(Context cx, ScriptSource source, String sourceName) {
+        try (Reader reader = source.openReader()) {
+            return cx.compileReader(reader, sourceName, 1, null);
+        } catch (IOException e) {
+            // not thrown by reading the bytes in memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Number of scripts read from the disk cache.
+     * @return count
+     */
+    static long getHitCount() {
+        return HITS.get();
+    }
+
+    /**
+     * Cache key of the script.
+     * @param env compiler settings
+     * @param source script source
+     * @param sourceName source name
+     * @return hex encoded SHA-256
+     */
+    static String key(CompilerEnvirons env, ScriptSource source, String sourceName) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String settings = PersoniumEngineConfig.getVersion()
+                + '\0' + Context.getCurrentContext().getImplementationVersion()
+                + '\0' + env.getLanguageVersion()
+                + '\0' + env.getOptimizationLevel()
+                + '\0' + env.isGenerateObserverCount()
+                + '\0' + sourceName
+                + '\0';
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        source.digest(digest);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * MAC of the entry of the key.
+     * @param secret unit secret
+     * @param key cache key, authenticated together with the entry so that entries cannot be swapped
+     * @return MAC updated with the key
+     */
+    private static Mac newMac(String secret, String key) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM));
+            mac.update(key.getBytes(StandardCharsets.UTF_8));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] serialize(Object[] classes, Mac mac) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(classes.length / 2);
+            for (int i = 0; i < classes.length; i += 2) {
+                byte[] classBytes = (byte[]) classes[i + 1];
+                out.writeUTF((String) classes[i]);
+                out.writeInt(classBytes.length);
+                out.write(classBytes);
+            }
+        }
+        byte[] entry = bytes.toByteArray();
+        mac.update(entry);
+        bytes.write(mac.doFinal());
+        return bytes.toByteArray();
+    }
+
+    private static Script read(Context cx, File file, Mac mac)
+            throws IOException, ReflectiveOperationException, SignatureException {
+        byte[] entry = Files.readAllBytes(file.toPath());
+        if (entry.length < MAC_LENGTH) {
+            throw new SignatureException();
+        }
+        int length = entry.length - MAC_LENGTH;
+        mac.update(entry, 0, length);
+        if (!MessageDigest.isEqual(mac.doFinal(), Arrays.copyOfRange(entry, length, entry.length))) {
+            throw new SignatureException();
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry, 0, length))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("unknown format");
+            }
+            int count = in.readInt();
+            Object[] classes = new Object[count * 2];
+            for (int i = 0; i < classes.length; i += 2) {
+                classes[i] = in.readUTF();
+                byte[] classBytes = new byte[in.readInt()];
+                in.readFully(classBytes);
+                classes[i + 1] = classBytes;
+            }
+            return define(cx, classes);
+        }
+    }
+
+    /**
+     * Define the generated classes in a class loader of their own, as Rhino does for compiled scripts.
+     * @param cx Rhino Context
+     * @param classes class names and bytes. The first one is the script class.
+     * @return script
+     * @throws ReflectiveOperationException failed to instantiate the script
+     */
+    private static Script define(Context cx, Object[] classes) throws ReflectiveOperationException {
+        GeneratedClassLoader loader = cx.createClassLoader(cx.getApplicationClassLoader());
+        Class<?> scriptClass = null;
+        for (int i = 0; i < classes.length; i += 2) {
+            Class<?> clazz = loader.defineClass((String) classes[i], (byte[]) classes[i + 1]);
+            if (scriptClass == null) {
+                scriptClass = clazz;
+            }
+        }
+        loader.linkClass(scriptClass);
+        return (Script) scriptClass.getDeclaredConstructor().newInstance();
+    }
+
+    private static void write(File dir, File file, byte[] entry) {
+        File tmp = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            Files.createDirectories(dir.toPath());
+            try (BufferedOutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()))) {
+                out.write(entry);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.info("Failed to write compiled script to the disk cache : " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        long maxSize = PersoniumEngineConfig.getScriptDiskCacheMaxSize();
+        if (SIZE.get() < 0 || SIZE.addAndGet(entry.length) > maxSize) {
+            evict(dir, maxSize);
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the total size falls below the max size.
+     * The total size is recalculated from the directory, which also picks up entries written before restart.
+     * @param dir cache directory
+     * @param maxSize max total size(bytes)
+     */
+    static synchronized void evict(File dir, long maxSize) {
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total > maxSize) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            long target = (long) (maxSize * EVICTION_RATIO);
+            for (int i = 0; i < files.length && total > target; i++) {
+                long length = files[i].length();
+                if (files[i].delete()) {
+                    total -= length;
+                }
+            }
+        }
+        SIZE.set(total);
+    }
+}
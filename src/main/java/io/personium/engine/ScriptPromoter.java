@@ -0,0 +1,150 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.engine.model.ScriptCache;
+import io.personium.engine.model.ScriptSource;
+import io.personium.engine.utils.PersoniumEngineConfig;
+
+/**
+ * Tiered execution of user scripts.
+ * Scripts start at the configured optimization level, and those executed often or long are
+ * recompiled at a higher optimization level on a background thread.
+ * Subsequent requests pick up the recompiled script from the cache entry.
+ */
+final class ScriptPromoter {
+    /** Logger Object. */
+    private static Logger log = LoggerFactory.getLogger(ScriptPromoter.class);
+
+    /** Class of the scripts run by the interpreter. Not public in Rhino. */
+    private static final String INTERPRETED_CLASS = "org.mozilla.javascript.InterpretedFunction";
+
+    /** Background compiler. Each cache entry is submitted at most once. */
+    private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "personium-script-promoter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor.
+     */
+    private ScriptPromoter() {
+    }
+
+    /**
+     * Make a newly cached script a candidate for the promotion.
+     * @param cache cache entry
+     * @param source compiled source
+     * @param sourceName source name used in error messages
+     * @param reader reads the source again when the script is promoted
+     * @param resized called when the estimated size of the entry changed by the promotion
+     */
+    static void prepare(ScriptCache cache, ScriptSource source, String sourceName, Callable<ScriptSource> reader,
+            Runnable resized) {
+        if (PersoniumEngineConfig.getScriptTieredEnabled()
+                && cache.getCurrentOptimizationLevel() < PersoniumEngineConfig.getScriptTieredOptimizationLevel()) {
+            cache.setPromotableSource(reader, source.contentKey(), sourceName, resized);
+        }
+    }
+
+    /**
+     * Record an execution and schedule the promotion when the script became hot.
+     * @param cache cache entry
+     * @param nanos execution time(nsec)
+     */
+    static void recordExecution(ScriptCache cache, long nanos) {
+        cache.recordExecution(nanos);
+        if (!cache.isPromotable()) {
+            return;
+        }
+        if (isHot(cache, PersoniumEngineConfig.getScriptTieredInvocationThreshold(),
+                PersoniumEngineConfig.getScriptTieredExecTimeThreshold()) && cache.beginPromotion()) {
+            int level = PersoniumEngineConfig.getScriptTieredOptimizationLevel();
+            COMPILER.execute(() -> promote(cache, level));
+        }
+    }
+
+    /**
+     * Whether the script crossed one of the thresholds.
+     * @param cache cache entry
+     * @param invocationThreshold number of invocations
+     * @param execTimeThreshold cumulative execution time(msec)
+     * @return true if hot
+     */
+    static boolean isHot(ScriptCache cache, long invocationThreshold, long execTimeThreshold) {
+        return cache.getInvocationCount() >= invocationThreshold
+                || TimeUnit.NANOSECONDS.toMillis(cache.getExecTime()) >= execTimeThreshold;
+    }
+
+    /**
+     * Recompile the script and swap it into the cache entry.
+     * @param cache cache entry in the PROMOTING tier
+     * @param level optimization level
+     */
+    static void promote(ScriptCache cache, int level) {
+        String sourceName = cache.getSourceName();
+        long start = System.currentTimeMillis();
+        Context cx = PersoniumJsContextFactory.getShared().enterThreadContext();
+        try {
+            ScriptSource source = cache.readSource();
+            if (source == null) {
+                // changed or removed. The entry is compiled again on the next request.
+                cache.failPromotion();
+                log.info("Script promotion skipped : source changed since compiled");
+                return;
+            }
+            cx.setOptimizationLevel(level);
+            Script optimized = ScriptContentCache.compile(cx, source, sourceName);
+            int produced = producedLevel(optimized, level);
+            cache.completePromotion(optimized, produced);
+            log.info("Script promoted to optimization level " + produced + " in "
+                    + (System.currentTimeMillis() - start) + " msec. invocations=" + cache.getInvocationCount());
+        } catch (Throwable t) {
+            // Leave the PROMOTING tier whatever happened, so that the entry is not stuck in it.
+            cache.failPromotion();
+            log.info("Script promotion failed : " + t.getMessage());
+            if (t instanceof VirtualMachineError) {
+                throw (VirtualMachineError) t;
+            }
+        } finally {
+            cx.setOptimizationLevel(-1);
+            Context.exit();
+        }
+    }
+
+    /**
+     * Optimization level the script was actually produced at.
+     * Rhino falls back to the interpreter when bytecode cannot be generated, e.g. for a method exceeding 64KB.
+     * @param script compiled script
+     * @param level requested optimization level
+     * @return -1 if interpreted, otherwise the requested level
+     */
+    static int producedLevel(Script script, int level) {
+        return INTERPRETED_CLASS.equals(script.getClass().getName()) ? -1 : level;
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.javascript.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.engine.model.ScriptCache;
+import io.personium.engine.source.ISourceManager;
+import io.personium.engine.source.ServiceSourceWatcher;
+
+/**
+ * Recompiles user scripts of watched service collections when their sources change.
+ * The outdated entry is removed from the script cache at once, and the script is compiled again on a
+ * background thread so that the next request finds the current script already compiled.
+ * A request arriving during the recompilation waits for it instead of compiling the script again.
+ */
+final class ScriptRefresher implements ServiceSourceWatcher.Listener {
+    /** Logger Object. */
+    private static Logger log = LoggerFactory.getLogger(ScriptRefresher.class);
+
+    /** Background compiler. */
+    private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "personium-script-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Scripts to recompile by source directory. */
+    private static final Map<String, Refresh> REFRESHES = new ConcurrentHashMap<String, Refresh>();
+
+    private static final AtomicLong REFRESHED = new AtomicLong();
+    private static final AtomicLong FAILED = new AtomicLong();
+
+    /** User script cache. */
+    private final Map<String, ScriptCache> userScriptCache;
+
+    /**
+     * Constructor.
+     * @param userScriptCache user script cache
+     */
+    ScriptRefresher(Map<String, ScriptCache> userScriptCache) {
+        this.userScriptCache = userScriptCache;
+    }
+
+    /**
+     * Start receiving changes of the watched sources.
+     * @param userScriptCache user script cache
+     */
+    static void install(Map<String, ScriptCache> userScriptCache) {
+        ServiceSourceWatcher.addListener(new ScriptRefresher(userScriptCache));
+    }
+
+    /**
+     * Remember how to compile the script again when its source changes.
+     * @param sourceManager source manager of a watched collection
+     * @param cacheName script name in the script cache, which is also the source file name
+     * @param sourceName source name used in error messages
+     * @param prefix source placed before the file content
+     * @param suffix source placed after the file content
+     */
+    static void register(ISourceManager sourceManager, String cacheName, String sourceName,
+            String prefix, String suffix) {
+        String key = sourceManager.getCacheKey(cacheName);
+        REFRESHES.put(new File(key).getPath(),
+                new Refresh(sourceManager, key, cacheName, sourceName, prefix, suffix));
+    }
+
+    /**
+     * Number of scripts recompiled after changes.
+     * @return count
+     */
+    static long getRefreshedCount() {
+        return REFRESHED.get();
+    }
+
+    /**
+     * Number of failed recompilations.
+     * @return count
+     */
+    static long getFailedCount() {
+        return FAILED.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void changed(String collectionPath, String dir) {
+        Refresh refresh = REFRESHES.get(dir);
+        if (refresh == null) {
+            userScriptCache.remove(dir);
+            return;
+        }
+        userScriptCache.remove(refresh.key);
+        COMPILER.execute(refresh::run);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void unwatched(String collectionPath) {
+        String prefix = new File(collectionPath).getPath() + File.separator;
+        REFRESHES.keySet().removeIf(dir -> dir.startsWith(prefix));
+    }
+
+    /**
+     * Recompilation of a script.
+     */
+    private static final class Refresh {
+        private final ISourceManager sourceManager;
+        private final String key;
+        private final String cacheName;
+        private final String sourceName;
+        private final String prefix;
+        private final String suffix;
+
+        Refresh(ISourceManager sourceManager, String key, String cacheName, String sourceName,
+                String prefix, String suffix) {
+            this.sourceManager = sourceManager;
+            this.key = key;
+            this.cacheName = cacheName;
+            this.sourceName = sourceName;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        void run() {
+            long start = System.currentTimeMillis();
+            Context cx = PersoniumJsContextFactory.getShared().enterThreadContext();
+            try {
+                PersoniumEngineContext.recompileAndCache(cx, sourceManager, sourceName, cacheName, prefix, suffix);
+                REFRESHED.incrementAndGet();
+                log.info("Recompiled changed script " + key + " in " + (System.currentTimeMillis() - start)
+                        + " msec.");
+            } catch (PersoniumEngineException | RuntimeException e) {
+                // e.g. removed, or a syntax error. The request reports it when the script is used.
+                FAILED.incrementAndGet();
+                log.info("Failed to recompile changed script " + key + " : " + e.getMessage());
+            } finally {
+                Context.exit();
+            }
+        }
+    }
+}
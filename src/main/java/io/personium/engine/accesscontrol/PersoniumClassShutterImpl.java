@@ -16,8 +16,8 @@
  */
 package io.personium.engine.accesscontrol;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mozilla.javascript.ClassShutter;
 
@@ -26,7 +26,7 @@ import org.mozilla.javascript.ClassShutter;
  * Controlling the call-able Java packages on PersoniumEngine.
  */
 public final class PersoniumClassShutterImpl implements ClassShutter {
-    private static final Set<String> ACCEPTED = new HashSet<String>();
+    private static final Set<String> ACCEPTED = ConcurrentHashMap.newKeySet();
 
     private static String[] allow = {
             // Classes / Packages that Personium Engine opens access to the 
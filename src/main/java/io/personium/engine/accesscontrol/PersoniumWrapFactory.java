@@ -18,12 +18,20 @@ package io.personium.engine.accesscontrol;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.simple.JSONObject;
+import org.mozilla.javascript.BaseFunction;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Function;
 import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.NativeJavaClass;
+import org.mozilla.javascript.NativeJavaMethod;
+import org.mozilla.javascript.NativeJavaObject;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.WrapFactory;
 
 import io.personium.engine.adapter.PersoniumRequestBodyStream;
@@ -37,9 +45,14 @@ import io.personium.engine.extension.wrapper.PersoniumInputStream;
  *  wrapped in accordance with this class and then received
  *  by JavaScript layer.
  *  Configured at PersoniumJsContextFactory#makeContext(): Context
+ *  Java objects and classes are wrapped so that each scope gets its own
+ *  functions calling the reflected methods shared by every scope.
  */
 public class PersoniumWrapFactory extends WrapFactory {
 
+    /** Key of the functions of a top-level scope calling the reflected methods. */
+    private static final String SCOPED_METHODS_KEY = "PersoniumScopedJavaMethods";
+
     /** 
      * Perform the following conversions.
      * When Number is passed, by not wrapping, let Rhino convert it to a JavaScript number.
@@ -90,4 +103,107 @@ public class PersoniumWrapFactory extends WrapFactory {
         }
         return super.wrapNewObject(cx, scope, obj);
     }
+
+    @Override
+    public Scriptable wrapAsJavaObject(Context cx, Scriptable scope, Object javaObject, Class<?> staticType) {
+        return new ScopedJavaObject(scope, javaObject, staticType);
+    }
+
+    @Override
+    public Scriptable wrapJavaClass(Context cx, Scriptable scope, Class<?> javaClass) {
+        return new ScopedJavaClass(scope, javaClass);
+    }
+
+    /**
+     * Get the function of the scope calling the reflected method.
+     * The reflected methods are shared by every scope (see PersoniumClassCache),
+     * so that they are not returned to JavaScript as is, where they could be modified for the other scopes.
+     * @param member member of a Java object or class
+     * @param scope scope of the Java object or class
+     * @return member, or function of the scope if the member is a reflected method
+     */
+    @SuppressWarnings("unchecked")
+    static Object scopedMember(Object member, Scriptable scope) {
+        if (member == null || member.getClass() != NativeJavaMethod.class) {
+            // Fields, and methods also having a field of the same name (created per Java object).
+            return member;
+        }
+        ScriptableObject topScope = (ScriptableObject) ScriptableObject.getTopLevelScope(scope);
+        Map<NativeJavaMethod, Function> methods = (Map<NativeJavaMethod, Function>) topScope
+                .getAssociatedValue(SCOPED_METHODS_KEY);
+        if (methods == null) {
+            // associateValue returns the map already associated by another thread, if any.
+            methods = (Map<NativeJavaMethod, Function>) topScope.associateValue(SCOPED_METHODS_KEY,
+                    new ConcurrentHashMap<NativeJavaMethod, Function>());
+        }
+        return methods.computeIfAbsent((NativeJavaMethod) member, method -> new ScopedJavaMethod(topScope, method));
+    }
+
+    /**
+     * Function of a scope calling a reflected method.
+     */
+    @SuppressWarnings("serial")
+    static final class ScopedJavaMethod extends BaseFunction {
+        private final NativeJavaMethod method;
+
+        ScopedJavaMethod(Scriptable scope, NativeJavaMethod method) {
+            super(scope, ScriptableObject.getFunctionPrototype(scope));
+            this.method = method;
+        }
+
+        @Override
+        public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+            return method.call(cx, scope, thisObj, args);
+        }
+
+        @Override
+        public Scriptable construct(Context cx, Scriptable scope, Object[] args) {
+            return method.construct(cx, scope, args);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return method.getFunctionName();
+        }
+
+        @Override
+        public int getArity() {
+            return method.getArity();
+        }
+
+        @Override
+        public int getLength() {
+            return method.getLength();
+        }
+    }
+
+    /**
+     * NativeJavaObject returning the methods of its scope.
+     */
+    @SuppressWarnings("serial")
+    static class ScopedJavaObject extends NativeJavaObject {
+        ScopedJavaObject(Scriptable scope, Object javaObject, Class<?> staticType) {
+            super(scope, javaObject, staticType);
+        }
+
+        @Override
+        public Object get(String name, Scriptable start) {
+            return scopedMember(super.get(name, start), getParentScope());
+        }
+    }
+
+    /**
+     * NativeJavaClass returning the static methods of its scope.
+     */
+    @SuppressWarnings("serial")
+    static class ScopedJavaClass extends NativeJavaClass {
+        ScopedJavaClass(Scriptable scope, Class<?> javaClass) {
+            super(scope, javaClass);
+        }
+
+        @Override
+        public Object get(String name, Scriptable start) {
+            return scopedMember(super.get(name, start), getParentScope());
+        }
+    }
 }
@@ -16,8 +16,6 @@
  */
 package io.personium.engine.adapter;
 
-import java.util.Date;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -56,13 +54,7 @@ public class Require {
      * @throws PersoniumEngineException Exception about Engine
      */
     public Object doRequire(String moduleName) throws PersoniumEngineException {
-        String source = this.sourceManager.getSource(moduleName + ".js");
-        Date date = new Date();
-        Long time = date.getTime();
-        String key = moduleName + time.toString();
-        source = key + " = function() {};(function(exports) {" + source + "})(" + key + ");" + key;
-
-        return this.context.requireJs(source, moduleName);
+        return this.context.requireJs(moduleName);
     }
 
     /**
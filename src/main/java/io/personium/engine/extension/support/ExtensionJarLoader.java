@@ -19,6 +19,7 @@ package io.personium.engine.extension.support;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -79,7 +80,7 @@ public class ExtensionJarLoader {
      * @throws IOException Extension読み込み中にエラーが発生
      * @throws PersoniumEngineException Extension読み込み中にエラーが発生
      */
-    public static ExtensionJarLoader getInstance(ClassLoader parentCl, ExtensionClassFilter filter)
+    public static synchronized ExtensionJarLoader getInstance(ClassLoader parentCl, ExtensionClassFilter filter)
             throws IOException, PersoniumEngineException {
         if (null == singleton) {
             String extensionDir = System.getProperty(ENGINE_EXTENSION_DIR_KEY, DEFAULT_EXTENSION_DIR)
@@ -242,6 +243,7 @@ public class ExtensionJarLoader {
                             Class<?> cl = classloader.loadClass(className);
                             if (ScriptableObject.class.isAssignableFrom(cl) || Scriptable.class.isAssignableFrom(cl)) {
                                 scriptableClassSet.add((Class<? extends Scriptable>) cl);
+                                injectLogger(cl);
                                 log.info(String.format(
                                     "Info: Extension class %s is revealed to JavaScript.", className));
                                 // OK.
@@ -282,6 +284,33 @@ public class ExtensionJarLoader {
         return scriptableClassSet;
     }
 
+    /**
+     * Extensionクラス内で利用可能なロガーを渡す.
+     * クラスのロード時に一度だけ行う。この処理の間に例外が発生しても、何も行わず無視する。
+     * （ロガー設定はしないまま正常に動作させる。)
+     * @param clazz Extensionクラス
+     */
+    @SuppressWarnings("unchecked")
+    private void injectLogger(Class<?> clazz) {
+        if (!AbstractExtensionScriptableObject.class.isAssignableFrom(clazz)) {
+            return;
+        }
+        Class<? extends AbstractExtensionScriptableObject> extensionClazz
+            = (Class<? extends AbstractExtensionScriptableObject>) clazz;
+        try {
+            Method setLoggerMethod = extensionClazz.getMethod(
+                    "setLogger",
+                    new Class[] {
+                            Class.class,
+                            IExtensionLogger.class });
+            setLoggerMethod.setAccessible(true);
+            setLoggerMethod.invoke(null,
+                    new Object[] {extensionClazz, new ExtensionLogger(extensionClazz)});
+        } catch (Exception e) {
+            log.info("setLogger method cannot be called.", e);
+        }
+    }
+
     /**
      * Jarファイル内のエントリから、パス部分とクラス名部分とを分離する.
      * @param jarEntryStr Jarファイル内のエントリパス
@@ -17,6 +17,7 @@
 package io.personium.engine.jsgi;
 
 import java.util.Enumeration;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -64,6 +65,7 @@ public final class JSGIRequest {
         request.put("port", request, this.req.getAttribute("port").toString());
         request.put("scriptName", request, this.req.getAttribute("scriptName").toString());
         request.put("pathInfo", request, this.req.getPathInfo());
+        request.put("pathParams", request, this.pathParams());
         // Hack since
         // query cannot be obtained with servlet.getQueryString when receiving POST on server
         String[] urlItems = this.req.getAttribute("env.requestUri").toString().split("\\?");
@@ -92,6 +94,7 @@ public final class JSGIRequest {
         log.debug(String.format(format, "method", request.get("method", request)));
         log.debug(String.format(format, "scriptName", request.get("scriptName", request)));
         log.debug(String.format(format, "pathInfo", request.get("pathInfo", request)));
+        log.debug(String.format(format, "pathParams", request.get("pathParams", request)));
         log.debug(String.format(format, "queryString", request.get("queryString", request)));
         log.debug(String.format(format, "host", request.get("host", request)));
         log.debug(String.format(format, "port", request.get("port", request)));
@@ -119,6 +122,21 @@ public final class JSGIRequest {
         return headers;
     }
 
+    /**
+     * Template variables captured by the route of the service.
+     */
+    @SuppressWarnings("unchecked")
+    private NativeObject pathParams() {
+        NativeObject pathParams = new NativeObject();
+        Object params = this.req.getAttribute("pathParams");
+        if (params instanceof Map) {
+            for (Map.Entry<String, String> param : ((Map<String, String>) params).entrySet()) {
+                pathParams.put(param.getKey(), pathParams, param.getValue());
+            }
+        }
+        return pathParams;
+    }
+
     private NativeObject env() {
         NativeObject env = new NativeObject();
         env.put("requestUri", env, req.getAttribute("env.requestUri").toString());
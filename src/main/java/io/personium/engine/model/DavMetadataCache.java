@@ -0,0 +1,367 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.engine.PersoniumEngineException;
+import io.personium.engine.utils.PersoniumEngineConfig;
+
+/**
+ * Cache of the Dav metadata files (.pmeta) read by the engine.
+ * A cached entry is used as long as the size, the modification time and the file key of the file are unchanged,
+ * so that a request costs one stat call per metadata file instead of reading and parsing it.
+ * Only the fields the engine uses are parsed: updated(u), encryption type(et) and some properties(d).
+ */
+public final class DavMetadataCache {
+    /** Logger. */
+    private static Logger log = LoggerFactory.getLogger(DavMetadataCache.class);
+
+    /** Property holding the service definition of a service collection. */
+    public static final String PROP_SERVICE = "service@urn:x-personium:xmlns";
+    /** Property holding the optimization level of a service collection. */
+    public static final String PROP_OPTIMIZATION_LEVEL = "optimizationLevel@urn:x-personium:xmlns";
+
+    /** Milliseconds to wait first before reading the metafile again. Doubled on each retry. */
+    private static final long META_LOAD_RETRY_WAIT = 10L;
+    /** Max milliseconds to wait before reading the metafile again. */
+    private static final long META_LOAD_RETRY_WAIT_MAX = 100L;
+
+    /** JSON Key for updated. */
+    private static final String KEY_UPDATED = "u";
+    /** JSON Key for Encryption Type. */
+    private static final String KEY_ENCRYPTION_TYPE = "et";
+    /** JSON Key for properties. */
+    private static final String KEY_PROPS = "d";
+    /** Properties kept in the cache. */
+    private static final Set<String> CACHED_PROPS = new HashSet<String>(
+            Arrays.asList(PROP_SERVICE, PROP_OPTIMIZATION_LEVEL));
+
+    /** Cached metadata by file path. */
+    private static final Map<String, Metadata> CACHE = new ConcurrentHashMap<String, Metadata>();
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder LOADS = new LongAdder();
+    /** Number of last versions returned while the file was being written. */
+    private static final LongAdder STALE = new LongAdder();
+    /** Number of invalidations, so that metadata read before an invalidation is not cached after it. */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    /**
+     * Constructor.
+     */
+    private DavMetadataCache() {
+    }
+
+    /**
+     * Get the metadata of the Dav resource, reading the file only when it has changed.
+     * A metafile being written by core may be read torn. Then the last version read is returned while
+     * the file settles, and the file is read again on the next call.
+     * Only when there is no such version, the file is read again for up to metadataCache.loadTimeout.
+     * A missing file fails at once, and is remembered as missing until invalidated.
+     * @param fsPath dav file path
+     * @return metadata
+     * @throws PersoniumEngineException the file cannot be read or is broken
+     */
+    public static Metadata get(String fsPath) throws PersoniumEngineException {
+        Path path = new File(fsPath, DavMetadataFile.DAV_META_FILE_NAME).toPath();
+        String key = path.toString();
+        if (NegativeCache.isMissing(key)) {
+            throw new PersoniumEngineException("Error occured while loading metafile.",
+                    PersoniumEngineException.STATUSCODE_SERVER_ERROR);
+        }
+        long timeout = TimeUnit.MILLISECONDS.toNanos(PersoniumEngineConfig.getMetadataCacheLoadTimeout());
+        long start = System.nanoTime();
+        long wait = META_LOAD_RETRY_WAIT;
+        int retryCount = 0;
+        while (true) {
+            Metadata cached = CACHE.get(key);
+            BasicFileAttributes attrs = null;
+            Exception failure;
+            try {
+                long generation = GENERATION.get();
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                if (cached != null && cached.isValid(attrs)) {
+                    HITS.increment();
+                    return cached;
+                }
+                Metadata metadata = load(path, attrs);
+                LOADS.increment();
+                put(key, metadata, generation);
+                return metadata;
+            } catch (NoSuchFileException e) {
+                // removed, or never created. Not worth waiting for.
+                CACHE.remove(key);
+                NegativeCache.putMissing(key);
+                throw new PersoniumEngineException("Error occured while loading metafile.",
+                        PersoniumEngineException.STATUSCODE_SERVER_ERROR, e);
+            } catch (IOException | ParseException | RuntimeException e) {
+                failure = e;
+            }
+            if (cached != null && (attrs == null || isSettling(attrs, timeout))) {
+                STALE.increment();
+                log.info("Meta file is being written. Last version is used : " + key);
+                return cached;
+            }
+            long remaining = timeout - (System.nanoTime() - start);
+            if (remaining <= 0) {
+                throw new PersoniumEngineException("Error occured while loading metafile.",
+                        PersoniumEngineException.STATUSCODE_SERVER_ERROR, failure);
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(TimeUnit.MILLISECONDS.toNanos(wait), remaining));
+            } catch (InterruptedException ie) {
+                throw new RuntimeException(ie);
+            }
+            wait = Math.min(wait * 2, META_LOAD_RETRY_WAIT_MAX);
+            retryCount++;
+            log.info("Meta file load retry. RetryCount:" + retryCount);
+        }
+    }
+
+    /**
+     * Get the cached metadata of the Dav resource without checking the file, reading it only when not cached.
+     * Used for files watched for changes, which are invalidated when changed.
+     * @param fsPath dav file path
+     * @return metadata
+     * @throws PersoniumEngineException the file cannot be read or is broken
+     */
+    public static Metadata getUnchecked(String fsPath) throws PersoniumEngineException {
+        Metadata cached = CACHE.get(new File(fsPath, DavMetadataFile.DAV_META_FILE_NAME).getPath());
+        if (cached != null) {
+            HITS.increment();
+            return cached;
+        }
+        return get(fsPath);
+    }
+
+    /**
+     * Discard the cached metadata of the Dav resource, and forget that its files were missing.
+     * @param fsPath dav file path
+     */
+    public static void invalidate(String fsPath) {
+        NegativeCache.invalidateDirectory(fsPath);
+        CACHE.compute(new File(fsPath, DavMetadataFile.DAV_META_FILE_NAME).getPath(), (k, v) -> {
+            GENERATION.incrementAndGet();
+            return null;
+        });
+    }
+
+    /**
+     * Counters of the cache.
+     * @return hits, loads, stale and entries
+     */
+    public static Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        stats.put("hits", HITS.sum());
+        stats.put("loads", LOADS.sum());
+        stats.put("stale", STALE.sum());
+        stats.put("entries", (long) CACHE.size());
+        return stats;
+    }
+
+    private static void put(String key, Metadata metadata, long generation) {
+        int maxEntries = PersoniumEngineConfig.getMetadataCacheMaxEntries();
+        if (maxEntries <= 0) {
+            return;
+        }
+        // Metadata is cheap to read again. Drop arbitrary entries rather than tracking the usage.
+        Iterator<String> keys = CACHE.keySet().iterator();
+        while (CACHE.size() >= maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+        CACHE.compute(key, (k, v) -> GENERATION.get() == generation ? metadata : v);
+    }
+
+    private static Metadata load(Path path, BasicFileAttributes attrs) throws IOException, ParseException {
+        Handler handler = new Handler();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            new JSONParser().parse(reader, handler);
+        }
+        if (handler.objects != 0 || handler.arrays != 0) {
+            throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN);
+        }
+        Metadata metadata = new Metadata(attrs, handler.updated, handler.encryptionType,
+                Collections.unmodifiableMap(handler.properties));
+        if (!metadata.isValid(Files.readAttributes(path, BasicFileAttributes.class))) {
+            throw new IOException("Meta file was changed while reading.");
+        }
+        return metadata;
+    }
+
+    /**
+     * Whether the file was modified so recently that it may still be being written.
+     */
+    private static boolean isSettling(BasicFileAttributes attrs, long timeout) {
+        long age = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - attrs.lastModifiedTime().toMillis());
+        return age < timeout;
+    }
+
+    /**
+     * Fields of a metadata file used by the engine.
+     */
+    public static final class Metadata {
+        private final long size;
+        private final long lastModified;
+        private final Object fileKey;
+        private final Long updated;
+        private final String encryptionType;
+        private final Map<String, String> properties;
+
+        Metadata(BasicFileAttributes attrs, Long updated, String encryptionType, Map<String, String> properties) {
+            this.size = attrs.size();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+            this.fileKey = attrs.fileKey();
+            this.updated = updated;
+            this.encryptionType = encryptionType;
+            this.properties = properties;
+        }
+
+        boolean isValid(BasicFileAttributes attrs) {
+            return size == attrs.size() && lastModified == attrs.lastModifiedTime().toMillis()
+                    && Objects.equals(fileKey, attrs.fileKey());
+        }
+
+        /**
+         * @return the updated
+         */
+        public Long getUpdated() {
+            return updated;
+        }
+
+        /**
+         * @return encryption type string.
+         */
+        public String getEncryptionType() {
+            return encryptionType;
+        }
+
+        /**
+         * Get property. Only PROP_SERVICE and PROP_OPTIMIZATION_LEVEL are kept.
+         * @param key Property key
+         * @return property value, or null if not set
+         */
+        public String getProperty(String key) {
+            return properties.get(key);
+        }
+    }
+
+    /**
+     * Picks the cached fields while parsing, without building the whole JSON object.
+     */
+    private static final class Handler implements ContentHandler {
+        /** Keys of the open object entries, innermost first. */
+        private final Deque<String> keys = new ArrayDeque<String>();
+        private int objects;
+        private int arrays;
+        private Long updated;
+        private String encryptionType;
+        private final Map<String, String> properties = new HashMap<String, String>();
+
+        @Override
+        public void startJSON() {
+        }
+
+        @Override
+        public void endJSON() {
+        }
+
+        @Override
+        public boolean startObject() {
+            objects++;
+            return true;
+        }
+
+        @Override
+        public boolean endObject() {
+            objects--;
+            return true;
+        }
+
+        @Override
+        public boolean startObjectEntry(String key) {
+            keys.push(key);
+            return true;
+        }
+
+        @Override
+        public boolean endObjectEntry() {
+            keys.pop();
+            return true;
+        }
+
+        @Override
+        public boolean startArray() {
+            arrays++;
+            return true;
+        }
+
+        @Override
+        public boolean endArray() {
+            arrays--;
+            return true;
+        }
+
+        @Override
+        public boolean primitive(Object value) {
+            if (arrays > 0) {
+                return true;
+            }
+            String key = keys.peek();
+            if (objects == 1 && keys.size() == 1) {
+                if (KEY_UPDATED.equals(key) && value instanceof Long) {
+                    updated = (Long) value;
+                } else if (KEY_ENCRYPTION_TYPE.equals(key) && value instanceof String) {
+                    encryptionType = (String) value;
+                }
+            } else if (objects == 2 && keys.size() == 2 && KEY_PROPS.equals(keys.peekLast())
+                    && CACHED_PROPS.contains(key) && value instanceof String) {
+                properties.put(key, (String) value);
+            }
+            return true;
+        }
+    }
+}
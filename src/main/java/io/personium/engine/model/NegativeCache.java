@@ -0,0 +1,121 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.model;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.personium.engine.utils.PersoniumEngineConfig;
+
+/**
+ * Cache of Dav files found missing, so that repeated requests to missing services cost no file operations.
+ * Entries are keyed by the path of the missing file itself, e.g. the metafile or the content file,
+ * so that a resource having one but not the other is not reported missing for both.
+ * An entry expires after a short time, and is discarded at once when its directory is reported changed
+ * through DavMetadataCache.invalidate. Unlike the positive entries of DavMetadataCache, the entries are
+ * not checked by a stat call, which would cost as much as looking the file up again.
+ */
+public final class NegativeCache {
+    /** Expiration time(System.nanoTime) by file path. */
+    private static final Map<String, Long> CACHE = new ConcurrentHashMap<String, Long>();
+
+    private static final LongAdder HITS = new LongAdder();
+
+    /**
+     * Constructor.
+     */
+    private NegativeCache() {
+    }
+
+    /**
+     * Whether the file was recently found missing.
+     * @param fsPath file path
+     * @return true if missing
+     */
+    public static boolean isMissing(String fsPath) {
+        String key = new File(fsPath).getPath();
+        Long expiration = CACHE.get(key);
+        if (expiration == null) {
+            return false;
+        }
+        if (System.nanoTime() - expiration > 0) {
+            CACHE.remove(key, expiration);
+            return false;
+        }
+        HITS.increment();
+        return true;
+    }
+
+    /**
+     * Remember that the file is missing.
+     * @param fsPath file path
+     */
+    public static void putMissing(String fsPath) {
+        long ttl = PersoniumEngineConfig.getNegativeCacheTtl();
+        int maxEntries = PersoniumEngineConfig.getNegativeCacheMaxEntries();
+        if (ttl <= 0 || maxEntries <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        // Drop expired entries first, then arbitrary ones.
+        if (CACHE.size() >= maxEntries) {
+            CACHE.values().removeIf(expiration -> now - expiration > 0);
+            Iterator<String> keys = CACHE.keySet().iterator();
+            while (CACHE.size() >= maxEntries && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+        CACHE.put(new File(fsPath).getPath(), now + TimeUnit.MILLISECONDS.toNanos(ttl));
+    }
+
+    /**
+     * Forget that the file is missing.
+     * @param fsPath file path
+     */
+    public static void invalidate(String fsPath) {
+        CACHE.remove(new File(fsPath).getPath());
+    }
+
+    /**
+     * Forget that the files in the directory, and the directory itself, are missing.
+     * @param dirPath directory path
+     */
+    public static void invalidateDirectory(String dirPath) {
+        if (CACHE.isEmpty()) {
+            return;
+        }
+        String dir = new File(dirPath).getPath();
+        CACHE.keySet().removeIf(key -> key.equals(dir) || dir.equals(new File(key).getParent()));
+    }
+
+    /**
+     * Counters of the cache.
+     * @return hits and entries
+     */
+    public static Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        stats.put("hits", HITS.sum());
+        stats.put("entries", (long) CACHE.size());
+        return stats;
+    }
+}
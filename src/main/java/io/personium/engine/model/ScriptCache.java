@@ -16,17 +16,74 @@
  */
 package io.personium.engine.model;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.mozilla.javascript.Script;
 
 /**
  * Script cache object class.
+ * When the script is compiled to JVM bytecode, its classes live in a class loader of their own
+ * which becomes unreachable together with this entry.
  */
 public class ScriptCache {
 
-    /** Script cache. */
-    private Script script;
+    /**
+     * Execution tier of the cached script.
+     */
+    public enum Tier {
+        /** Compiled at the configured optimization level. */
+        BASELINE,
+        /** Being recompiled at a higher optimization level. */
+        PROMOTING,
+        /** Recompiled at a higher optimization level. */
+        OPTIMIZED,
+        /** Recompilation failed. Stays at the configured optimization level. */
+        FAILED
+    }
+
+    /** Estimated fixed size(bytes) of an interpreted script. */
+    private static final long INTERPRETED_BASE_SIZE = 4096;
+    /** Estimated size(bytes) of an interpreted script per source character. */
+    private static final long INTERPRETED_SIZE_PER_CHAR = 2;
+    /** Estimated fixed size(bytes) of a script compiled to JVM bytecode, including its class loader. */
+    private static final long COMPILED_BASE_SIZE = 16384;
+    /** Estimated size(bytes) of a script compiled to JVM bytecode per source character. */
+    private static final long COMPILED_SIZE_PER_CHAR = 4;
+
+    /** Script cache. Replaced when the script is promoted. */
+    private volatile Script script;
     /** Script file update time. */
     private Long updateTime;
+    /** Optimization level the script was compiled at. */
+    private int optimizationLevel;
+    /** Estimated memory size(bytes). Updated when the script is promoted. */
+    private volatile long estimatedSize;
+    /** Length of the compiled source. */
+    private final int sourceLength;
+    /** Cache partition (routing ID of the cell). */
+    private String partition;
+    /** Optimization level of the current script. */
+    private volatile int currentOptimizationLevel;
+    /** Execution tier. */
+    private final AtomicReference<Tier> tier = new AtomicReference<Tier>(Tier.BASELINE);
+    /** Number of invocations. */
+    private final AtomicLong invocationCount = new AtomicLong();
+    /** Cumulative execution time(nsec). */
+    private final AtomicLong execTime = new AtomicLong();
+    /** Reads the source again for the recompilation. null if the script is not promotable. */
+    private volatile Callable<ScriptSource> sourceReader;
+    /** Content key of the compiled source, to tell whether the source read again is the same. */
+    private volatile String sourceKey;
+    /** Called when the estimated size changed by the promotion. */
+    private volatile Runnable resizeListener;
+    /** Source name kept for the recompilation. */
+    private volatile String sourceName;
+    /** Whether the script is a module shared across requests. */
+    private volatile boolean shareable;
+    /** Module object of the shared module, once evaluated. */
+    private volatile Object sharedModule;
 
     /**
      * Constructor.
@@ -34,8 +91,35 @@ public class ScriptCache {
      * @param updateTime Script file update time
      */
     public ScriptCache(Script script, Long updateTime) {
+        this(script, updateTime, -1);
+    }
+
+    /**
+     * Constructor.
+     * @param script Script cache
+     * @param updateTime Script file update time
+     * @param optimizationLevel Optimization level the script was compiled at
+     */
+    public ScriptCache(Script script, Long updateTime, int optimizationLevel) {
+        this(script, updateTime, optimizationLevel, 0, null);
+    }
+
+    /**
+     * Constructor.
+     * @param script Script cache
+     * @param updateTime Script file update time
+     * @param optimizationLevel Optimization level the script was compiled at
+     * @param sourceLength Length of the compiled source, used to estimate the memory size
+     * @param partition Cache partition (routing ID of the cell)
+     */
+    public ScriptCache(Script script, Long updateTime, int optimizationLevel, int sourceLength, String partition) {
+        this.estimatedSize = estimateSize(optimizationLevel, sourceLength);
+        this.sourceLength = sourceLength;
+        this.partition = partition;
         this.script = script;
         this.updateTime = updateTime;
+        this.optimizationLevel = optimizationLevel;
+        this.currentOptimizationLevel = optimizationLevel;
     }
 
     /**
@@ -54,6 +138,200 @@ public class ScriptCache {
         return updateTime;
     }
 
+    /**
+     * Get optimization level the script was compiled at.
+     * @return optimization level
+     */
+    public int getOptimizationLevel() {
+        return optimizationLevel;
+    }
+
+    /**
+     * Get estimated memory size of the script.
+     * @return size(bytes)
+     */
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    /**
+     * Get cache partition.
+     * @return routing ID of the cell, or null
+     */
+    public String getPartition() {
+        return partition;
+    }
+
+    /**
+     * Estimate memory size of a compiled script.
+     * Roughly twice the size of the serialized interpreter data or of the generated class files.
+     * @param level optimization level
+     * @param sourceLength length of the source
+     * @return size(bytes)
+     */
+    static long estimateSize(int level, int sourceLength) {
+        if (level < 0) {
+            return INTERPRETED_BASE_SIZE + INTERPRETED_SIZE_PER_CHAR * sourceLength;
+        }
+        return COMPILED_BASE_SIZE + COMPILED_SIZE_PER_CHAR * sourceLength;
+    }
+
+    /**
+     * Get optimization level of the current script.
+     * @return optimization level
+     */
+    public int getCurrentOptimizationLevel() {
+        return currentOptimizationLevel;
+    }
+
+    /**
+     * Get execution tier.
+     * @return tier
+     */
+    public Tier getTier() {
+        return tier.get();
+    }
+
+    /**
+     * Get number of invocations.
+     * @return number of invocations
+     */
+    public long getInvocationCount() {
+        return invocationCount.get();
+    }
+
+    /**
+     * Get cumulative execution time.
+     * @return execution time(nsec)
+     */
+    public long getExecTime() {
+        return execTime.get();
+    }
+
+    /**
+     * Record an execution of the script.
+     * @param nanos execution time(nsec)
+     */
+    public void recordExecution(long nanos) {
+        invocationCount.incrementAndGet();
+        execTime.addAndGet(nanos);
+    }
+
+    /**
+     * Make the script promotable. The source is not kept, but read again when the script is recompiled,
+     * so that entries which never become hot do not hold their sources.
+     * @param reader reads the source again
+     * @param contentKey content key of the compiled source
+     * @param promotableSourceName source name used in error messages
+     * @param listener called when the estimated size changed by the promotion, e.g. to update the cache map.
+     *        null if not needed.
+     */
+    public void setPromotableSource(Callable<ScriptSource> reader, String contentKey, String promotableSourceName,
+            Runnable listener) {
+        this.sourceName = promotableSourceName;
+        this.sourceKey = contentKey;
+        this.resizeListener = listener;
+        this.sourceReader = reader;
+    }
+
+    /**
+     * Whether the script can be recompiled.
+     * @return true if promotable
+     */
+    public boolean isPromotable() {
+        return sourceReader != null;
+    }
+
+    /**
+     * Read the source again for the recompilation.
+     * @return source, or null if the script is not promotable or the source has changed since compiled
+     * @throws Exception failed to read the source
+     */
+    public ScriptSource readSource() throws Exception {
+        Callable<ScriptSource> reader = sourceReader;
+        if (reader == null) {
+            return null;
+        }
+        ScriptSource source = reader.call();
+        return source.contentKey().equals(sourceKey) ? source : null;
+    }
+
+    /**
+     * Get the source name kept for the recompilation.
+     * @return source name
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * Start the promotion. Succeeds only once per entry.
+     * @return true if the caller should recompile the script
+     */
+    public boolean beginPromotion() {
+        return sourceReader != null && tier.compareAndSet(Tier.BASELINE, Tier.PROMOTING);
+    }
+
+    /**
+     * Replace the script with the recompiled one, and estimate the size again.
+     * @param optimized recompiled script
+     * @param level optimization level the recompiled script was actually produced at
+     */
+    public void completePromotion(Script optimized, int level) {
+        Runnable listener = resizeListener;
+        this.currentOptimizationLevel = level;
+        this.estimatedSize = estimateSize(level, sourceLength);
+        this.script = optimized;
+        this.sourceReader = null;
+        this.sourceName = null;
+        this.resizeListener = null;
+        tier.set(Tier.OPTIMIZED);
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Give up the promotion.
+     */
+    public void failPromotion() {
+        this.sourceReader = null;
+        this.sourceName = null;
+        this.resizeListener = null;
+        tier.set(Tier.FAILED);
+    }
+
+    /**
+     * Mark the script as a module whose exports are shared across requests.
+     */
+    public void setShareable() {
+        this.shareable = true;
+    }
+
+    /**
+     * @return true if the script is a module whose exports are shared across requests
+     */
+    public boolean isShareable() {
+        return shareable;
+    }
+
+    /**
+     * Keep the evaluated module object of the shared module.
+     * It lives as long as this entry, i.e. while the source is the same version.
+     * @param module frozen module object
+     */
+    public void setSharedModule(Object module) {
+        this.sharedModule = module;
+    }
+
+    /**
+     * Get the evaluated module object of the shared module.
+     * @return frozen module object, or null if not evaluated yet
+     */
+    public Object getSharedModule() {
+        return sharedModule;
+    }
+
     /**
      * Check script file updated.
      * @param latestUpdateTime Latest update time
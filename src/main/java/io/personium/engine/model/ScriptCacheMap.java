@@ -0,0 +1,656 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Concurrent script cache bounded by the estimated size of the entries.
+ * Reads do not take any lock. Writes, which follow a compilation, are serialized by one lock.
+ * Eviction follows TinyLFU: access frequencies are approximated by a count-min sketch, the victim is the
+ * least frequently used of a few sampled entries, and a new entry is admitted only when it is used more
+ * frequently than the victim. Entries used once do not push frequently used scripts out of the cache.
+ * <p>
+ * Entries are partitioned by cell (routing ID). A partition holds at most partitionMaxSize bytes, and
+ * evicts its own entries beyond that. Up to reservedSize bytes of each partition are not evicted to make
+ * room for other partitions. The rest of the cache is an overflow pool shared by all partitions.
+ * <p>
+ * The number of entries can be bounded as well, by maxEntries.
+ */
+public class ScriptCacheMap extends AbstractMap<String, ScriptCache> {
+
+    /** Number of entries sampled to choose a victim. */
+    private static final int SAMPLE_SIZE = 8;
+    /** Max rounds of sampling while only entries within the reserved size are drawn. */
+    private static final int PROTECTED_SAMPLE_ROUNDS = 4;
+    /** Assumed minimum size of an entry, used to size the frequency sketch. */
+    private static final long MIN_ENTRY_SIZE = 4096;
+
+    /** Max total estimated size(bytes). */
+    private final long maxSize;
+    /** Max number of entries. */
+    private final int maxEntries;
+    /** Max estimated size(bytes) of a partition. */
+    private final long partitionMaxSize;
+    /** Estimated size(bytes) of a partition protected from the eviction for other partitions. */
+    private final long reservedSize;
+    /** Entries. */
+    private final ConcurrentHashMap<String, Node> data = new ConcurrentHashMap<String, Node>();
+    /** Partitions by routing ID. */
+    private final ConcurrentHashMap<String, Partition> partitions = new ConcurrentHashMap<String, Partition>();
+    /** Access frequencies. */
+    private final FrequencySketch sketch;
+    /** Lock for writes. */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /** Entries indexed for sampling. Guarded by writeLock. */
+    private final Slots slots = new Slots(false);
+    /** Insertion sequence of the entries. Guarded by writeLock. */
+    private long sequence;
+    /** Total estimated size(bytes). */
+    private final AtomicLong weightedSize = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * Constructor without partition quotas.
+     * @param maxSize max total estimated size(bytes)
+     */
+    public ScriptCacheMap(long maxSize) {
+        this(maxSize, maxSize, 0);
+    }
+
+    /**
+     * Constructor without the bound of the number of entries.
+     * @param maxSize max total estimated size(bytes)
+     * @param partitionMaxSize max estimated size(bytes) of a partition
+     * @param reservedSize estimated size(bytes) of a partition protected from the eviction for other partitions
+     */
+    public ScriptCacheMap(long maxSize, long partitionMaxSize, long reservedSize) {
+        this(maxSize, Integer.MAX_VALUE, partitionMaxSize, reservedSize);
+    }
+
+    /**
+     * Constructor.
+     * @param maxSize max total estimated size(bytes)
+     * @param maxEntries max number of entries
+     * @param partitionMaxSize max estimated size(bytes) of a partition
+     * @param reservedSize estimated size(bytes) of a partition protected from the eviction for other partitions
+     */
+    public ScriptCacheMap(long maxSize, int maxEntries, long partitionMaxSize, long reservedSize) {
+        this.maxSize = maxSize;
+        this.maxEntries = maxEntries;
+        this.partitionMaxSize = Math.min(partitionMaxSize, maxSize);
+        this.reservedSize = reservedSize;
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(1024, maxSize / MIN_ENTRY_SIZE)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScriptCache get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        sketch.increment(key.hashCode());
+        Node node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        node.partition.hits.increment();
+        return node.value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return data.containsKey(key);
+    }
+
+    /**
+     * Add the entry to the partition of its routing ID, evicting other entries when the partition or the cache
+     * exceeds its max size. The entry is not added when it is used less frequently than the entries it would evict.
+     * @param key cache key
+     * @param value script cache
+     * @return previous entry, or null
+     */
+    @Override
+    public ScriptCache put(String key, ScriptCache value) {
+        long weight = value.getEstimatedSize();
+        sketch.increment(key.hashCode());
+        writeLock.lock();
+        try {
+            Node previous = data.get(key);
+            if (previous != null) {
+                unlink(previous);
+            }
+            // A partition is registered only once it holds an entry, so that rejected cells leave nothing behind.
+            String name = partitionName(value);
+            Partition partition = partitions.get(name);
+            if (partition == null) {
+                partition = new Partition(name);
+            }
+            partition.loads.increment();
+            if (!makeRoom(partition, key, weight)) {
+                rejections.increment();
+                partition.rejections.increment();
+                return previous == null ? null : previous.value;
+            }
+            // makeRoom may have emptied and unregistered the partition.
+            partitions.put(name, partition);
+            Node node = new Node(key, value, weight, partition, ++sequence);
+            data.put(key, node);
+            link(node);
+            return previous == null ? null : previous.value;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScriptCache remove(Object key) {
+        writeLock.lock();
+        try {
+            Node node = data.get(key);
+            if (node == null) {
+                return null;
+            }
+            unlink(node);
+            return node.value;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Update the size of the entry after its estimated size changed, e.g. by the promotion.
+     * Other entries are evicted when the partition or the cache exceeds its max size,
+     * or the entry itself when it is used less frequently than them.
+     * @param key cache key
+     * @param value script cache. Nothing is done when the key is mapped to another entry.
+     */
+    public void reweigh(String key, ScriptCache value) {
+        writeLock.lock();
+        try {
+            Node node = data.get(key);
+            if (node == null || node.value != value || node.weight == value.getEstimatedSize()) {
+                return;
+            }
+            unlink(node);
+            node.weight = value.getEstimatedSize();
+            if (!makeRoom(node.partition, key, node.weight)) {
+                evictions.increment();
+                node.partition.evictions.increment();
+                return;
+            }
+            // unlink may have unregistered the partition.
+            partitions.put(node.partition.name, node.partition);
+            data.put(key, node);
+            link(node);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        writeLock.lock();
+        try {
+            data.clear();
+            partitions.clear();
+            slots.clear();
+            weightedSize.set(0);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Read-only view of the entries. Reading it does not count as an access.
+     * @return entries
+     */
+    @Override
+    public Set<Map.Entry<String, ScriptCache>> entrySet() {
+        return new AbstractSet<Map.Entry<String, ScriptCache>>() {
+            @Override
+            public Iterator<Map.Entry<String, ScriptCache>> iterator() {
+                Iterator<Node> nodes = data.values().iterator();
+                return new Iterator<Map.Entry<String, ScriptCache>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return nodes.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, ScriptCache> next() {
+                        Node node = nodes.next();
+                        return new SimpleImmutableEntry<String, ScriptCache>(node.key, node.value);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return data.size();
+            }
+        };
+    }
+
+    /**
+     * Get total estimated size of the entries.
+     * @return size(bytes)
+     */
+    public long getWeightedSize() {
+        return weightedSize.get();
+    }
+
+    /**
+     * Get counters of the cache.
+     * @return hits, misses, evictions, rejections, shed, entries and weightedSize
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("rejections", rejections.sum());
+        stats.put("shed", shed.sum());
+        stats.put("entries", (long) data.size());
+        stats.put("weightedSize", weightedSize.get());
+        return stats;
+    }
+
+    /**
+     * Get counters of the partitions holding entries. The counters of a partition start over once it is emptied.
+     * @return hits, loads, evictions, rejections, entries and weightedSize by routing ID
+     */
+    public Map<String, Map<String, Long>> getPartitionStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<String, Map<String, Long>>();
+        for (Partition partition : partitions.values()) {
+            stats.put(partition.name, partition.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Evict the least frequently used entries of all partitions until the total size falls to the target.
+     * Used to release memory under heap pressure, regardless of the partition quotas.
+     * @param targetSize target total size(bytes)
+     * @return number of evicted entries
+     */
+    public int shedColdest(long targetSize) {
+        writeLock.lock();
+        try {
+            Node[] nodes = Arrays.copyOf(slots.nodes, slots.count);
+            Map<Node, Integer> frequencies = new HashMap<Node, Integer>();
+            for (Node node : nodes) {
+                frequencies.put(node, sketch.frequency(node.key.hashCode()));
+            }
+            Arrays.sort(nodes, Comparator.<Node>comparingInt(frequencies::get).thenComparingLong(node -> node.sequence));
+            int count = 0;
+            for (int i = 0; i < nodes.length && weightedSize.get() > targetSize; i++) {
+                unlink(nodes[i]);
+                count++;
+            }
+            shed.add(count);
+            return count;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Evict the entries matching the condition.
+     * Used to release memory under heap pressure, regardless of the partition quotas.
+     * @param condition condition of the entries to evict
+     * @return number of evicted entries
+     */
+    public int shedIf(Predicate<ScriptCache> condition) {
+        writeLock.lock();
+        try {
+            int count = 0;
+            for (Node node : Arrays.copyOf(slots.nodes, slots.count)) {
+                if (condition.test(node.value)) {
+                    unlink(node);
+                    count++;
+                }
+            }
+            shed.add(count);
+            return count;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Evict entries until the new entry fits.
+     * Entries of the same partition are evicted while the partition exceeds its max size, then entries of
+     * partitions using the overflow pool while the cache exceeds its max size or max number of entries.
+     * @param partition partition of the new entry
+     * @param key key of the new entry
+     * @param weight size of the new entry
+     * @return false if the new entry should not be admitted
+     */
+    private boolean makeRoom(Partition partition, String key, long weight) {
+        if (weight > partitionMaxSize) {
+            return false;
+        }
+        int frequency = sketch.frequency(key.hashCode());
+        while (partition.weightedSize + weight > partitionMaxSize) {
+            if (!evict(partition.slots.sample(null), frequency)) {
+                return false;
+            }
+        }
+        while (weightedSize.get() + weight > maxSize || data.size() >= maxEntries) {
+            if (!evict(slots.sample(partition), frequency)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evict the victim unless it is used more frequently than the new entry.
+     * @param victim victim
+     * @param frequency frequency of the new entry
+     * @return true if evicted
+     */
+    private boolean evict(Node victim, int frequency) {
+        if (victim == null || sketch.frequency(victim.key.hashCode()) > frequency) {
+            return false;
+        }
+        unlink(victim);
+        evictions.increment();
+        victim.partition.evictions.increment();
+        return true;
+    }
+
+    private void link(Node node) {
+        slots.add(node);
+        node.partition.slots.add(node);
+        node.partition.weightedSize += node.weight;
+        weightedSize.addAndGet(node.weight);
+    }
+
+    private void unlink(Node node) {
+        data.remove(node.key, node);
+        slots.remove(node);
+        node.partition.slots.remove(node);
+        node.partition.weightedSize -= node.weight;
+        weightedSize.addAndGet(-node.weight);
+        if (node.partition.slots.count == 0) {
+            partitions.remove(node.partition.name, node.partition);
+        }
+    }
+
+    private static String partitionName(ScriptCache value) {
+        return value.getPartition() == null ? "" : value.getPartition();
+    }
+
+    /**
+     * Entries indexed for random sampling. Guarded by writeLock.
+     */
+    private final class Slots {
+        /** Whether this indexes the entries of one partition. */
+        private final boolean partitionSlots;
+        private Node[] nodes = new Node[16];
+        private int count;
+
+        Slots(boolean partitionSlots) {
+            this.partitionSlots = partitionSlots;
+        }
+
+        void add(Node node) {
+            if (count == nodes.length) {
+                Node[] grown = new Node[nodes.length * 2];
+                System.arraycopy(nodes, 0, grown, 0, count);
+                nodes = grown;
+            }
+            setIndex(node, count);
+            nodes[count++] = node;
+        }
+
+        void remove(Node node) {
+            int index = partitionSlots ? node.partitionIndex : node.index;
+            Node last = nodes[--count];
+            nodes[index] = last;
+            setIndex(last, index);
+            nodes[count] = null;
+        }
+
+        void clear() {
+            nodes = new Node[16];
+            count = 0;
+        }
+
+        /**
+         * Choose the least frequently used, then the oldest, of the sampled entries.
+         * Entries of partitions within their reserved size are chosen only when all sampled entries are such.
+         * @param requester partition of the new entry, which is never protected from itself
+         * @return victim, or null if empty
+         */
+        Node sample(Partition requester) {
+            if (count == 0) {
+                return null;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Node victim = null;
+            Node protectedVictim = null;
+            // Keep sampling a while when only protected entries have been drawn.
+            for (int i = 0; i < SAMPLE_SIZE * PROTECTED_SAMPLE_ROUNDS && (i < SAMPLE_SIZE || victim == null); i++) {
+                Node candidate = nodes[random.nextInt(count)];
+                boolean reserved = requester != null && candidate.partition != requester
+                        && candidate.partition.weightedSize <= reservedSize;
+                if (reserved) {
+                    protectedVictim = lessValuable(protectedVictim, candidate);
+                } else {
+                    victim = lessValuable(victim, candidate);
+                }
+            }
+            return victim != null ? victim : protectedVictim;
+        }
+
+        private Node lessValuable(Node current, Node candidate) {
+            if (current == null) {
+                return candidate;
+            }
+            int currentFrequency = sketch.frequency(current.key.hashCode());
+            int frequency = sketch.frequency(candidate.key.hashCode());
+            if (frequency < currentFrequency || frequency == currentFrequency && candidate.sequence < current.sequence) {
+                return candidate;
+            }
+            return current;
+        }
+
+        private void setIndex(Node node, int index) {
+            if (partitionSlots) {
+                node.partitionIndex = index;
+            } else {
+                node.index = index;
+            }
+        }
+    }
+
+    /**
+     * Entries of one routing ID.
+     */
+    private final class Partition {
+        private final String name;
+        /** Entries of this partition. Guarded by writeLock. */
+        private final Slots slots = new Slots(true);
+        /** Estimated size(bytes). Guarded by writeLock. */
+        private volatile long weightedSize;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder loads = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder rejections = new LongAdder();
+
+        Partition(String name) {
+            this.name = name;
+        }
+
+        Map<String, Long> getStats() {
+            Map<String, Long> stats = new LinkedHashMap<String, Long>();
+            stats.put("hits", hits.sum());
+            stats.put("loads", loads.sum());
+            stats.put("evictions", evictions.sum());
+            stats.put("rejections", rejections.sum());
+            stats.put("entries", (long) slots.count);
+            stats.put("weightedSize", weightedSize);
+            return stats;
+        }
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static final class Node {
+        private final String key;
+        private final ScriptCache value;
+        /** Estimated size(bytes). Guarded by writeLock. */
+        private long weight;
+        private final Partition partition;
+        /** Insertion sequence. */
+        private final long sequence;
+        /** Position in slots. Guarded by writeLock. */
+        private int index;
+        /** Position in the slots of the partition. Guarded by writeLock. */
+        private int partitionIndex;
+
+        Node(String key, ScriptCache value, long weight, Partition partition, long sequence) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.partition = partition;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Count-min sketch of the access frequencies, with 4 rows of counters saturating at 15.
+     * All counters are halved once the number of accesses reaches 10 times the width,
+     * so that the frequencies follow changes of the workload.
+     */
+    static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+        private final AtomicIntegerArray table;
+        private final int mask;
+        private final int resetAt;
+        private final AtomicLong additions = new AtomicLong();
+        private final AtomicBoolean resetting = new AtomicBoolean();
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(expectedEntries, 1) - 1) << 1;
+            this.mask = width - 1;
+            this.table = new AtomicIntegerArray(width * DEPTH);
+            this.resetAt = width * 10;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int index = index(hash, i);
+                int count;
+                do {
+                    count = table.get(index);
+                    if (count >= MAX_COUNT) {
+                        break;
+                    }
+                } while (!table.compareAndSet(index, count, count + 1));
+                added |= count < MAX_COUNT;
+            }
+            if (added && additions.incrementAndGet() >= resetAt) {
+                reset();
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, table.get(index(hash, i)));
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            if (!resetting.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                for (int i = 0; i < table.length(); i++) {
+                    int count;
+                    do {
+                        count = table.get(i);
+                    } while (!table.compareAndSet(i, count, count >>> 1));
+                }
+                additions.set(0);
+            } finally {
+                resetting.set(false);
+            }
+        }
+
+        private int index(int hash, int row) {
+            int spread = hash * 0x31848bab;
+            spread ^= spread >>> 14;
+            long h = (spread + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return row * (mask + 1) + ((int) h & mask);
+        }
+    }
+}
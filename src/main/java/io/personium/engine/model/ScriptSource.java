@@ -0,0 +1,271 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Source of a user script as UTF-8 bytes, with the wrapper added by the engine already in place.
+ * The source file is read once into an array sized for the file and the wrapper,
+ * and compiled through a Reader over the array, so that no String of the whole source is made
+ * unless a String is required, e.g. by the bytecode disk cache.
+ */
+public final class ScriptSource {
+    /** Max size of an array. */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /** UTF-8 bytes. Only the first length bytes are used. */
+    private final byte[] bytes;
+    private final int length;
+    /** Start of the file content, after the prefix. */
+    private final int contentStart;
+    /** Whether the source file is encrypted at rest. */
+    private final boolean encrypted;
+
+    private ScriptSource(byte[] bytes, int length, int contentStart, boolean encrypted) {
+        this.bytes = bytes;
+        this.length = length;
+        this.contentStart = contentStart;
+        this.encrypted = encrypted;
+    }
+
+    /**
+     * Source of the string.
+     * @param text script source
+     * @return source
+     */
+    public static ScriptSource of(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return new ScriptSource(bytes, bytes.length, 0, false);
+    }
+
+    /**
+     * Read the stream, placing the prefix before and the suffix after its content.
+     * @param in UTF-8 stream of the source file. Not closed.
+     * @param size expected size of the stream(bytes), e.g. the file size. The stream may be shorter or longer.
+     * @param prefix source placed before the content
+     * @param suffix source placed after the content
+     * @return source
+     * @throws IOException failed to read the stream
+     */
+    public static ScriptSource read(InputStream in, long size, String prefix, String suffix) throws IOException {
+        byte[] head = prefix.getBytes(StandardCharsets.UTF_8);
+        byte[] tail = suffix.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = Arrays.copyOf(head,
+                (int) Math.min(MAX_ARRAY_SIZE, head.length + Math.max(size, 0) + tail.length));
+        int length = head.length;
+        while (true) {
+            int room = bytes.length - tail.length - length;
+            if (room == 0) {
+                // Full as expected. Grow only if the stream continues.
+                int b = in.read();
+                if (b < 0) {
+                    break;
+                }
+                if (bytes.length == MAX_ARRAY_SIZE) {
+                    throw new IOException("Script source too large");
+                }
+                bytes = Arrays.copyOf(bytes, (int) Math.min(MAX_ARRAY_SIZE, Math.max(bytes.length * 2L, 1024)));
+                bytes[length++] = (byte) b;
+                continue;
+            }
+            int n = in.read(bytes, length, room);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        System.arraycopy(tail, 0, bytes, length, tail.length);
+        return new ScriptSource(bytes, length + tail.length, head.length, false);
+    }
+
+    /**
+     * The same source, marked as read from a file encrypted at rest.
+     * Nothing derived from an encrypted source, such as its bytecode, is written to the disk in clear.
+     * @return source
+     */
+    public ScriptSource asEncrypted() {
+        return new ScriptSource(bytes, length, contentStart, true);
+    }
+
+    /**
+     * @return whether the source file is encrypted at rest
+     */
+    public boolean isEncrypted() {
+        return encrypted;
+    }
+
+    /**
+     * @return size of the source(bytes)
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Open a Reader of the source. Each call returns a new Reader from the beginning.
+     * @return reader
+     */
+    public Reader openReader() {
+        return new InputStreamReader(new ByteArrayInputStream(bytes, 0, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Add the source to the digest.
+     * @param digest message digest
+     */
+    public void digest(MessageDigest digest) {
+        digest.update(bytes, 0, length);
+    }
+
+    /**
+     * Key identifying the content of the source.
+     * @return hex encoded SHA-256 of the source
+     */
+    public String contentKey() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest(digest);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Whether the directive prologue of the file content, such as "use strict";, has the directive.
+     * Directives containing escapes are not recognized.
+     * @param directive directive without quotes
+     * @return true if found
+     */
+    public boolean hasDirective(String directive) {
+        byte[] expected = directive.getBytes(StandardCharsets.UTF_8);
+        int pos = contentStart;
+        while (true) {
+            pos = skipSpaces(pos, true);
+            if (pos >= length || (bytes[pos] != '"' && bytes[pos] != '\'')) {
+                return false;
+            }
+            byte quote = bytes[pos++];
+            int start = pos;
+            while (pos < length && bytes[pos] != quote && bytes[pos] != '\\' && bytes[pos] != '\n') {
+                pos++;
+            }
+            if (pos >= length || bytes[pos] != quote) {
+                return false;
+            }
+            boolean found = Arrays.equals(bytes, start, pos, expected, 0, expected.length);
+            // A directive ends with a semicolon or a line break. Otherwise the string is part of an expression.
+            pos = skipSpaces(pos + 1, false);
+            if (pos < length && bytes[pos] != ';' && bytes[pos] != '\n' && bytes[pos] != '\r') {
+                return false;
+            }
+            if (found) {
+                return true;
+            }
+            if (pos < length && bytes[pos] == ';') {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Skip white spaces and comments.
+     * @param pos start position
+     * @param lineBreaks whether line breaks are skipped as well. A line comment stops at its line break if not.
+     * @return position of the next token
+     */
+    private int skipSpaces(int pos, boolean lineBreaks) {
+        while (pos < length) {
+            byte b = bytes[pos];
+            if (b == ' ' || b == '\t' || (lineBreaks && (b == '\n' || b == '\r'))) {
+                pos++;
+            } else if (pos == contentStart && pos + 3 <= length && (bytes[pos] & 0xff) == 0xef
+                    && (bytes[pos + 1] & 0xff) == 0xbb && (bytes[pos + 2] & 0xff) == 0xbf) {
+                // BOM
+                pos += 3;
+            } else if (b == '/' && pos + 1 < length && bytes[pos + 1] == '*') {
+                int end = indexOf("*/", pos + 2);
+                if (end < 0) {
+                    return length;
+                }
+                pos = end + 2;
+            } else if (b == '/' && pos + 1 < length && bytes[pos + 1] == '/') {
+                while (pos < length && bytes[pos] != '\n') {
+                    pos++;
+                }
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private int indexOf(String str, int from) {
+        byte[] target = str.getBytes(StandardCharsets.US_ASCII);
+        for (int i = from; i + target.length <= length; i++) {
+            if (Arrays.equals(bytes, i, i + target.length, target, 0, target.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decode the source into a String.
+     * @return script source
+     */
+    public String getText() {
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ScriptSource)) {
+            return false;
+        }
+        ScriptSource other = (ScriptSource) obj;
+        return Arrays.equals(bytes, 0, length, other.bytes, 0, other.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash;
+    }
+}
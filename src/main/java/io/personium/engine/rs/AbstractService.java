@@ -21,6 +21,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -313,13 +315,17 @@ public abstract class AbstractService {
             // Loading the Global objects
             pecx.loadGlobalObject(baseUrl, targetCell, targetSchema, targetSchema, targetServiceName);
 
-            String source = "";
             String sourceName = "";
             try {
-                // discover source name
-                sourceName = this.sourceManager.getScriptNameForServicePath(targetServiceName);
-                // read Source content
-                source = this.sourceManager.getSource(sourceName);
+                // discover source name. The source is read by runJsgi only if the script is not cached.
+                Map<String, String> pathParams = new HashMap<String, String>();
+                sourceName = this.sourceManager.getScriptNameForServicePath(targetServiceName, pathParams);
+                req.setAttribute("pathParams", pathParams);
+                if (sourceName == null) {
+                    log.info("Route not found (" + targetServiceName + ")");
+                    return errorResponse(new PersoniumEngineException("404 Not Found",
+                            PersoniumEngineException.STATUSCODE_NOTFOUND));
+                }
             } catch (PersoniumEngineException e) {
                 return errorResponse(e);
             } catch (Exception e) {
@@ -331,7 +337,7 @@ public abstract class AbstractService {
             }
             // source JSGI Function Execution
             try {
-                response = pecx.runJsgi(source, req, res, is, this.serviceSubject, previousPhaseTime, sourceName);
+                response = pecx.runJsgi(req, res, is, this.serviceSubject, previousPhaseTime, sourceName);
             } catch (PersoniumEngineException e) {
                 return errorResponse(e);
             } catch (Exception e) {
@@ -17,9 +17,14 @@
 package io.personium.engine.rs;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -34,9 +39,16 @@ import javax.ws.rs.core.Response;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpStatus;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import io.personium.engine.PersoniumEngineContext;
 import io.personium.engine.PersoniumEngineException;
+import io.personium.engine.model.DavMetadataCache;
+import io.personium.engine.model.NegativeCache;
+import io.personium.engine.model.ScriptCache;
+import io.personium.engine.source.ServiceCollection;
+import io.personium.engine.source.ServiceSourceWatcher;
 import io.personium.engine.utils.PersoniumEngineConfig;
 
 /**
@@ -46,6 +58,8 @@ import io.personium.engine.utils.PersoniumEngineConfig;
 public class StatusResource {
     /** Logger Object. */
     private static Log log = LogFactory.getLog(AbstractService.class);
+    /** Number of cells listed in the script cache status. */
+    private static final int STATUS_PARTITION_NUM = 10;
 
     /**
      * GET method processing.
@@ -66,11 +80,91 @@ public class StatusResource {
             propertiesJson.put(key, value);
         }
         responseJson.put("properties", propertiesJson);
+        responseJson.put("scripts", scriptsJson());
+        JSONObject metadataCacheJson = new JSONObject();
+        metadataCacheJson.putAll(DavMetadataCache.getStats());
+        responseJson.put("metadataCache", metadataCacheJson);
+        JSONObject serviceCollectionCacheJson = new JSONObject();
+        serviceCollectionCacheJson.putAll(ServiceCollection.getStats());
+        responseJson.put("serviceCollectionCache", serviceCollectionCacheJson);
+        JSONObject negativeCacheJson = new JSONObject();
+        negativeCacheJson.putAll(NegativeCache.getStats());
+        responseJson.put("negativeCache", negativeCacheJson);
 
         sb.append(responseJson.toJSONString());
         return Response.status(HttpStatus.SC_OK).entity(sb.toString()).build();
     }
 
+    /**
+     * Tiered execution state, compilation and cache counters of the user scripts.
+     * Only scripts that left the baseline tier are listed.
+     * @return JSON
+     */
+    @SuppressWarnings("unchecked")
+    private JSONObject scriptsJson() {
+        Map<ScriptCache.Tier, Integer> counts = new EnumMap<>(ScriptCache.Tier.class);
+        for (ScriptCache.Tier tier : ScriptCache.Tier.values()) {
+            counts.put(tier, 0);
+        }
+        JSONArray promotedJson = new JSONArray();
+        for (Map.Entry<String, ScriptCache> entry : PersoniumEngineContext.getUserScriptCacheSnapshot().entrySet()) {
+            ScriptCache cache = entry.getValue();
+            ScriptCache.Tier tier = cache.getTier();
+            counts.put(tier, counts.get(tier) + 1);
+            if (tier == ScriptCache.Tier.BASELINE) {
+                continue;
+            }
+            JSONObject scriptJson = new JSONObject();
+            scriptJson.put("path", entry.getKey());
+            scriptJson.put("tier", tier.name());
+            scriptJson.put("optimizationLevel", cache.getCurrentOptimizationLevel());
+            scriptJson.put("invocations", cache.getInvocationCount());
+            scriptJson.put("execTime", TimeUnit.NANOSECONDS.toMillis(cache.getExecTime()));
+            promotedJson.add(scriptJson);
+        }
+        JSONObject tiersJson = new JSONObject();
+        for (Map.Entry<ScriptCache.Tier, Integer> count : counts.entrySet()) {
+            tiersJson.put(count.getKey().name(), count.getValue());
+        }
+        JSONObject scriptsJson = new JSONObject();
+        scriptsJson.put("tiers", tiersJson);
+        scriptsJson.put("promoted", promotedJson);
+        JSONObject compilationsJson = new JSONObject();
+        compilationsJson.putAll(PersoniumEngineContext.getScriptCompilationStats());
+        scriptsJson.put("compilations", compilationsJson);
+        JSONObject watchJson = new JSONObject();
+        watchJson.putAll(ServiceSourceWatcher.getStats());
+        scriptsJson.put("watch", watchJson);
+        JSONObject cacheJson = new JSONObject();
+        cacheJson.putAll(PersoniumEngineContext.getUserScriptCacheStats());
+        cacheJson.put("partitions", partitionsJson());
+        JSONObject heapPressureJson = new JSONObject();
+        heapPressureJson.putAll(PersoniumEngineContext.getHeapPressureStats());
+        cacheJson.put("heapPressure", heapPressureJson);
+        scriptsJson.put("cache", cacheJson);
+        return scriptsJson;
+    }
+
+    /**
+     * Script cache counters of the cells holding the largest part of the cache.
+     * @return JSON
+     */
+    @SuppressWarnings("unchecked")
+    private JSONArray partitionsJson() {
+        List<Map.Entry<String, Map<String, Long>>> partitions = new ArrayList<>(
+                PersoniumEngineContext.getUserScriptCachePartitionStats().entrySet());
+        partitions.sort((a, b) -> Long.compare(b.getValue().get("weightedSize"), a.getValue().get("weightedSize")));
+        JSONArray partitionsJson = new JSONArray();
+        for (Map.Entry<String, Map<String, Long>> partition : partitions.subList(0,
+                Math.min(STATUS_PARTITION_NUM, partitions.size()))) {
+            JSONObject partitionJson = new JSONObject();
+            partitionJson.put("routingId", partition.getKey());
+            partitionJson.putAll(partition.getValue());
+            partitionsJson.add(partitionJson);
+        }
+        return partitionsJson;
+    }
+
     /**
      * POST method processing.
      * @param path リソース名
@@ -16,37 +16,23 @@
  */
 package io.personium.engine.source;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Reader;
-import java.nio.file.Files;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.apache.commons.io.Charsets;
-import org.apache.commons.io.IOUtils;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 import org.mozilla.javascript.Script;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 import io.personium.common.file.DataCryptor;
 import io.personium.engine.PersoniumEngineException;
-import io.personium.engine.model.DavMetadataFile;
+import io.personium.engine.model.DavMetadataCache;
+import io.personium.engine.model.NegativeCache;
 import io.personium.engine.model.ScriptCache;
+import io.personium.engine.model.ScriptSource;
+import io.personium.engine.utils.PersoniumEngineConfig;
 
 /**
  * Service resource source management using file system.
@@ -59,13 +45,11 @@ public class FsServiceResourceSourceManager implements ISourceManager {
     /** RoutingId(CellID). */
     private String fsRoutingId;
 
-    /** Collection's PROPPATCH Info. */
-    private String serviceCollectionInfo;
-
-    /** Filename Resolver from path to source file. */
-    private IPathResolver pathResolver = null;
+    /** Whether the collection is watched for changes. */
+    private boolean watched;
 
-    private String serviceSubject;
+    /** Service definition of the collection. */
+    private ServiceCollection collection;
 
     /**
      * Constructor.
@@ -77,8 +61,8 @@ public class FsServiceResourceSourceManager implements ISourceManager {
         this.fsPath = filePath;
         this.fsRoutingId = fsRoutingId;
         log.info("Source File Path: [" + this.fsPath + "]");
+        this.watched = ServiceSourceWatcher.watch(filePath);
         this.loadServiceCollectionInfo();
-        this.parseServiceTag();
     }
 
     /**
@@ -93,90 +77,125 @@ public class FsServiceResourceSourceManager implements ISourceManager {
                     PersoniumEngineException.STATUSCODE_NOTFOUND);
         }
 
-        // Get the Service Collection Metadata
-        JSONObject json = getMetaData(this.fsPath);
+        // Get the Service Collection Metadata. The service definition is parsed only when changed.
+        this.collection = ServiceCollection.get(this.fsPath, getMetadata(this.fsPath));
+    }
 
-        // Get the Engine Service Configuration information
-        this.serviceCollectionInfo = (String) ((Map<?, ?>) json.get("d")).get("service@urn:x-personium:xmlns");
-        if (null == this.serviceCollectionInfo) {
-            log.info("Service property Invalid ");
-            throw new PersoniumEngineException("404 Not Found (Service property invalid) ",
-                    PersoniumEngineException.STATUSCODE_NOTFOUND);
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getScriptNameForServicePath(String servicePath) {
+        return this.collection.getPathResolver().resolve(servicePath);
+    }
 
-        log.debug("scriptPath: [" + this.serviceCollectionInfo + "] ");
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getScriptNameForServicePath(String servicePath, Map<String, String> pathParams) {
+        return this.collection.getPathResolver().resolve(servicePath, pathParams);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public String getScriptNameForServicePath(String servicePath) {
-        if (this.pathResolver != null) {
-            return this.pathResolver.resolve(servicePath);
+    public int getOptimizationLevel() {
+        Integer optimizationLevel = this.collection.getOptimizationLevel();
+        if (optimizationLevel != null) {
+            return optimizationLevel;
         }
-        throw new RuntimeException("Route is not registered");
+        return PersoniumEngineConfig.getScriptOptimizationLevel();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void createCachedScript(Script script, String sourceName, Map<String, ScriptCache> userScriptCache)
-            throws PersoniumEngineException {
-        String sourceDir = this.fsPath + File.separator + "__src" + File.separator + sourceName;
-        DavMetadataFile metaFile = DavMetadataFile.newInstance(sourceDir);
-        metaFile.load();
-        ScriptCache cache = new ScriptCache(script, metaFile.getUpdated());
+    public String getCacheKey(String sourceName) {
+        return this.fsPath + File.separator + "__src" + File.separator + sourceName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isWatched() {
+        return this.watched;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScriptCache createCachedScript(Script script, String sourceName, int sourceLength,
+            Map<String, ScriptCache> userScriptCache) throws PersoniumEngineException {
+        String sourceDir = getCacheKey(sourceName);
+        Long updated = getMetadata(sourceDir).getUpdated();
+        ScriptCache cache = new ScriptCache(script, updated, getOptimizationLevel(), sourceLength,
+                this.fsRoutingId);
         userScriptCache.put(sourceDir, cache);
+        return cache;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Script getCachedScript(String sourceName, Map<String, ScriptCache> userScriptCache)
+    public ScriptCache getCachedScript(String sourceName, Map<String, ScriptCache> userScriptCache)
             throws PersoniumEngineException {
-        String sourceDir = this.fsPath + File.separator + "__src" + File.separator + sourceName;
-        DavMetadataFile metaFile = DavMetadataFile.newInstance(sourceDir);
-        metaFile.load();
-        if (!userScriptCache.containsKey(sourceDir)) {
+        String sourceDir = getCacheKey(sourceName);
+        ScriptCache cache = userScriptCache.get(sourceDir);
+        if (cache == null) {
             return null;
         }
-        ScriptCache cache = userScriptCache.get(sourceDir);
-        if (cache.isScriptFileUpdated(metaFile.getUpdated())) {
+        Long updated;
+        try {
+            updated = getMetadata(sourceDir).getUpdated();
+        } catch (PersoniumEngineException e) {
+            // e.g. removed. getSource reports it.
+            userScriptCache.remove(sourceDir);
             return null;
         }
-        return cache.getScript();
+        if (cache.isScriptFileUpdated(updated)
+                || cache.getOptimizationLevel() != getOptimizationLevel()) {
+            return null;
+        }
+        return cache;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public String getSource(String sourceName) throws PersoniumEngineException {
+    public ScriptSource getSource(String sourceName, String prefix, String suffix)
+            throws PersoniumEngineException {
         // Get Target script information 
         String sourceDir = this.fsPath + File.separator + "__src" + File.separator + sourceName;
         String sourcePath = sourceDir + File.separator + "content";
         File sourceFile = new File(sourcePath);
 
-        if (!sourceFile.exists()) {
+        // Only a miss found on the file system is remembered, so that the entry expires while requests continue.
+        boolean missing = NegativeCache.isMissing(sourcePath);
+        if (!missing && !sourceFile.exists()) {
+            NegativeCache.putMissing(sourcePath);
+            missing = true;
+        }
+        if (missing) {
             log.info("Service Source not found (" + sourceName + ")");
             throw new PersoniumEngineException("404 Not Found", PersoniumEngineException.STATUSCODE_NOTFOUND);
         }
 
         // Determine whether the file is encrypted
-        JSONObject json = getMetaData(sourceDir);
-        String encryptionType = (String) json.get("et");
-
-        try {
-            String source = "";
-            // Perform decryption.
-            DataCryptor cryptor = new DataCryptor(this.fsRoutingId);
-            try (InputStream in = cryptor.decode(new FileInputStream(sourceFile), encryptionType)) {
-                source = IOUtils.toString(in, Charsets.UTF_8);
-            }
-            return source;
+        String encryptionType = getMetadata(sourceDir).getEncryptionType();
+
+        // Perform decryption, reading straight into the source buffer.
+        // The decrypted content is never longer than the file.
+        try (InputStream in = SourceCryptor.decode(new FileInputStream(sourceFile), this.fsRoutingId,
+                encryptionType)) {
+            ScriptSource source = ScriptSource.read(in, sourceFile.length(), prefix, suffix);
+            return DataCryptor.ENCRYPTION_TYPE_AES.equals(encryptionType) ? source.asEncrypted() : source;
         } catch (IOException e) {
           log.info("UserScript Encoding error(UnsupportedEncodingException) ", e);
           throw new PersoniumEngineException("404 UserScript Encoding error",
@@ -189,71 +208,20 @@ public class FsServiceResourceSourceManager implements ISourceManager {
      */
     @Override
     public String getServiceSubject() {
-      return this.serviceSubject;
-    }
-
-    /*
-     * Parse
-     *    this.serviceCollectionInfo 
-     * and store it to 
-     *    this.pathMap
-     *    this.serviceSubject.
-     */
-    private void parseServiceTag() throws PersoniumEngineException {
-        DocumentBuilder builder = null;
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            builder = factory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new RuntimeException(e);
-        }
-        Document doc = null;
-        InputStream is = new ByteArrayInputStream(this.serviceCollectionInfo.getBytes());
-        try {
-            doc = builder.parse(is);
-            Element el = doc.getDocumentElement();
-            this.serviceSubject = el.getAttribute("subject");
-            IPathResolver resolver = new PathResolverByURITemplate();
-            NodeList nl = doc.getElementsByTagNameNS("*", "path");
-            try {
-                for (int i = 0; i < nl.getLength(); i++) {
-                    NamedNodeMap nnm = nl.item(i).getAttributes();
-                    resolver.registerRoute(nnm.getNamedItem("name").getNodeValue(), nnm.getNamedItem("src").getNodeValue());
-                }
-                this.pathResolver = resolver;
-            } catch (RouteRegistrationException e) {
-                throw new PersoniumEngineException(e.getMessage(), 503, e);
-            }
-        } catch (SAXException e) {
-            throw new RuntimeException(e);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+      return this.collection.getServiceSubject();
     }
 
     /**
-     * Get .pmeta in JSON format.
+     * Get the metadata of the Dav resource.
+     * Metadata of a watched collection is not checked, since it is invalidated when changed.
      * @param metaDirPath Directory path in which meta file to be acquired is stored
-     * @return .pmeta in JSON format
+     * @return metadata
      * @throws PersoniumEngineException Meta file not found.
      */
-    private JSONObject getMetaData(String metaDirPath) throws PersoniumEngineException {
-        String separator = "";
-        if (!metaDirPath.endsWith(File.separator)) {
-            separator = File.separator;
-        }
-        File metaFile = new File(metaDirPath + separator + ".pmeta");
-        JSONObject json = null;
-        try (Reader reader = Files.newBufferedReader(metaFile.toPath(), Charsets.UTF_8)) {
-            JSONParser parser = new JSONParser();
-            json = (JSONObject) parser.parse(reader);
-        } catch (IOException | ParseException e) {
-            // IO failure or JSON is broken
-            log.info("Meta file not found or invalid (" + this.fsPath + ")");
-            throw new PersoniumEngineException("500 Server Error",
-            PersoniumEngineException.STATUSCODE_SERVER_ERROR);
+    private DavMetadataCache.Metadata getMetadata(String metaDirPath) throws PersoniumEngineException {
+        if (this.watched) {
+            return DavMetadataCache.getUnchecked(metaDirPath);
         }
-        return json;
+        return DavMetadataCache.get(metaDirPath);
     }
 }
@@ -17,6 +17,8 @@
 
 package io.personium.engine.source;
 
+import java.util.Map;
+
 public interface IPathResolver {
     /**
      * Function for registering route for engine script
@@ -31,4 +33,14 @@ public interface IPathResolver {
      * @return source filename.
      */
     String resolve(String servicePath);
+
+    /**
+     * Function for getting source file name from route path, with the template variables captured by the route.
+     * @param servicePath path executed
+     * @param params map to put the captured variables in
+     * @return source filename.
+     */
+    default String resolve(String servicePath, Map<String, String> params) {
+        return resolve(servicePath);
+    }
 }
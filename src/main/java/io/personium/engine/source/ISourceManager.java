@@ -22,6 +22,7 @@ import org.mozilla.javascript.Script;
 
 import io.personium.engine.PersoniumEngineException;
 import io.personium.engine.model.ScriptCache;
+import io.personium.engine.model.ScriptSource;
 
 /**
  * Interface for managing Engine Script sources.
@@ -42,30 +43,70 @@ public interface ISourceManager {
      */
     String getScriptNameForServicePath(String servicePath) throws PersoniumEngineException;
 
+    /**
+     * Corresponding script File name is returned when given a service name,
+     * with the path parameters captured by the route.
+     * @param servicePath Service Name
+     * @param pathParams map to put the path parameters in
+     * @return Script File Name
+     * @throws PersoniumEngineException exception
+     */
+    default String getScriptNameForServicePath(String servicePath, Map<String, String> pathParams)
+            throws PersoniumEngineException {
+        return getScriptNameForServicePath(servicePath);
+    }
+
+    /**
+     * Get Rhino optimization level for compiling scripts of this source.
+     * @return optimization level
+     */
+    int getOptimizationLevel();
+
+    /**
+     * Get the key identifying the script in the script cache.
+     * @param sourceName script source name
+     * @return cache key
+     */
+    String getCacheKey(String sourceName);
+
+    /**
+     * Whether the sources are watched for changes (see ServiceSourceWatcher).
+     * Cached scripts of watched sources are invalidated on changes instead of checked on each request.
+     * @return true if watched
+     */
+    boolean isWatched();
+
     /**
      * Create script cache.
      * @param script script
      * @param sourceName script source name
+     * @param sourceLength length of the compiled source
      * @param userScriptCache script cache map
+     * @return created script cache
      * @throws PersoniumEngineException exception
      */
-    void createCachedScript(Script script, String sourceName, Map<String, ScriptCache> userScriptCache)
-            throws PersoniumEngineException;
+    ScriptCache createCachedScript(Script script, String sourceName, int sourceLength,
+            Map<String, ScriptCache> userScriptCache) throws PersoniumEngineException;
 
     /**
      * Get script cache.
+     * This is consulted before the source is read, so that a cached script costs no source read nor decryption.
      * @param sourceName script source name
      * @param userScriptCache script cache map
-     * @return script cache
+     * @return script cache, or null if not cached or outdated
      * @throws PersoniumEngineException exception
      */
-    Script getCachedScript(String sourceName, Map<String, ScriptCache> userScriptCache) throws PersoniumEngineException;
+    ScriptCache getCachedScript(String sourceName, Map<String, ScriptCache> userScriptCache)
+            throws PersoniumEngineException;
 
     /**
      * Getter for Script file content.
+     * Called only when the script has to be compiled.
      * @param scriptFileName Script File Name
-     * @return Script file content
+     * @param prefix source placed before the file content
+     * @param suffix source placed after the file content
+     * @return Script file content between the prefix and the suffix
      * @throws PersoniumEngineException exception
      */
-    String getSource(String scriptFileName) throws PersoniumEngineException;
+    ScriptSource getSource(String scriptFileName, String prefix, String suffix) throws PersoniumEngineException;
 }
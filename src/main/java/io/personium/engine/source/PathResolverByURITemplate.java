@@ -20,35 +20,132 @@ import org.glassfish.jersey.uri.UriTemplate;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.PatternSyntaxException;
 
+/**
+ * Path resolver by URI templates. The first registered route matching the path wins.
+ * Routes made of literal segments and whole-segment variables such as "users/{id}/view" are compiled into
+ * a tree of segments, which resolves a path in one pass without allocation.
+ * Other routes, e.g. with regular expressions or variables inside a segment, are matched by their UriTemplate.
+ */
 public class PathResolverByURITemplate implements IPathResolver {
 
-    /** Mapping from path to source file. */
-    private ArrayList<RouteEntry> pathList = new ArrayList<>(); 
+    /** No route. */
+    private static final int NONE = Integer.MAX_VALUE;
+
+    /** Routes in the registration order. */
+    private final List<RouteEntry> pathList = new ArrayList<>();
+
+    /** Root of the tree of segments. */
+    private final Node root = new Node();
+
+    /** Routes matched by their UriTemplate, in the registration order. */
+    private final List<RouteEntry> templateList = new ArrayList<>();
+
+    private static final class RouteEntry {
+        private final int index;
+        private final UriTemplate template;
+        private final String sourceString;
+        /** Segments of the template. */
+        private final String[] segments;
+        /** Variable name of each segment, null for literal segments. null if not in the tree. */
+        private final String[] segmentVariables;
 
-    private interface IRouteEntry {
-        public boolean match(String uri);
-        public String getSourceString();
+        RouteEntry(int index, String uriTemplate, String sourceString)
+                throws PatternSyntaxException, IllegalArgumentException {
+            this.index = index;
+            this.template = new UriTemplate(uriTemplate);
+            this.sourceString = sourceString;
+            this.segments = uriTemplate.split("/", -1);
+            this.segmentVariables = compile(this.segments, this.template);
+        }
+
+        /**
+         * Put the captured variables of the path matched by this route in the tree.
+         */
+        void capture(String uri, Map<String, String> params) {
+            int start = 0;
+            for (String variable : segmentVariables) {
+                int end = uri.indexOf('/', start);
+                if (end < 0) {
+                    end = uri.length();
+                }
+                if (variable != null) {
+                    params.put(variable, uri.substring(start, end));
+                }
+                start = end + 1;
+            }
+        }
     }
 
-    private class RouteEntry implements IRouteEntry{
-        private UriTemplate template = null;
-        private String sourceString = null;
-  
-        public RouteEntry (String uriTemplate, String sourceString) throws PatternSyntaxException, IllegalArgumentException {
-          this.template = new UriTemplate(uriTemplate);
-          this.sourceString = sourceString;
+    /**
+     * Segment of the tree.
+     */
+    private static final class Node {
+        /** Literal children, in an open addressing table keyed by the segment. */
+        private String[] keys = new String[2];
+        private Node[] children = new Node[2];
+        private int size;
+        /** Child of a whole-segment variable. */
+        private Node variable;
+        /** Index of the first route ending at this segment. */
+        private int route = NONE;
+
+        Node literal(String uri, int start, int end) {
+            int mask = keys.length - 1;
+            int length = end - start;
+            for (int i = hash(uri, start, end) & mask;; i = (i + 1) & mask) {
+                String key = keys[i];
+                if (key == null) {
+                    return null;
+                }
+                if (key.length() == length && key.regionMatches(0, uri, start, length)) {
+                    return children[i];
+                }
+            }
+        }
+
+        Node addLiteral(String segment) {
+            Node child = literal(segment, 0, segment.length());
+            if (child != null) {
+                return child;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                String[] oldKeys = keys;
+                Node[] oldChildren = children;
+                keys = new String[oldKeys.length * 2];
+                children = new Node[oldKeys.length * 2];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        put(oldKeys[i], oldChildren[i]);
+                    }
+                }
+            }
+            child = new Node();
+            put(segment, child);
+            size++;
+            return child;
         }
-  
-        public String getSourceString() {
-          return this.sourceString;
+
+        private void put(String key, Node child) {
+            int mask = keys.length - 1;
+            int i = hash(key, 0, key.length()) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            children[i] = child;
         }
-  
-        public boolean match(String uri) {
-          Map<String,String> matchResult = new HashMap<>();
-          return this.template.match(uri, matchResult);
+
+        private static int hash(String s, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + s.charAt(i);
+            }
+            return h ^ (h >>> 16);
         }
     }
 
@@ -59,24 +156,122 @@ public class PathResolverByURITemplate implements IPathResolver {
      * @throws RouteRegistrationException when name contains illegal uri template
      */
     public void registerRoute(String name, String src) throws RouteRegistrationException {
+        RouteEntry entry;
         try {
-            pathList.add(new RouteEntry(name, src));
+            entry = new RouteEntry(pathList.size(), name, src);
         } catch (Exception e) {
             throw new RouteRegistrationException(e, name, src);
         }
+        pathList.add(entry);
+        if (entry.segmentVariables == null) {
+            templateList.add(entry);
+            return;
+        }
+        Node node = root;
+        for (int i = 0; i < entry.segments.length; i++) {
+            if (entry.segmentVariables[i] == null) {
+                node = node.addLiteral(entry.segments[i]);
+            } else {
+                if (node.variable == null) {
+                    node.variable = new Node();
+                }
+                node = node.variable;
+            }
+        }
+        node.route = Math.min(node.route, entry.index);
     }
 
-    /** 
+    /**
      * Function for getting source file name from route path
      * @param servicePath path executed
      * @return source filename.
      */
     public String resolve(String servicePath) {
-        for (RouteEntry routeEntry : pathList) {
-            if (routeEntry.match(servicePath)) {
-              return routeEntry.sourceString;
+        return resolve(servicePath, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String resolve(String servicePath, Map<String, String> params) {
+        if (servicePath == null) {
+            return null;
+        }
+        int best = match(root, servicePath, 0);
+        for (RouteEntry routeEntry : templateList) {
+            if (routeEntry.index >= best) {
+                break;
+            }
+            Map<String, String> matchResult = new HashMap<>();
+            if (routeEntry.template.match(servicePath, matchResult)) {
+                if (params != null) {
+                    params.putAll(matchResult);
+                }
+                return routeEntry.sourceString;
+            }
+        }
+        if (best == NONE) {
+            return null;
+        }
+        RouteEntry routeEntry = pathList.get(best);
+        if (params != null) {
+            routeEntry.capture(servicePath, params);
+        }
+        return routeEntry.sourceString;
+    }
+
+    /**
+     * Find the first route matching the rest of the path from the segment.
+     * @return route index, or NONE
+     */
+    private static int match(Node node, String uri, int start) {
+        int end = uri.indexOf('/', start);
+        boolean last = end < 0;
+        if (last) {
+            end = uri.length();
+        }
+        int best = NONE;
+        Node child = node.literal(uri, start, end);
+        if (child != null) {
+            best = last ? child.route : match(child, uri, end + 1);
+        }
+        // [^/]+ as the default regex of UriTemplate
+        if (node.variable != null && end > start) {
+            int route = last ? node.variable.route : match(node.variable, uri, end + 1);
+            best = Math.min(best, route);
+        }
+        return best;
+    }
+
+    /**
+     * Split the template into literal segments and whole-segment variables.
+     * @return variable name of each segment, null for literal segments,
+     *         or null if the route is to be matched by the UriTemplate
+     */
+    private static String[] compile(String[] segments, UriTemplate template) {
+        String[] segmentVariables = new String[segments.length];
+        List<String> variables = new ArrayList<>();
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.indexOf('{') < 0 && segment.indexOf('}') < 0) {
+                // literals with % are percent-encoded by UriTemplate
+                if (segment.indexOf('%') >= 0) {
+                    return null;
+                }
+            } else if (segment.startsWith("{") && segment.endsWith("}")
+                    && segment.substring(1, segment.length() - 1).trim().matches("[\\w.-]+")) {
+                segmentVariables[i] = segment.substring(1, segment.length() - 1).trim();
+                variables.add(segmentVariables[i]);
+            } else {
+                return null;
             }
         }
-        return null;
+        // a variable used twice has to capture the same value
+        if (!variables.equals(template.getTemplateVariables())
+                || new HashSet<String>(variables).size() != variables.size()) {
+            return null;
+        }
+        return segmentVariables;
     }
 }
@@ -0,0 +1,256 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.mozilla.javascript.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import io.personium.engine.PersoniumEngineException;
+import io.personium.engine.model.DavMetadataCache;
+import io.personium.engine.utils.PersoniumEngineConfig;
+
+/**
+ * Service definition of a service collection: the subject, the routes and the optimization level.
+ * Descriptors are immutable and shared across requests. A cached descriptor is used while the collection
+ * metadata has the same updated stamp and properties, so that the service XML is parsed only when changed.
+ * Collections which are not valid services are cached likewise, with the error to report.
+ */
+public final class ServiceCollection {
+    /** Logger Object. */
+    private static Logger log = LoggerFactory.getLogger(ServiceCollection.class);
+
+    /** Cached descriptors by collection path. */
+    private static final Map<String, ServiceCollection> CACHE = new ConcurrentHashMap<String, ServiceCollection>();
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder LOADS = new LongAdder();
+
+    static {
+        ServiceSourceWatcher.addListener(new ServiceSourceWatcher.Listener() {
+            @Override
+            public void changed(String collectionPath, String dir) {
+                if (Paths.get(collectionPath).toString().equals(dir)) {
+                    CACHE.remove(collectionPath);
+                }
+            }
+
+            @Override
+            public void unwatched(String collectionPath) {
+                CACHE.remove(collectionPath);
+            }
+        });
+    }
+
+    private final Long updated;
+    private final String service;
+    private final String optimizationLevelProperty;
+    private final String serviceSubject;
+    private final IPathResolver pathResolver;
+    private final Integer optimizationLevel;
+    /** Error of the service definition. null if valid. */
+    private final PersoniumEngineException error;
+
+    private ServiceCollection(DavMetadataCache.Metadata metadata, String serviceSubject,
+            IPathResolver pathResolver, Integer optimizationLevel, PersoniumEngineException error) {
+        this.updated = metadata.getUpdated();
+        this.service = metadata.getProperty(DavMetadataCache.PROP_SERVICE);
+        this.optimizationLevelProperty = metadata.getProperty(DavMetadataCache.PROP_OPTIMIZATION_LEVEL);
+        this.serviceSubject = serviceSubject;
+        this.pathResolver = pathResolver;
+        this.optimizationLevel = optimizationLevel;
+        this.error = error;
+    }
+
+    /**
+     * Get the descriptor of the service collection, parsing the service definition only when it has changed.
+     * @param fsPath path of the service collection
+     * @param metadata metadata of the service collection
+     * @return descriptor
+     * @throws PersoniumEngineException service property is not set or has invalid routes
+     */
+    public static ServiceCollection get(String fsPath, DavMetadataCache.Metadata metadata)
+            throws PersoniumEngineException {
+        ServiceCollection cached = CACHE.get(fsPath);
+        if (cached != null && cached.isValid(metadata)) {
+            HITS.increment();
+            return cached.validate();
+        }
+        ServiceCollection collection;
+        try {
+            collection = parse(metadata);
+        } catch (PersoniumEngineException e) {
+            collection = new ServiceCollection(metadata, null, null, null, e);
+        }
+        LOADS.increment();
+        put(fsPath, collection);
+        return collection.validate();
+    }
+
+    /**
+     * Counters of the cache.
+     * @return hits, loads and entries
+     */
+    public static Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        stats.put("hits", HITS.sum());
+        stats.put("loads", LOADS.sum());
+        stats.put("entries", (long) CACHE.size());
+        return stats;
+    }
+
+    /**
+     * @return subject of the service
+     */
+    public String getServiceSubject() {
+        return serviceSubject;
+    }
+
+    /**
+     * @return resolver from service path to source name
+     */
+    public IPathResolver getPathResolver() {
+        return pathResolver;
+    }
+
+    /**
+     * @return optimization level set on the collection. null if not set.
+     */
+    public Integer getOptimizationLevel() {
+        return optimizationLevel;
+    }
+
+    private ServiceCollection validate() throws PersoniumEngineException {
+        if (error != null) {
+            throw new PersoniumEngineException(error.getMessage(), error.getStatusCode(), error);
+        }
+        return this;
+    }
+
+    private boolean isValid(DavMetadataCache.Metadata metadata) {
+        return Objects.equals(updated, metadata.getUpdated())
+                && Objects.equals(service, metadata.getProperty(DavMetadataCache.PROP_SERVICE))
+                && Objects.equals(optimizationLevelProperty,
+                        metadata.getProperty(DavMetadataCache.PROP_OPTIMIZATION_LEVEL));
+    }
+
+    private static void put(String fsPath, ServiceCollection collection) {
+        int maxEntries = PersoniumEngineConfig.getServiceCollectionCacheMaxEntries();
+        if (maxEntries <= 0) {
+            return;
+        }
+        // Descriptors are cheap to parse again. Drop arbitrary entries rather than tracking the usage.
+        Iterator<String> keys = CACHE.keySet().iterator();
+        while (CACHE.size() >= maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+        CACHE.put(fsPath, collection);
+    }
+
+    private static ServiceCollection parse(DavMetadataCache.Metadata metadata) throws PersoniumEngineException {
+        // Get the Engine Service Configuration information
+        String service = metadata.getProperty(DavMetadataCache.PROP_SERVICE);
+        if (null == service) {
+            log.info("Service property Invalid ");
+            throw new PersoniumEngineException("404 Not Found (Service property invalid) ",
+                    PersoniumEngineException.STATUSCODE_NOTFOUND);
+        }
+        log.debug("scriptPath: [" + service + "] ");
+
+        DocumentBuilder builder = null;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            builder = factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+        InputStream is = new ByteArrayInputStream(service.getBytes());
+        try {
+            Document doc = builder.parse(is);
+            Element el = doc.getDocumentElement();
+            String serviceSubject = el.getAttribute("subject");
+            IPathResolver resolver = new PathResolverByURITemplate();
+            NodeList nl = doc.getElementsByTagNameNS("*", "path");
+            try {
+                for (int i = 0; i < nl.getLength(); i++) {
+                    NamedNodeMap nnm = nl.item(i).getAttributes();
+                    resolver.registerRoute(nnm.getNamedItem("name").getNodeValue(),
+                            nnm.getNamedItem("src").getNodeValue());
+                }
+            } catch (RouteRegistrationException e) {
+                throw new PersoniumEngineException(e.getMessage(), 503, e);
+            }
+            return new ServiceCollection(metadata, serviceSubject, resolver, parseOptimizationLevel(
+                    metadata.getProperty(DavMetadataCache.PROP_OPTIMIZATION_LEVEL)), null);
+        } catch (SAXException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Parse the optimization level property of the collection.
+     * The property is stored as an XML fragment such as
+     * &lt;optimizationLevel xmlns="urn:x-personium:xmlns"&gt;9&lt;/optimizationLevel&gt;.
+     * @param value property value
+     * @return optimization level, or null if not set or invalid
+     */
+    private static Integer parseOptimizationLevel(String value) {
+        if (value == null) {
+            return null;
+        }
+        String text = value;
+        int start = value.indexOf('>');
+        int end = value.lastIndexOf('<');
+        if (start >= 0 && end > start) {
+            text = value.substring(start + 1, end);
+        }
+        try {
+            int level = Integer.parseInt(text.trim());
+            if (Context.isValidOptimizationLevel(level)) {
+                return level;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        log.info("Invalid optimization level property (" + value + "). Ignored.");
+        return null;
+    }
+}
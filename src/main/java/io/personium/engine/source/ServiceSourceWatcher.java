@@ -0,0 +1,418 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.engine.model.DavMetadataCache;
+import io.personium.engine.model.NegativeCache;
+import io.personium.engine.model.DavMetadataFile;
+import io.personium.engine.utils.PersoniumEngineConfig;
+
+/**
+ * Watches the sources of recently used service collections for changes.
+ * While a collection is watched, its metadata is trusted without checking the files on each request.
+ * Changes of the .pmeta or content files are detected by a WatchService, and by scanning the files
+ * periodically since a WatchService does not see changes made by other hosts on NFS.
+ * Each change invalidates the cached metadata of the directory and is notified to the listeners.
+ */
+public final class ServiceSourceWatcher {
+    /** Logger Object. */
+    private static Logger log = LoggerFactory.getLogger(ServiceSourceWatcher.class);
+
+    /** Directory of the service sources in a service collection. */
+    static final String SOURCE_DIR = "__src";
+    /** Source file in a source directory. */
+    private static final String CONTENT_FILE = "content";
+
+    /**
+     * Receives changes of the watched collections.
+     */
+    public interface Listener {
+        /**
+         * Called when the .pmeta or content of a directory of the collection has changed.
+         * @param collectionPath path of the service collection
+         * @param dir changed directory, the collection itself or one of its sources
+         */
+        void changed(String collectionPath, String dir);
+
+        /**
+         * Called when the collection is no longer watched.
+         * @param collectionPath path of the service collection
+         */
+        void unwatched(String collectionPath);
+    }
+
+    /** Watched collections by path. */
+    private static final Map<String, Collection> COLLECTIONS = new ConcurrentHashMap<String, Collection>();
+    /** Listeners. */
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<Listener>();
+    /** Collections by watched directory. */
+    private static final Map<WatchKey, Collection> WATCH_KEYS = new ConcurrentHashMap<WatchKey, Collection>();
+
+    private static final AtomicLong SCANS = new AtomicLong();
+    private static final AtomicLong CHANGES = new AtomicLong();
+
+    /** WatchService. Null until started or if not available. */
+    private static WatchService watchService;
+    /** Whether the threads are started. Guarded by the class. */
+    private static boolean started;
+
+    /**
+     * Constructor.
+     */
+    private ServiceSourceWatcher() {
+    }
+
+    /**
+     * Whether the sources are watched.
+     * @return true if enabled
+     */
+    public static boolean isEnabled() {
+        return PersoniumEngineConfig.getScriptWatchEnabled();
+    }
+
+    /**
+     * Add a listener of the changes.
+     * @param listener listener
+     */
+    public static void addListener(Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Start watching the service collection, or mark it as recently used if already watched.
+     * When the collection cannot be watched, e.g. it does not exist, its files are checked on each request.
+     * @param collectionPath path of the service collection
+     * @return true if the collection is watched
+     */
+    public static boolean watch(String collectionPath) {
+        if (!isEnabled() || collectionPath == null
+                || NegativeCache.isMissing(new File(collectionPath, DavMetadataFile.DAV_META_FILE_NAME).getPath())) {
+            return false;
+        }
+        Collection collection = COLLECTIONS.get(collectionPath);
+        if (collection == null) {
+            collection = register(collectionPath);
+            if (collection == null) {
+                return false;
+            }
+        }
+        collection.lastUsed = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Whether the service collection is watched.
+     * @param collectionPath path of the service collection
+     * @return true if watched
+     */
+    public static boolean isWatched(String collectionPath) {
+        return collectionPath != null && COLLECTIONS.containsKey(collectionPath);
+    }
+
+    /**
+     * Counters of the watcher.
+     * @return collections, scans and changes
+     */
+    public static Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        stats.put("collections", (long) COLLECTIONS.size());
+        stats.put("scans", SCANS.get());
+        stats.put("changes", CHANGES.get());
+        return stats;
+    }
+
+    private static synchronized Collection register(String collectionPath) {
+        Collection collection = COLLECTIONS.get(collectionPath);
+        if (collection != null) {
+            return collection;
+        }
+        start();
+        collection = new Collection(collectionPath);
+        if (!Files.isDirectory(collection.dir)) {
+            return null;
+        }
+        // Metadata read while not watched may be outdated.
+        collection.scan(false);
+        for (Path file : collection.snapshot.keySet()) {
+            DavMetadataCache.invalidate(file.getParent().toString());
+        }
+        COLLECTIONS.put(collectionPath, collection);
+        int maxCollections = PersoniumEngineConfig.getScriptWatchMaxCollections();
+        while (COLLECTIONS.size() > maxCollections) {
+            Collection oldest = collection;
+            for (Collection candidate : COLLECTIONS.values()) {
+                if (candidate.lastUsed - oldest.lastUsed < 0) {
+                    oldest = candidate;
+                }
+            }
+            unregister(oldest);
+        }
+        return COLLECTIONS.get(collectionPath);
+    }
+
+    private static synchronized void unregister(Collection collection) {
+        if (!COLLECTIONS.remove(collection.path, collection)) {
+            return;
+        }
+        collection.cancel();
+        for (Listener listener : LISTENERS) {
+            listener.unwatched(collection.path);
+        }
+    }
+
+    private static void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(ServiceSourceWatcher::takeEvents, "personium-source-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            log.info("WatchService is not available. Sources are only scanned : " + e.getMessage());
+        }
+        long interval = PersoniumEngineConfig.getScriptWatchPollInterval();
+        if (interval > 0) {
+            ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "personium-source-poller");
+                thread.setDaemon(true);
+                return thread;
+            });
+            poller.scheduleWithFixedDelay(ServiceSourceWatcher::scanAll, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void takeEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            // The events only tell which collection to scan. The scan finds what has changed.
+            key.pollEvents();
+            key.reset();
+            Collection collection = WATCH_KEYS.get(key);
+            if (collection != null) {
+                scan(collection);
+            }
+        }
+    }
+
+    private static void scanAll() {
+        for (Collection collection : COLLECTIONS.values()) {
+            scan(collection);
+        }
+    }
+
+    /**
+     * Scan the collection. A collection which no longer exists or fails to scan is no longer watched,
+     * so that its files are checked on each request instead of trusting metadata which may be outdated.
+     * @param collection watched collection
+     */
+    private static void scan(Collection collection) {
+        try {
+            if (collection.scan(true)) {
+                return;
+            }
+        } catch (RuntimeException e) {
+            // e.g. DirectoryIteratorException. Never let it end the watcher thread.
+            log.info("Failed to scan service sources of " + collection.path + " : " + e.getMessage());
+        }
+        unregister(collection);
+    }
+
+    private static void fire(Collection collection, Path dir) {
+        CHANGES.incrementAndGet();
+        DavMetadataCache.invalidate(dir.toString());
+        for (Listener listener : LISTENERS) {
+            try {
+                listener.changed(collection.path, dir.toString());
+            } catch (RuntimeException e) {
+                log.warn("Failed to handle change of " + dir + " : " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Watched service collection.
+     */
+    private static final class Collection {
+        private final String path;
+        private final Path dir;
+        private final Path sourceDir;
+        /** Last time used by a request, in System.nanoTime(). */
+        private volatile long lastUsed = System.nanoTime();
+        /** Attributes of the watched files. Guarded by this. */
+        private Map<Path, FileState> snapshot = new HashMap<Path, FileState>();
+        /** Watched directories. Guarded by this. */
+        private final Map<Path, WatchKey> keys = new HashMap<Path, WatchKey>();
+
+        Collection(String path) {
+            this.path = path;
+            this.dir = new File(path).toPath();
+            this.sourceDir = dir.resolve(SOURCE_DIR);
+        }
+
+        /**
+         * Compare the files with the last scan and notify the changed directories.
+         * @param notify false to only take the snapshot
+         * @return false if the collection no longer exists
+         */
+        synchronized boolean scan(boolean notify) {
+            SCANS.incrementAndGet();
+            Map<Path, FileState> current = new HashMap<Path, FileState>();
+            watchDir(dir);
+            stat(dir.resolve(DavMetadataFile.DAV_META_FILE_NAME), current);
+            if (Files.isDirectory(sourceDir)) {
+                watchDir(sourceDir);
+                try (DirectoryStream<Path> sources = Files.newDirectoryStream(sourceDir, Files::isDirectory)) {
+                    for (Path source : sources) {
+                        watchDir(source);
+                        stat(source.resolve(DavMetadataFile.DAV_META_FILE_NAME), current);
+                        stat(source.resolve(CONTENT_FILE), current);
+                    }
+                } catch (IOException e) {
+                    log.info("Failed to list service sources of " + path + " : " + e.getMessage());
+                    return true;
+                }
+            }
+            Set<Path> changed = new LinkedHashSet<Path>();
+            for (Map.Entry<Path, FileState> entry : current.entrySet()) {
+                if (!entry.getValue().equals(snapshot.get(entry.getKey()))) {
+                    changed.add(entry.getKey().getParent());
+                }
+            }
+            for (Path file : snapshot.keySet()) {
+                if (!current.containsKey(file)) {
+                    changed.add(file.getParent());
+                }
+            }
+            snapshot = current;
+            if (notify) {
+                for (Path changedDir : changed) {
+                    fire(this, changedDir);
+                }
+            }
+            return Files.isDirectory(dir);
+        }
+
+        private void stat(Path file, Map<Path, FileState> states) {
+            try {
+                states.put(file, new FileState(Files.readAttributes(file, BasicFileAttributes.class)));
+            } catch (NoSuchFileException e) {
+                return;
+            } catch (IOException e) {
+                log.info("Failed to stat " + file + " : " + e.getMessage());
+            }
+        }
+
+        private void watchDir(Path target) {
+            if (watchService == null) {
+                return;
+            }
+            WatchKey registered = keys.get(target);
+            if (registered != null && registered.isValid()) {
+                return;
+            }
+            if (registered != null) {
+                // The directory was removed and created again.
+                WATCH_KEYS.remove(registered);
+            }
+            try {
+                WatchKey key = target.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                keys.put(target, key);
+                WATCH_KEYS.put(key, this);
+            } catch (IOException e) {
+                // e.g. out of inotify watches. Changes are still found by the scans.
+                log.debug("Failed to watch " + target + " : " + e.getMessage());
+            }
+        }
+
+        synchronized void cancel() {
+            for (WatchKey key : new ArrayList<WatchKey>(keys.values())) {
+                key.cancel();
+                WATCH_KEYS.remove(key);
+            }
+            keys.clear();
+        }
+    }
+
+    /**
+     * Attributes of a file compared between scans.
+     */
+    private static final class FileState {
+        private final long size;
+        private final long lastModified;
+        private final Object fileKey;
+
+        FileState(BasicFileAttributes attrs) {
+            this.size = attrs.size();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+            this.fileKey = attrs.fileKey();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileState)) {
+                return false;
+            }
+            FileState other = (FileState) obj;
+            return size == other.size && lastModified == other.lastModified && Objects.equals(fileKey, other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, fileKey);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.source;
+
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.personium.common.file.DataCryptor;
+
+/**
+ * Decrypts service sources encrypted by core with DataCryptor.
+ * One DataCryptor is kept for each cell, instead of deriving its IV for every source read.
+ * The key is the one set by DataCryptor.setKeyString.
+ */
+public final class SourceCryptor {
+    /** Max number of cells whose DataCryptor is kept. A DataCryptor is cheap to create again. */
+    private static final int MAX_CRYPTORS = 10000;
+
+    /** DataCryptor by routing ID. */
+    private static final Map<String, DataCryptor> CRYPTORS = new ConcurrentHashMap<String, DataCryptor>();
+
+    /**
+     * Constructor.
+     */
+    private SourceCryptor() {
+    }
+
+    /**
+     * Decrypt the stream.
+     * @param in stream of the file
+     * @param fsRoutingId routing ID(cell ID) of the file
+     * @param encryptionType encryption type of the file
+     * @return decrypted stream, or the given stream if not encrypted
+     */
+    public static InputStream decode(InputStream in, String fsRoutingId, String encryptionType) {
+        if (!DataCryptor.ENCRYPTION_TYPE_AES.equals(encryptionType)) {
+            return in;
+        }
+        return getCryptor(fsRoutingId).decode(in, encryptionType);
+    }
+
+    private static DataCryptor getCryptor(String fsRoutingId) {
+        DataCryptor cryptor = CRYPTORS.get(fsRoutingId);
+        if (cryptor == null) {
+            cryptor = new DataCryptor(fsRoutingId);
+            Iterator<String> keys = CRYPTORS.keySet().iterator();
+            while (CRYPTORS.size() >= MAX_CRYPTORS && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+            CRYPTORS.put(fsRoutingId, cryptor);
+        }
+        return cryptor;
+    }
+}
@@ -16,6 +16,9 @@
  */
 package io.personium.engine.source;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.util.Map;
@@ -27,7 +30,8 @@ import org.slf4j.LoggerFactory;
 
 import io.personium.engine.PersoniumEngineException;
 import io.personium.engine.model.ScriptCache;
-import io.personium.engine.utils.EngineUtils;
+import io.personium.engine.model.ScriptSource;
+import io.personium.engine.utils.PersoniumEngineConfig;
 
 /**
  * SourceManager for Test/Debug Mode.
@@ -64,15 +68,40 @@ public class TestResourceSourceManager implements ISourceManager {
      * {@inheritDoc}
      */
     @Override
-    public void createCachedScript(Script script, String sourceName, Map<String, ScriptCache> userScriptCache)
-            throws PersoniumEngineException {
+    public int getOptimizationLevel() {
+        return PersoniumEngineConfig.getScriptOptimizationLevel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getCacheKey(String sourceName) {
+        return sourceName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isWatched() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScriptCache createCachedScript(Script script, String sourceName, int sourceLength,
+            Map<String, ScriptCache> userScriptCache) throws PersoniumEngineException {
+        return new ScriptCache(script, null, getOptimizationLevel(), sourceLength, null);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Script getCachedScript(String sourceName, Map<String, ScriptCache> userScriptCache)
+    public ScriptCache getCachedScript(String sourceName, Map<String, ScriptCache> userScriptCache)
             throws PersoniumEngineException {
         return null;
     }
@@ -81,11 +110,15 @@ public class TestResourceSourceManager implements ISourceManager {
      * {@inheritDoc}
      */
     @Override
-    public String getSource(String sourceName) throws PersoniumEngineException {
+    public ScriptSource getSource(String sourceName, String prefix, String suffix)
+            throws PersoniumEngineException {
         try {
             URL path = getClass().getResource("/service/" + sourceName);
+            File file = new File(URLDecoder.decode(path.getFile(), CharEncoding.UTF_8));
 
-            return EngineUtils.readFile(URLDecoder.decode(path.getFile(), CharEncoding.UTF_8));
+            try (InputStream in = new FileInputStream(file)) {
+                return ScriptSource.read(in, file.length(), prefix, suffix);
+            }
         } catch (Exception e) {
             log.info("CouchClientException msg:" + e.getMessage() + ",svcName:" + sourceName);
             log.info("UserScript read error ", e);
@@ -0,0 +1,113 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Build-time compiler of the engine libraries (js-lib/*.js) into Java classes.
+ * Invoked from the process-classes phase of the Maven build.
+ * Unlike Rhino's jsc tool, the generated code observes the instruction count so that the script timeout
+ * also applies while library code is running.
+ */
+public final class EngineLibCompiler {
+    /** Logger. */
+    private static Logger log = LoggerFactory.getLogger(EngineLibCompiler.class);
+
+    /** Package of the precompiled engine libraries. */
+    public static final String ENGINE_LIB_PACKAGE = "io.personium.engine.lib";
+
+    /** Default optimization level. */
+    private static final int DEFAULT_OPTIMIZATION_LEVEL = 9;
+
+    /**
+     * Constructor.
+     */
+    private EngineLibCompiler() {
+    }
+
+    /**
+     * Get the class name of a precompiled engine library.
+     * e.g. personium-dao to io.personium.engine.lib.PersoniumDao
+     * @param libName library name without extension
+     * @return fully qualified class name
+     */
+    public static String toClassName(String libName) {
+        StringBuilder sb = new StringBuilder(ENGINE_LIB_PACKAGE).append('.');
+        boolean upper = true;
+        for (char c : libName.toCharArray()) {
+            if (!Character.isJavaIdentifierPart(c)) {
+                upper = true;
+                continue;
+            }
+            sb.append(upper ? Character.toUpperCase(c) : c);
+            upper = false;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Compile the engine libraries.
+     * @param args source directory, output directory and optional optimization level
+     * @throws IOException failed to read or write files
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("usage: EngineLibCompiler srcDir outDir [optimizationLevel]");
+        }
+        File srcDir = new File(args[0]);
+        File outDir = new File(args[1]);
+        int level = DEFAULT_OPTIMIZATION_LEVEL;
+        if (args.length > 2) {
+            level = Integer.parseInt(args[2]);
+        }
+
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.setLanguageVersion(Context.VERSION_ES6);
+        env.setOptimizationLevel(level);
+        env.setGenerateObserverCount(true);
+        ClassCompiler compiler = new ClassCompiler(env);
+
+        File[] libs = srcDir.listFiles((dir, name) -> name.endsWith(".js"));
+        if (libs == null) {
+            throw new IOException("js-lib directory not found: " + srcDir);
+        }
+        for (File lib : libs) {
+            String libName = lib.getName().substring(0, lib.getName().length() - ".js".length());
+            String source = new String(Files.readAllBytes(lib.toPath()), StandardCharsets.UTF_8);
+            // The source location matches the one used when compiling from the classpath at runtime.
+            Object[] classes = compiler.compileToClassFiles(source, "/js-lib/" + lib.getName(), 1,
+                    toClassName(libName));
+            for (int i = 0; i < classes.length; i += 2) {
+                String className = (String) classes[i];
+                File classFile = new File(outDir, className.replace('.', File.separatorChar) + ".class");
+                classFile.getParentFile().mkdirs();
+                Files.write(classFile.toPath(), (byte[]) classes[i + 1]);
+            }
+            log.info("Compiled " + lib.getName() + " to " + toClassName(libName));
+        }
+    }
+}
@@ -145,10 +145,67 @@ public class PersoniumEngineConfig {
      * Setting around EngineScript.
      */
     public static final class Engine {
+        /** Max total estimated size(bytes) of engine script cache. */
+        public static final String SCRIPT_CACHE_MAX_SIZE = KEY_ROOT + "engine.script.cache.maxSize";
         /** Max number of engine script chache. */
         public static final String SCRIPT_CACHE_MAXNUM = KEY_ROOT + "engine.script.cache.maxNum";
+        /** Max share of engine script cache held by one cell. */
+        public static final String SCRIPT_CACHE_PARTITION_MAX_SHARE = KEY_ROOT
+                + "engine.script.cache.partition.maxShare";
+        /** Estimated size(bytes) of engine script cache reserved for each cell. */
+        public static final String SCRIPT_CACHE_PARTITION_RESERVED_SIZE = KEY_ROOT
+                + "engine.script.cache.partition.reservedSize";
+        /** Shed engine script caches under heap pressure. */
+        public static final String SCRIPT_CACHE_HEAP_PRESSURE_ENABLED = KEY_ROOT
+                + "engine.script.cache.heapPressure.enabled";
+        /** Used ratio of the old generation after collection at which engine script caches are shed. */
+        public static final String SCRIPT_CACHE_HEAP_PRESSURE_HIGH_WATERMARK = KEY_ROOT
+                + "engine.script.cache.heapPressure.highWatermark";
+        /** Used ratio of the old generation after collection below which shedding stops. */
+        public static final String SCRIPT_CACHE_HEAP_PRESSURE_LOW_WATERMARK = KEY_ROOT
+                + "engine.script.cache.heapPressure.lowWatermark";
         /** Engine script connection timeout(msec). */
         public static final String SCRIPT_CONNECTION_TIMEOUT = KEY_ROOT + "engine.script.connection.timeout";
+        /** Evaluate engine libraries once into a sealed scope shared by all requests. */
+        public static final String SCRIPT_SHARED_SCOPE_ENABLED = KEY_ROOT + "engine.script.sharedScope.enabled";
+        /** Share the exports of modules declaring "use shared" across requests. */
+        public static final String SCRIPT_SHARED_MODULE_ENABLED = KEY_ROOT + "engine.script.sharedModule.enabled";
+        /** Rhino optimization level of user scripts (-1: interpreter, 0-9: JVM bytecode). */
+        public static final String SCRIPT_OPTIMIZATION_LEVEL = KEY_ROOT + "engine.script.optimizationLevel";
+        /** Promote frequently executed interpreted scripts to compiled code. */
+        public static final String SCRIPT_TIERED_ENABLED = KEY_ROOT + "engine.script.tiered.enabled";
+        /** Optimization level of promoted scripts. */
+        public static final String SCRIPT_TIERED_OPTIMIZATION_LEVEL = KEY_ROOT
+                + "engine.script.tiered.optimizationLevel";
+        /** Number of invocations after which a script is promoted. */
+        public static final String SCRIPT_TIERED_INVOCATION_THRESHOLD = KEY_ROOT
+                + "engine.script.tiered.invocationThreshold";
+        /** Cumulative execution time(msec) after which a script is promoted. */
+        public static final String SCRIPT_TIERED_EXEC_TIME_THRESHOLD = KEY_ROOT
+                + "engine.script.tiered.execTimeThreshold";
+        /** Persist compiled scripts to the local disk. */
+        public static final String SCRIPT_DISK_CACHE_ENABLED = KEY_ROOT + "engine.script.diskCache.enabled";
+        /** Directory of the persisted compiled scripts. */
+        public static final String SCRIPT_DISK_CACHE_DIR = KEY_ROOT + "engine.script.diskCache.dir";
+        /** Max total size(bytes) of the persisted compiled scripts. */
+        public static final String SCRIPT_DISK_CACHE_MAX_SIZE = KEY_ROOT + "engine.script.diskCache.maxSize";
+        /** Watch the sources of recently used service collections instead of checking them on each request. */
+        public static final String SCRIPT_WATCH_ENABLED = KEY_ROOT + "engine.script.watch.enabled";
+        /** Max number of watched service collections. */
+        public static final String SCRIPT_WATCH_MAX_COLLECTIONS = KEY_ROOT + "engine.script.watch.maxCollections";
+        /** Interval(msec) of scanning the watched sources. */
+        public static final String SCRIPT_WATCH_POLL_INTERVAL = KEY_ROOT + "engine.script.watch.pollInterval";
+        /** Max number of Dav metadata files cached in memory. */
+        public static final String METADATA_CACHE_MAX_ENTRIES = KEY_ROOT + "engine.metadataCache.maxEntries";
+        /** Max time(msec) to wait for a Dav metadata file being written. */
+        public static final String METADATA_CACHE_LOAD_TIMEOUT = KEY_ROOT + "engine.metadataCache.loadTimeout";
+        /** Max number of parsed service collection definitions cached in memory. */
+        public static final String SERVICE_COLLECTION_CACHE_MAX_ENTRIES =
+                KEY_ROOT + "engine.serviceCollectionCache.maxEntries";
+        /** Time(msec) to remember missing Dav resources. */
+        public static final String NEGATIVE_CACHE_TTL = KEY_ROOT + "engine.negativeCache.ttl";
+        /** Max number of missing Dav resources remembered. */
+        public static final String NEGATIVE_CACHE_MAX_ENTRIES = KEY_ROOT + "engine.negativeCache.maxEntries";
     }
 
     /**
@@ -209,6 +266,14 @@ public class PersoniumEngineConfig {
         return get(Security.TOKEN_SECRET_KEY);
     }
 
+    /**
+     * Get max total estimated size(bytes) of engine script cache.
+     * @return size(bytes)
+     */
+    public static long getScriptCacheMaxSize() {
+        return Long.parseLong(get(Engine.SCRIPT_CACHE_MAX_SIZE));
+    }
+
     /**
      * Get max number of engine script chache.
      * @return Max number of engine script chache
@@ -217,6 +282,46 @@ public class PersoniumEngineConfig {
         return Integer.parseInt(get(Engine.SCRIPT_CACHE_MAXNUM));
     }
 
+    /**
+     * Get max share(0.0-1.0) of engine script cache held by one cell.
+     * @return share
+     */
+    public static double getScriptCachePartitionMaxShare() {
+        return Double.parseDouble(get(Engine.SCRIPT_CACHE_PARTITION_MAX_SHARE));
+    }
+
+    /**
+     * Get estimated size(bytes) of engine script cache reserved for each cell.
+     * @return size(bytes)
+     */
+    public static long getScriptCachePartitionReservedSize() {
+        return Long.parseLong(get(Engine.SCRIPT_CACHE_PARTITION_RESERVED_SIZE));
+    }
+
+    /**
+     * Get whether engine script caches are shed under heap pressure.
+     * @return true if enabled
+     */
+    public static boolean getScriptCacheHeapPressureEnabled() {
+        return Boolean.parseBoolean(get(Engine.SCRIPT_CACHE_HEAP_PRESSURE_ENABLED));
+    }
+
+    /**
+     * Get used ratio(0.0-1.0) of the old generation after collection at which engine script caches are shed.
+     * @return ratio
+     */
+    public static double getScriptCacheHeapPressureHighWatermark() {
+        return Double.parseDouble(get(Engine.SCRIPT_CACHE_HEAP_PRESSURE_HIGH_WATERMARK));
+    }
+
+    /**
+     * Get used ratio(0.0-1.0) of the old generation after collection below which shedding stops.
+     * @return ratio
+     */
+    public static double getScriptCacheHeapPressureLowWatermark() {
+        return Double.parseDouble(get(Engine.SCRIPT_CACHE_HEAP_PRESSURE_LOW_WATERMARK));
+    }
+
     /**
      * Get engine script connection timeout(msec).
      * @return Engine script connection timeout(msec)
@@ -225,6 +330,150 @@ public class PersoniumEngineConfig {
         return Integer.parseInt(get(Engine.SCRIPT_CONNECTION_TIMEOUT));
     }
 
+    /**
+     * Get whether engine libraries are evaluated into a shared scope.
+     * @return true if enabled
+     */
+    public static boolean getScriptSharedScopeEnabled() {
+        return Boolean.parseBoolean(get(Engine.SCRIPT_SHARED_SCOPE_ENABLED));
+    }
+
+    /**
+     * Get whether modules declaring "use shared" are shared across requests.
+     * @return true if enabled
+     */
+    public static boolean getScriptSharedModuleEnabled() {
+        return Boolean.parseBoolean(get(Engine.SCRIPT_SHARED_MODULE_ENABLED));
+    }
+
+    /**
+     * Get Rhino optimization level of user scripts.
+     * @return optimization level
+     */
+    public static int getScriptOptimizationLevel() {
+        return Integer.parseInt(get(Engine.SCRIPT_OPTIMIZATION_LEVEL));
+    }
+
+    /**
+     * Get whether frequently executed scripts are promoted to compiled code.
+     * @return true if enabled
+     */
+    public static boolean getScriptTieredEnabled() {
+        return Boolean.parseBoolean(get(Engine.SCRIPT_TIERED_ENABLED));
+    }
+
+    /**
+     * Get optimization level of promoted scripts.
+     * @return optimization level
+     */
+    public static int getScriptTieredOptimizationLevel() {
+        return Integer.parseInt(get(Engine.SCRIPT_TIERED_OPTIMIZATION_LEVEL));
+    }
+
+    /**
+     * Get number of invocations after which a script is promoted.
+     * @return number of invocations
+     */
+    public static long getScriptTieredInvocationThreshold() {
+        return Long.parseLong(get(Engine.SCRIPT_TIERED_INVOCATION_THRESHOLD));
+    }
+
+    /**
+     * Get cumulative execution time(msec) after which a script is promoted.
+     * @return execution time(msec)
+     */
+    public static long getScriptTieredExecTimeThreshold() {
+        return Long.parseLong(get(Engine.SCRIPT_TIERED_EXEC_TIME_THRESHOLD));
+    }
+
+    /**
+     * Get whether compiled scripts are persisted to the local disk.
+     * @return true if enabled
+     */
+    public static boolean getScriptDiskCacheEnabled() {
+        return Boolean.parseBoolean(get(Engine.SCRIPT_DISK_CACHE_ENABLED));
+    }
+
+    /**
+     * Get directory of the persisted compiled scripts.
+     * @return directory path
+     */
+    public static String getScriptDiskCacheDir() {
+        return get(Engine.SCRIPT_DISK_CACHE_DIR);
+    }
+
+    /**
+     * Get max total size(bytes) of the persisted compiled scripts.
+     * @return size(bytes)
+     */
+    public static long getScriptDiskCacheMaxSize() {
+        return Long.parseLong(get(Engine.SCRIPT_DISK_CACHE_MAX_SIZE));
+    }
+
+    /**
+     * Get whether the sources of recently used service collections are watched.
+     * @return true if enabled
+     */
+    public static boolean getScriptWatchEnabled() {
+        return Boolean.parseBoolean(get(Engine.SCRIPT_WATCH_ENABLED));
+    }
+
+    /**
+     * Get max number of watched service collections.
+     * @return number of collections
+     */
+    public static int getScriptWatchMaxCollections() {
+        return Integer.parseInt(get(Engine.SCRIPT_WATCH_MAX_COLLECTIONS));
+    }
+
+    /**
+     * Get interval(msec) of scanning the watched sources. 0 or less disables the scan.
+     * @return interval(msec)
+     */
+    public static long getScriptWatchPollInterval() {
+        return Long.parseLong(get(Engine.SCRIPT_WATCH_POLL_INTERVAL));
+    }
+
+    /**
+     * Get max number of Dav metadata files cached in memory.
+     * @return number of files
+     */
+    public static int getMetadataCacheMaxEntries() {
+        return Integer.parseInt(get(Engine.METADATA_CACHE_MAX_ENTRIES));
+    }
+
+    /**
+     * Get max time(msec) to wait for a Dav metadata file being written.
+     * @return time
+     */
+    public static long getMetadataCacheLoadTimeout() {
+        return Long.parseLong(get(Engine.METADATA_CACHE_LOAD_TIMEOUT));
+    }
+
+    /**
+     * Get max number of parsed service collection definitions cached in memory.
+     * @return number of collections
+     */
+    public static int getServiceCollectionCacheMaxEntries() {
+        return Integer.parseInt(get(Engine.SERVICE_COLLECTION_CACHE_MAX_ENTRIES));
+    }
+
+    /**
+     * Get time(msec) to remember missing Dav resources.
+     * @return time
+     */
+    public static long getNegativeCacheTtl() {
+        return Long.parseLong(get(Engine.NEGATIVE_CACHE_TTL));
+    }
+
+    /**
+     * Get max number of missing Dav resources remembered.
+     * @return number of resources
+     */
+    public static int getNegativeCacheMaxEntries() {
+        return Integer.parseInt(get(Engine.NEGATIVE_CACHE_MAX_ENTRIES));
+    }
+
     /**
      * singleton.
      */
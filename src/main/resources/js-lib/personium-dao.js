@@ -30,6 +30,70 @@ var _p = {};
 var dc = _p;
 _p.extension = {};
 
+/**
+ * 最初にアクセスされた時に評価される_pのクラス群を定義する.
+ * スクリプトが使用しないクラスの評価を省くための内部関数.
+ * @private
+ * @param {string[]} names moduleが定義するクラス名
+ * @param {function} module クラス群を_pに定義する関数
+ */
+_p.lazyModule = function(names, module) {
+    var loaded = false;
+    var load = function() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        names.forEach(function(name) {
+            delete _p[name];
+        });
+        module();
+    };
+    names.forEach(function(name) {
+        Object.defineProperty(_p, name, {
+            configurable: true,
+            enumerable: true,
+            get: function() {
+                load();
+                return _p[name];
+            },
+            set: function(value) {
+                load();
+                _p[name] = value;
+            }
+        });
+    });
+};
+
+/**
+ * 最初にアクセスされた時に初期化されるプロパティをprototypeに定義する.
+ * 初期化した値はオブジェクト自身のプロパティとして保持する.
+ * @private
+ * @param {Object} proto 対象クラスのprototype
+ * @param {string} name プロパティ名
+ * @param {function} init 初期値を返す関数. thisは対象オブジェクト
+ */
+_p.lazyProperty = function(proto, name, init) {
+    var define = function(obj, value) {
+        Object.defineProperty(obj, name, {value: value, writable: true, enumerable: true, configurable: true});
+    };
+    Object.defineProperty(proto, name, {
+        configurable: true,
+        enumerable: true,
+        get: function() {
+            if (this === proto) {
+                return undefined;
+            }
+            var value = init.call(this);
+            define(this, value);
+            return value;
+        },
+        set: function(value) {
+            define(this, value);
+        }
+    });
+};
+
 /**
  * Return localbox.<br>
  * @returns {_p.Box} Box object where the engine script is running
@@ -284,8 +348,8 @@ _p.OData.prototype.query = function() {
  * ACLの操作を行う抽象クラス.
  * @class ACL操作クラス
  */
-_p.AclManager = function() {
-    this.core = null;
+_p.AclManager = function(core) {
+    this.core = (typeof core === "undefined") ? null : core;
 };
 
 /**
@@ -524,7 +588,7 @@ _p.Webdav.prototype.getProp = function(key) {
 _p.Webdav.prototype.col = function(name) {
     try {
         var dav = new _p.DavCollection(this.core.col(name));
-        dav.acl.core = dav.core.acl;
+        dav.acl = new _p.AclManager(dav.core.acl);
         return dav;
     } catch (e) {
         throw new _p.PersoniumException(e.message);
@@ -685,73 +749,79 @@ _p.Webdav.prototype.makeUrlString = function() {
     }
 };
 
-/**
- * $linkの作成／削除を行うクラス.
- * @class $link操作クラス
+/*
+ * Link操作クラス群. 最初にアクセスされた時に評価する.
  */
-_p.LinkManager = function(obj) {
-    this.core = obj;
-};
+_p.lazyModule(["LinkManager", "MetadataLinkManager"], function() {
 
-/**
- * linkを作成.
- * @param {Object} param Link先のオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.LinkManager.prototype.link = function(param) {
-    try {
-        this.core.link(param.core);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * $linkの作成／削除を行うクラス.
+     * @class $link操作クラス
+     */
+    _p.LinkManager = function(obj) {
+        this.core = obj;
+    };
 
-/**
- * linkを削除.
- * @param {Object} param Link先のオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.LinkManager.prototype.unLink = function(param) {
-    try {
-        this.core.unLink(param.core);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * linkを作成.
+     * @param {Object} param Link先のオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.LinkManager.prototype.link = function(param) {
+        try {
+            this.core.link(param.core);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * $linkの作成／削除する.
- * @class $link操作クラス
- */
-_p.MetadataLinkManager = function(obj) {
-    this.core = obj;
-};
+    /**
+     * linkを削除.
+     * @param {Object} param Link先のオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.LinkManager.prototype.unLink = function(param) {
+        try {
+            this.core.unLink(param.core);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * linkを作成.
- * @param {Object} param Link先のオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.MetadataLinkManager.prototype.link = function(param) {
-    try {
-        this.core.link(param.core);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * $linkの作成／削除する.
+     * @class $link操作クラス
+     */
+    _p.MetadataLinkManager = function(obj) {
+        this.core = obj;
+    };
 
-/**
- * linkを削除.
- * @param {Object} param Link先のオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.MetadataLinkManager.prototype.unLink = function(param) {
-    try {
-        this.core.unLink(param.core);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * linkを作成.
+     * @param {Object} param Link先のオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.MetadataLinkManager.prototype.link = function(param) {
+        try {
+            this.core.link(param.core);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
+
+    /**
+     * linkを削除.
+     * @param {Object} param Link先のオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.MetadataLinkManager.prototype.unLink = function(param) {
+        try {
+            this.core.unLink(param.core);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
+});
 
 /**
  * 新しいCellオブジェクトを作成する.
@@ -764,14 +834,22 @@ _p.MetadataLinkManager.prototype.unLink = function(param) {
 _p.Cell = function(obj) {
     this.core = obj;
     this.name = "";
-    this.ctl = new _p.CellCtl(obj);
-    this.event = new _p.EventManager(this.core.event);
-    this.currentLog = new _p.CurrentLogManager(this.core.currentLog);
-    this.archiveLog = new _p.ArchiveLogManager(this.core.archiveLog);
-    this.acl.core = this.core.acl;
+    this.acl = new _p.AclManager(this.core.acl);
 };
 
 _p.Cell.prototype.acl = new _p.AclManager();
+_p.lazyProperty(_p.Cell.prototype, "ctl", function() {
+    return new _p.CellCtl(this.core);
+});
+_p.lazyProperty(_p.Cell.prototype, "event", function() {
+    return new _p.EventManager(this.core.event);
+});
+_p.lazyProperty(_p.Cell.prototype, "currentLog", function() {
+    return new _p.CurrentLogManager(this.core.currentLog);
+});
+_p.lazyProperty(_p.Cell.prototype, "archiveLog", function() {
+    return new _p.ArchiveLogManager(this.core.archiveLog);
+});
 
 /**
  * Boxを指定.
@@ -787,7 +865,7 @@ _p.Cell.prototype.box = function(name) {
     }
     // WebDAVから継承された際、ACLオブジェクトのcoreがセットされていないので、
     // このタイミングでセットする
-    dav.acl.core = dav.core.acl;
+    dav.acl = new _p.AclManager(dav.core.acl);
     return dav;
 };
 
@@ -867,9 +945,11 @@ _p.Box = function(obj) {
     this.core = obj;
     this.name = obj.getName();
     this.schema = obj.getSchema();
-    this.ctl = new _p.BoxCtl(obj);
 };
 _p.Box.prototype = new _p.Webdav();
+_p.lazyProperty(_p.Box.prototype, "ctl", function() {
+    return new _p.BoxCtl(this.core);
+});
 
 /**
  * Retrieve box meta data
@@ -893,83 +973,89 @@ _p.BoxCtl = function(obj) {
     this.role = new _p.RoleManager(this.core.role);
 };
 
-/**
- * 新しいAccountオブジェクトを作成する.
- * @class Accountクラス
- * @property {string} name ユーザー名
- * @property {_p.LinkManager} role RoleへのLink操作を行うためのプロパティ
- */
-_p.Account = function(obj) {
-    this.core = obj;
-    this.name = "";
-    this.role = new _p.LinkManager(this.core.role);
-};
+/*
+ * Cell制御オブジェクトのクラス群. 最初にアクセスされた時に評価する.
+ */
+_p.lazyModule(["Account", "Role", "Relation", "ExtRole", "ExtCell"], function() {
+
+    /**
+     * 新しいAccountオブジェクトを作成する.
+     * @class Accountクラス
+     * @property {string} name ユーザー名
+     * @property {_p.LinkManager} role RoleへのLink操作を行うためのプロパティ
+     */
+    _p.Account = function(obj) {
+        this.core = obj;
+        this.name = "";
+        this.role = new _p.LinkManager(this.core.role);
+    };
 
-/**
- * 新しいRoleオブジェクトを作成する.
- * @class Roleクラス
- * @property {string} name Role名
- * @property {string} id Role ID値
- * @property {_p.LinkManager} account AccountへのLink操作を行うためのプロパティ
- * @property {_p.LinkManager} relation RelationへのLink操作を行うためのプロパティ
- * @property {_p.LinkManager} extCell ExtCellへのLink操作を行うためのプロパティ
- */
-_p.Role = function(obj) {
-    this.core = obj;
-    this.name = "";
-    this.id = "";
-    this.account = new _p.LinkManager(this.core.account);
-    this.relation = new _p.LinkManager(this.core.relation);
-    this.extCell = new _p.LinkManager(this.core.extCell);
-    this.extRole = new _p.LinkManager(this.core.extRole);
-};
+    /**
+     * 新しいRoleオブジェクトを作成する.
+     * @class Roleクラス
+     * @property {string} name Role名
+     * @property {string} id Role ID値
+     * @property {_p.LinkManager} account AccountへのLink操作を行うためのプロパティ
+     * @property {_p.LinkManager} relation RelationへのLink操作を行うためのプロパティ
+     * @property {_p.LinkManager} extCell ExtCellへのLink操作を行うためのプロパティ
+     */
+    _p.Role = function(obj) {
+        this.core = obj;
+        this.name = "";
+        this.id = "";
+        this.account = new _p.LinkManager(this.core.account);
+        this.relation = new _p.LinkManager(this.core.relation);
+        this.extCell = new _p.LinkManager(this.core.extCell);
+        this.extRole = new _p.LinkManager(this.core.extRole);
+    };
 
-/**
- * 新しいRelationオブジェクトを作成する.
- * @class Relationクラス
- * @property {string} name Relation名
- * @property {string} id Relation ID値
- * @property {_p.LinkManager} role RoleへのLink操作を行うためのプロパティ
- * @property {_p.LinkManager} extCell ExtCellへのLink操作を行うためのプロパティ
- */
-_p.Relation = function(obj) {
-    this.core = obj;
-    this.name = "";
-    this.id = "";
-    this.role = new _p.LinkManager(this.core.role);
-    this.extCell = new _p.LinkManager(this.core.extCell);
-};
+    /**
+     * 新しいRelationオブジェクトを作成する.
+     * @class Relationクラス
+     * @property {string} name Relation名
+     * @property {string} id Relation ID値
+     * @property {_p.LinkManager} role RoleへのLink操作を行うためのプロパティ
+     * @property {_p.LinkManager} extCell ExtCellへのLink操作を行うためのプロパティ
+     */
+    _p.Relation = function(obj) {
+        this.core = obj;
+        this.name = "";
+        this.id = "";
+        this.role = new _p.LinkManager(this.core.role);
+        this.extCell = new _p.LinkManager(this.core.extCell);
+    };
 
-/**
- * 新しいExtRoleオブジェクトを作成する.
- * @class ExtRoleクラス
- * @property {string} name ExtRole名
- * @property {string} id ExtRole ID値
- */
-_p.ExtRole = function(obj) {
-    this.core = obj;
-    this.name = "";
-    this.relationName = "";
-    this.relationBoxName = "";
-    this.id = "";
-    this.role = new _p.LinkManager(this.core.role);
-};
+    /**
+     * 新しいExtRoleオブジェクトを作成する.
+     * @class ExtRoleクラス
+     * @property {string} name ExtRole名
+     * @property {string} id ExtRole ID値
+     */
+    _p.ExtRole = function(obj) {
+        this.core = obj;
+        this.name = "";
+        this.relationName = "";
+        this.relationBoxName = "";
+        this.id = "";
+        this.role = new _p.LinkManager(this.core.role);
+    };
 
-/**
- * 新しいExtCellオブジェクトを作成する.
- * @class ExtCellクラス
- * @property {string} name ExtCell名
- * @property {string} id ExtCell ID値
- * @property {_p.LinkManager} role RoleへのLink操作を行うためのプロパティ
- * @property {_p.LinkManager} relation RelationへのLink操作を行うためのプロパティ
- */
-_p.ExtCell = function(obj) {
-    this.core = obj;
-    this.name = "";
-    this.id = "";
-    this.role = new _p.LinkManager(this.core.role);
-    this.relation = new _p.LinkManager(this.core.relation);
-};
+    /**
+     * 新しいExtCellオブジェクトを作成する.
+     * @class ExtCellクラス
+     * @property {string} name ExtCell名
+     * @property {string} id ExtCell ID値
+     * @property {_p.LinkManager} role RoleへのLink操作を行うためのプロパティ
+     * @property {_p.LinkManager} relation RelationへのLink操作を行うためのプロパティ
+     */
+    _p.ExtCell = function(obj) {
+        this.core = obj;
+        this.name = "";
+        this.id = "";
+        this.role = new _p.LinkManager(this.core.role);
+        this.relation = new _p.LinkManager(this.core.relation);
+    };
+});
 
 /**
  * 新しいDavCollectionオブジェクトを作成する.
@@ -992,8 +1078,10 @@ _p.DavCollection.prototype = new _p.Webdav();
 _p.ODataCollection = function(obj) {
     this.core = obj;
     this.name = "";
-    this.schema = new _p.ODataCollectionCtl(obj);
 };
+_p.lazyProperty(_p.ODataCollection.prototype, "schema", function() {
+    return new _p.ODataCollectionCtl(this.core);
+});
 
 /**
  * ユーザーデータ(OData)のEntitySetを指定.
@@ -1141,1126 +1229,1164 @@ _p.EntitySet.prototype.nav = function(navProp) {
     }
 };
 
-/**
- * ODataCollection.schema でアクセスされ、関連APIの呼び出しを行う.
- * @class ODataCollectionCtlクラス
- * @property {_p.EntityTypeManager} entityType EntityType操作のためのプロパティ
- * @property {_p.AssociationEndManager} associationEnd AssociationEnd操作のためのプロパティ
- */
-_p.ODataCollectionCtl = function(obj) {
-    this.core = obj;
-    this.entityType = new _p.EntityTypeManager(this.core.entityType);
-    this.associationEnd = new _p.AssociationEndManager(this.core.associationEnd);
-    this.complexType = new _p.ComplexTypeManager(this.core.complexType);
-    this.property = new _p.PropertyManager(this.core.property);
-    this.complexTypeProperty = new _p.ComplexTypePropertyManager(this.core.complexTypeProperty);
-};
+/*
+ * ODataスキーマのクラス群. 最初にアクセスされた時に評価する.
+ */
+_p.lazyModule(["ODataCollectionCtl", "EntityType", "AssociationEnd", "ComplexType", "Property",
+        "ComplexTypeProperty"], function() {
+
+    /**
+     * ODataCollection.schema でアクセスされ、関連APIの呼び出しを行う.
+     * @class ODataCollectionCtlクラス
+     * @property {_p.EntityTypeManager} entityType EntityType操作のためのプロパティ
+     * @property {_p.AssociationEndManager} associationEnd AssociationEnd操作のためのプロパティ
+     */
+    _p.ODataCollectionCtl = function(obj) {
+        this.core = obj;
+        this.entityType = new _p.EntityTypeManager(this.core.entityType);
+        this.associationEnd = new _p.AssociationEndManager(this.core.associationEnd);
+        this.complexType = new _p.ComplexTypeManager(this.core.complexType);
+        this.property = new _p.PropertyManager(this.core.property);
+        this.complexTypeProperty = new _p.ComplexTypePropertyManager(this.core.complexTypeProperty);
+    };
 
-/**
- * 新しいEntityTypeオブジェクトを作成する.
- * @class EntityTypeクラス
- * @property {string} name EntityType名
- */
-_p.EntityType = function(obj) {
-    this.core = obj;
-    this.name = "";
-};
+    /**
+     * 新しいEntityTypeオブジェクトを作成する.
+     * @class EntityTypeクラス
+     * @property {string} name EntityType名
+     */
+    _p.EntityType = function(obj) {
+        this.core = obj;
+        this.name = "";
+    };
 
-/**
- * 新しいAssociationEndオブジェクトを作成する.
- * @class AssociationEndクラス
- * @property {string} name Association名
- * @property {string} entityTypeName EntityType名
- * @property {string} multiplicity 多重度
- * @property {_p.MetadataLinkManaer} associationEnd AssociationEndへのリンク操作を行うプロパティ
- */
-_p.AssociationEnd = function(obj) {
-    this.core = obj;
-    this.name = "";
-    this.entityTypeName = "";
-    this.multiplicity = "";
-    this.associationEnd = new _p.MetadataLinkManager(this.core.associationEnd)
-};
+    /**
+     * 新しいAssociationEndオブジェクトを作成する.
+     * @class AssociationEndクラス
+     * @property {string} name Association名
+     * @property {string} entityTypeName EntityType名
+     * @property {string} multiplicity 多重度
+     * @property {_p.MetadataLinkManaer} associationEnd AssociationEndへのリンク操作を行うプロパティ
+     */
+    _p.AssociationEnd = function(obj) {
+        this.core = obj;
+        this.name = "";
+        this.entityTypeName = "";
+        this.multiplicity = "";
+        this.associationEnd = new _p.MetadataLinkManager(this.core.associationEnd)
+    };
 
-/**
- * 新しいComplexTypeオブジェクトを作成する.
- * @class ComplexTypeクラス
- * @property {string} name ComplexType名
- */
-_p.ComplexType = function(obj) {
-    this.core = obj;
-    this.name = "";
-};
+    /**
+     * 新しいComplexTypeオブジェクトを作成する.
+     * @class ComplexTypeクラス
+     * @property {string} name ComplexType名
+     */
+    _p.ComplexType = function(obj) {
+        this.core = obj;
+        this.name = "";
+    };
 
-/**
- * 新しいPropertyオブジェクトを作成する.
- * @class Propertyクラス
- * @property {string} name Property名
- * @property {string} entityTypeName 紐付くEntityType名
- * @property {string} type 型定義
- * @property {boolean} nullable Null値許可
- * @property {object} defaultValue デフォルト値
- * @property {string} CollectionKind 配列種別
- * @property {boolean} isKey 主キー設定
- * @property {string} uniqueKey ユニークキー設定
- */
-_p.Property = function(obj) {
-    this.core = obj;
-    this.name = "";
-    this.entityTypeName = "";
-    this.type = "";
-    this.nullable = true;
-    this.defaultValue = null;
-    this.collectionKind = "None";
-    this.isKey = false;
-    this.uniqueKey = null;
-};
-
-/**
- * 新しいComplexTypePropertyオブジェクトを作成する.
- * @class ComplexTypePropertyクラス
- * @property {string} name ComplexTypeProperty名
- * @property {string} complexTypeName 紐付くComplexType名
- * @property {string} type 型定義
- * @property {boolean} nullable Null値許可
- * @property {object} defaultValue デフォルト値
- * @property {string} CollectionKind 配列種別
- */
-_p.ComplexTypeProperty = function(obj) {
-    this.core = obj;
-    this.name = "";
-    this.complexTypeName = "";
-    this.type = "";
-    this.nullable = true;
-    this.defaultValue = null;
-    this.collectionKind = "None";
-};
+    /**
+     * 新しいPropertyオブジェクトを作成する.
+     * @class Propertyクラス
+     * @property {string} name Property名
+     * @property {string} entityTypeName 紐付くEntityType名
+     * @property {string} type 型定義
+     * @property {boolean} nullable Null値許可
+     * @property {object} defaultValue デフォルト値
+     * @property {string} CollectionKind 配列種別
+     * @property {boolean} isKey 主キー設定
+     * @property {string} uniqueKey ユニークキー設定
+     */
+    _p.Property = function(obj) {
+        this.core = obj;
+        this.name = "";
+        this.entityTypeName = "";
+        this.type = "";
+        this.nullable = true;
+        this.defaultValue = null;
+        this.collectionKind = "None";
+        this.isKey = false;
+        this.uniqueKey = null;
+    };
 
-/**
- * 新しいBoxManagerオブジェクトを作成する.
- * @class Box操作クラス
- * @augments _p.OData
- */
-_p.BoxManager = function(obj) {
-    this.core = obj;
-};
-_p.BoxManager.prototype = new _p.OData();
+    /**
+     * 新しいComplexTypePropertyオブジェクトを作成する.
+     * @class ComplexTypePropertyクラス
+     * @property {string} name ComplexTypeProperty名
+     * @property {string} complexTypeName 紐付くComplexType名
+     * @property {string} type 型定義
+     * @property {boolean} nullable Null値許可
+     * @property {object} defaultValue デフォルト値
+     * @property {string} CollectionKind 配列種別
+     */
+    _p.ComplexTypeProperty = function(obj) {
+        this.core = obj;
+        this.name = "";
+        this.complexTypeName = "";
+        this.type = "";
+        this.nullable = true;
+        this.defaultValue = null;
+        this.collectionKind = "None";
+    };
+});
 
-/**
- * Boxを登録する.
- * @param {Object} param Box作成に必要なJSON型オブジェクト
- * 例：cell().ctl.box.create({"name":"boxname", "schema":"box-schema"});
- * @returns {_p.Box} 作成したBoxオブジェクト
- * @exception {_p.PersoniumException} DAO例外
+/*
+ * Box/Account操作クラス群. 最初にアクセスされた時に評価する.
  */
-_p.BoxManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var box = new _p.Box(obj);
-        box.name = obj.getName() + "";
-        box.schema = obj.getSchema() + "";
-        box.acl.core = box.core.acl;
-        return box;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+_p.lazyModule(["BoxManager", "AccountManager"], function() {
 
-/**
- * Boxを取得する.
- * @param {string} name 取得するBoxの名前<br>
- * 例：cell().ctl.box.retrieve("boxname");
- * @returns {_p.Box} 取得したBoxオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.BoxManager.prototype.retrieve = function(name) {
-    try {
-        var obj = this.internalRetrieve(name);
-        var box = new _p.Box(obj);
-        box.name = obj.getName() + "";
-        box.schema = obj.getSchema() + "";
-        box.acl.core = box.core.acl;
-        return box;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * 新しいBoxManagerオブジェクトを作成する.
+     * @class Box操作クラス
+     * @augments _p.OData
+     */
+    _p.BoxManager = function(obj) {
+        this.core = obj;
+    };
+    _p.BoxManager.prototype = new _p.OData();
+
+    /**
+     * Boxを登録する.
+     * @param {Object} param Box作成に必要なJSON型オブジェクト
+     * 例：cell().ctl.box.create({"name":"boxname", "schema":"box-schema"});
+     * @returns {_p.Box} 作成したBoxオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.BoxManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var box = new _p.Box(obj);
+            box.name = obj.getName() + "";
+            box.schema = obj.getSchema() + "";
+            box.acl = new _p.AclManager(box.core.acl);
+            return box;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * This method is used for Box Recursive/force delete.
- * @param boxName boxName name of box to be deleted
- * @throws DaoException Library Exception
- */
- _p.BoxManager.prototype.recursiveDelete = function(boxName) {
-  try {
-      this.core.recursiveDelete(boxName);
-  } catch (e) {
-      throw new _p.PersoniumException(e.message);
-  }
-};
+    /**
+     * Boxを取得する.
+     * @param {string} name 取得するBoxの名前<br>
+     * 例：cell().ctl.box.retrieve("boxname");
+     * @returns {_p.Box} 取得したBoxオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.BoxManager.prototype.retrieve = function(name) {
+        try {
+            var obj = this.internalRetrieve(name);
+            var box = new _p.Box(obj);
+            box.name = obj.getName() + "";
+            box.schema = obj.getSchema() + "";
+            box.acl = new _p.AclManager(box.core.acl);
+            return box;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * 新しいAccountManagerオブジェクトを作成する.
- * @class Account操作クラス
- * @augments _p.OData
- */
-_p.AccountManager = function(obj) {
-    this.core = obj;
-};
-_p.AccountManager.prototype = new _p.OData();
+    /**
+     * This method is used for Box Recursive/force delete.
+     * @param boxName boxName name of box to be deleted
+     * @throws DaoException Library Exception
+     */
+     _p.BoxManager.prototype.recursiveDelete = function(boxName) {
+      try {
+          this.core.recursiveDelete(boxName);
+      } catch (e) {
+          throw new _p.PersoniumException(e.message);
+      }
+    };
 
-/**
- * Accountを登録する。<br>
- * 例：account.create({"name":"user01"}, "password");
- * @param {Object} user ユーザー名のJSONオブジェクト
- * @param {string} pass パスワード
- * @returns {_p.Account} 作成したAccountオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.AccountManager.prototype.create = function(user, pass) {
-    var obj;
-    try {
-        obj = this.core.create(_p.util.obj2javaJson(user), pass);
+    /**
+     * 新しいAccountManagerオブジェクトを作成する.
+     * @class Account操作クラス
+     * @augments _p.OData
+     */
+    _p.AccountManager = function(obj) {
+        this.core = obj;
+    };
+    _p.AccountManager.prototype = new _p.OData();
+
+    /**
+     * Accountを登録する。<br>
+     * 例：account.create({"name":"user01"}, "password");
+     * @param {Object} user ユーザー名のJSONオブジェクト
+     * @param {string} pass パスワード
+     * @returns {_p.Account} 作成したAccountオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.AccountManager.prototype.create = function(user, pass) {
+        var obj;
+        try {
+            obj = this.core.create(_p.util.obj2javaJson(user), pass);
 
-        var account = new _p.Account(obj);
-        account.name = obj.getName() + "";
-        return account;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+            var account = new _p.Account(obj);
+            account.name = obj.getName() + "";
+            return account;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * Accountを取得する.<br>
- * 例：account.retrieve("user01");
- * @param {string} user ユーザー名<br>
- * @returns {_p.Account} 作成したAccountオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.AccountManager.prototype.retrieve = function(user) {
-    var obj;
-    try {
-        obj  = this.core.retrieve(user);
-        var account = new _p.Account(obj);
-        account.name = obj.getName() + "";
-        return account;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * Accountを取得する.<br>
+     * 例：account.retrieve("user01");
+     * @param {string} user ユーザー名<br>
+     * @returns {_p.Account} 作成したAccountオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.AccountManager.prototype.retrieve = function(user) {
+        var obj;
+        try {
+            obj  = this.core.retrieve(user);
+            var account = new _p.Account(obj);
+            account.name = obj.getName() + "";
+            return account;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * Passwordを変更する.<br>
- * 例：account.changePassword("user01", "newPassword");
- * @param {string} user ユーザー名
- * @param {string} pass パスワード
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.AccountManager.prototype.changePassword = function(user, pass) {
-    var obj;
-    try {
-        this.core.changePassword(user, pass);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * Passwordを変更する.<br>
+     * 例：account.changePassword("user01", "newPassword");
+     * @param {string} user ユーザー名
+     * @param {string} pass パスワード
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.AccountManager.prototype.changePassword = function(user, pass) {
+        var obj;
+        try {
+            this.core.changePassword(user, pass);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
+});
 
-/**
- * 新しいEventManagerオブジェクトを作成する.
- * @class Event操作クラス
+/*
+ * Event/Log操作クラス群. 最初にアクセスされた時に評価する.
  */
-_p.EventManager = function(obj) {
-    this.core = obj;
-};
+_p.lazyModule(["EventManager", "CurrentLogManager", "ArchiveLogManager"], function() {
 
-/**
- * Eventを登録する.
- * @param {Object} param イベントオブジェクト<br>
- * @param {String} requestKey X-Personium-RequestKeyヘッダの値
- * 呼び出し例：<br>
- *   event.post({
- *               "Type":"typeData",
- *               "Object":"objectData",
- *               "Info":"infoData"},
- *               "RequestKey");
- * @returns {PersoniumResponse} Http response
- * @exception {_p.PersoniumException} DAO exception
- */
-_p.EventManager.prototype.post = function(param, requestKey) {
-    try {
-        if (requestKey === null || typeof requestKey === "undefined") {
-            return this.core.post(_p.util.obj2javaJson(param));
-        }else{
-            return this.core.post(_p.util.obj2javaJson(param), requestKey);
+    /**
+     * 新しいEventManagerオブジェクトを作成する.
+     * @class Event操作クラス
+     */
+    _p.EventManager = function(obj) {
+        this.core = obj;
+    };
+
+    /**
+     * Eventを登録する.
+     * @param {Object} param イベントオブジェクト<br>
+     * @param {String} requestKey X-Personium-RequestKeyヘッダの値
+     * 呼び出し例：<br>
+     *   event.post({
+     *               "Type":"typeData",
+     *               "Object":"objectData",
+     *               "Info":"infoData"},
+     *               "RequestKey");
+     * @returns {PersoniumResponse} Http response
+     * @exception {_p.PersoniumException} DAO exception
+     */
+    _p.EventManager.prototype.post = function(param, requestKey) {
+        try {
+            if (requestKey === null || typeof requestKey === "undefined") {
+                return this.core.post(_p.util.obj2javaJson(param));
+            }else{
+                return this.core.post(_p.util.obj2javaJson(param), requestKey);
+            }
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * 新しいCurrentLogManagerオブジェクトを作成する.
- * @class CurrentLog操作クラス
- */
-_p.CurrentLogManager = function(obj){
-    this.core = obj;
-};
+    /**
+     * 新しいCurrentLogManagerオブジェクトを作成する.
+     * @class CurrentLog操作クラス
+     */
+    _p.CurrentLogManager = function(obj){
+        this.core = obj;
+    };
 
-/**
- * ログをString形式で取得する.
- * @param {String} filename 取得するログファイル名
- * @param {String} requestKey X-Personium-RequestKeyヘッダの値
- * 呼び出し例：<br>
- *   currentLog.getString("default.log", "RequestKey");
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.CurrentLogManager.prototype.getString = function(filename, requestKey) {
-    try {
-        if (requestKey === null || typeof requestKey === "undefined") {
-            return this.core.getString(filename);
-        }else{
-            return this.core.getString(filename, requestKey);
+    /**
+     * ログをString形式で取得する.
+     * @param {String} filename 取得するログファイル名
+     * @param {String} requestKey X-Personium-RequestKeyヘッダの値
+     * 呼び出し例：<br>
+     *   currentLog.getString("default.log", "RequestKey");
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.CurrentLogManager.prototype.getString = function(filename, requestKey) {
+        try {
+            if (requestKey === null || typeof requestKey === "undefined") {
+                return this.core.getString(filename);
+            }else{
+                return this.core.getString(filename, requestKey);
+            }
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * ログをStream形式で取得する.
- * @param {String} filename 取得するログファイル名
- * @param {String} requestKey X-Personium-RequestKeyヘッダの値
- * 呼び出し例：<br>
- *   currentLog.getStream("default.log", "RequestKey");
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.CurrentLogManager.prototype.getStream = function(filename, requestKey) {
-    try {
-        if (requestKey === null || typeof requestKey === "undefined") {
-            return this.core.getStream(filename);
-        }else{
-            return this.core.getStream(filename, requestKey);
+    /**
+     * ログをStream形式で取得する.
+     * @param {String} filename 取得するログファイル名
+     * @param {String} requestKey X-Personium-RequestKeyヘッダの値
+     * 呼び出し例：<br>
+     *   currentLog.getStream("default.log", "RequestKey");
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.CurrentLogManager.prototype.getStream = function(filename, requestKey) {
+        try {
+            if (requestKey === null || typeof requestKey === "undefined") {
+                return this.core.getStream(filename);
+            }else{
+                return this.core.getStream(filename, requestKey);
+            }
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
-/**
- * 新しいArchiveLogManagerオブジェクトを作成する.
- * @class ArchiveLog操作クラス
- */
-_p.ArchiveLogManager = function(obj){
-    this.core = obj;
-};
+    };
+    /**
+     * 新しいArchiveLogManagerオブジェクトを作成する.
+     * @class ArchiveLog操作クラス
+     */
+    _p.ArchiveLogManager = function(obj){
+        this.core = obj;
+    };
 
-/**
- * ローテートされたログをString形式で取得する.
- * @param {String} filename 取得するログファイル名
- * @param {String} requestKey X-Personium-RequestKeyヘッダの値
- * 呼び出し例：<br>
- *   archiveLog.getString("default.log", "RequestKey");
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ArchiveLogManager.prototype.getString = function(filename, requestKey) {
-    try {
-        if (requestKey === null || typeof requestKey === "undefined") {
-            return this.core.getString(filename);
-        }else{
-            return this.core.getString(filename, requestKey);
+    /**
+     * ローテートされたログをString形式で取得する.
+     * @param {String} filename 取得するログファイル名
+     * @param {String} requestKey X-Personium-RequestKeyヘッダの値
+     * 呼び出し例：<br>
+     *   archiveLog.getString("default.log", "RequestKey");
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ArchiveLogManager.prototype.getString = function(filename, requestKey) {
+        try {
+            if (requestKey === null || typeof requestKey === "undefined") {
+                return this.core.getString(filename);
+            }else{
+                return this.core.getString(filename, requestKey);
+            }
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * ローテートされたログをStream形式で取得する.
- * @param {String} filename 取得するログファイル名
- * @param {String} requestKey X-Personium-RequestKeyヘッダの値
- * 呼び出し例：<br>
- *   archiveLog.getStream("default.log", "RequestKey");
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ArchiveLogManager.prototype.getStream = function(filename, requestKey) {
-    try {
-        if (requestKey === null || typeof requestKey === "undefined") {
-            return this.core.getStream(filename);
-        }else{
-            return this.core.getStream(filename, requestKey);
+    /**
+     * ローテートされたログをStream形式で取得する.
+     * @param {String} filename 取得するログファイル名
+     * @param {String} requestKey X-Personium-RequestKeyヘッダの値
+     * 呼び出し例：<br>
+     *   archiveLog.getStream("default.log", "RequestKey");
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ArchiveLogManager.prototype.getStream = function(filename, requestKey) {
+        try {
+            if (requestKey === null || typeof requestKey === "undefined") {
+                return this.core.getStream(filename);
+            }else{
+                return this.core.getStream(filename, requestKey);
+            }
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
+});
 
-/**
- * 新しいRelationManagerオブジェクトを作成する.
- * @class Relation操作クラス
- * @augments _p.OData
+/*
+ * Relation/Role/ExtRole/ExtCell操作クラス群. 最初にアクセスされた時に評価する.
  */
-_p.RelationManager = function(obj) {
-    this.core = obj;
-};
-_p.RelationManager.prototype = new _p.OData();
+_p.lazyModule(["RelationManager", "RoleManager", "ExtRoleManager", "ExtCellManager"], function() {
 
-/**
- * Relationを登録<br>
- * 例：cell().ctl.relation.create({"name":"relation","_box.name":"boxName"});
- * @param {Object} param Relation作成に必要なJSON型オブジェクト
- * @returns {_p.Relation} 作成したRelationオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.RelationManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var relation = new _p.Relation(obj);
-        relation.name = obj.getName() + "";
-        relation.boxName = obj.getBoxName() + "";
-        return relation;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * 新しいRelationManagerオブジェクトを作成する.
+     * @class Relation操作クラス
+     * @augments _p.OData
+     */
+    _p.RelationManager = function(obj) {
+        this.core = obj;
+    };
+    _p.RelationManager.prototype = new _p.OData();
+
+    /**
+     * Relationを登録<br>
+     * 例：cell().ctl.relation.create({"name":"relation","_box.name":"boxName"});
+     * @param {Object} param Relation作成に必要なJSON型オブジェクト
+     * @returns {_p.Relation} 作成したRelationオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.RelationManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var relation = new _p.Relation(obj);
+            relation.name = obj.getName() + "";
+            relation.boxName = obj.getBoxName() + "";
+            return relation;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
 
-/**
- * Relationを取得<br>
- * 例：cell().ctl.relation.retrieve({"name":"relation","_box.name":"boxName"});
- * @param {string} param {"name":"xxx", "_box.name":"xx"} というJSONを指定
- * @returns {_p.Relation} 作成したRelationオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.RelationManager.prototype.retrieve = function(param) {
-    var obj;
-    var name = param["Name"];
-    var boxName = param["_Box.Name"];
+    /**
+     * Relationを取得<br>
+     * 例：cell().ctl.relation.retrieve({"name":"relation","_box.name":"boxName"});
+     * @param {string} param {"name":"xxx", "_box.name":"xx"} というJSONを指定
+     * @returns {_p.Relation} 作成したRelationオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.RelationManager.prototype.retrieve = function(param) {
+        var obj;
+        var name = param["Name"];
+        var boxName = param["_Box.Name"];
 
-    try {
-        if (boxName === null || typeof boxName === "undefined") {
-            obj  = this.core.retrieve(name);
-        } else {
-            obj  = this.core.retrieve(name, boxName);
+        try {
+            if (boxName === null || typeof boxName === "undefined") {
+                obj  = this.core.retrieve(name);
+            } else {
+                obj  = this.core.retrieve(name, boxName);
+            }
+            var relation = new _p.Relation(obj);
+            relation.name = obj.getName() + "";
+            relation.boxName = obj.getBoxName() + "";
+            return relation;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-        var relation = new _p.Relation(obj);
-        relation.name = obj.getName() + "";
-        relation.boxName = obj.getBoxName() + "";
-        return relation;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * Relationデータを削除<br>
- * 例：cell().ctl.relation.retrieve({"name":"relation","_box.name":"boxName"});
- * @param {string} param {"name":"xxx", "_box.name":"xx"} というJSONを指定
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.RelationManager.prototype.del = function(param) {
-    var name = param["Name"];
-    var boxName = param["_Box.Name"];
+    /**
+     * Relationデータを削除<br>
+     * 例：cell().ctl.relation.retrieve({"name":"relation","_box.name":"boxName"});
+     * @param {string} param {"name":"xxx", "_box.name":"xx"} というJSONを指定
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.RelationManager.prototype.del = function(param) {
+        var name = param["Name"];
+        var boxName = param["_Box.Name"];
 
-    try {
-        if (boxName == null || typeof boxName === "undefined") {
-            this.core.del(name);
-        } else {
-            this.core.del(name, boxName);
+        try {
+            if (boxName == null || typeof boxName === "undefined") {
+                this.core.del(name);
+            } else {
+                this.core.del(name, boxName);
+            }
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * 新しいRoleManagerオブジェクトを作成する.
- * @class Role操作クラス
- * @augments _p.OData
- */
-_p.RoleManager = function(obj) {
-    this.core = obj;
-};
-_p.RoleManager.prototype = new _p.OData();
+    /**
+     * 新しいRoleManagerオブジェクトを作成する.
+     * @class Role操作クラス
+     * @augments _p.OData
+     */
+    _p.RoleManager = function(obj) {
+        this.core = obj;
+    };
+    _p.RoleManager.prototype = new _p.OData();
+
+    /**
+     * Roleを登録<br>
+     * 例：cell().ctl.relation.create({"name":"role","_box.name":"boxName"});
+     * @param {Object} param Role作成に必要なJSON型オブジェクト
+     * @returns {_p.Role} 作成したRoleオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.RoleManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var role = new _p.Role(obj);
+            role.name = obj.getName() + "";
+            role.boxName = obj.getBoxName() + "";
+            return role;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * Roleを登録<br>
- * 例：cell().ctl.relation.create({"name":"role","_box.name":"boxName"});
- * @param {Object} param Role作成に必要なJSON型オブジェクト
- * @returns {_p.Role} 作成したRoleオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.RoleManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var role = new _p.Role(obj);
-        role.name = obj.getName() + "";
-        role.boxName = obj.getBoxName() + "";
-        return role;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * Roleを取得<br>
+     * 例：<br>
+     * cell().ctl.relation.retrieve({"name":"role","_box.name":"boxName"});<br>
+     * @param {string} param {"name":"xxx", "_box.name":"xx"} というJSONを指定
+     * @returns {_p.Role} 作成したRoleオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.RoleManager.prototype.retrieve = function(param) {
+        var obj;
+        var name = param["Name"];
+        var boxName = param["_Box.Name"];
 
-/**
- * Roleを取得<br>
- * 例：<br>
- * cell().ctl.relation.retrieve({"name":"role","_box.name":"boxName"});<br>
- * @param {string} param {"name":"xxx", "_box.name":"xx"} というJSONを指定
- * @returns {_p.Role} 作成したRoleオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.RoleManager.prototype.retrieve = function(param) {
-    var obj;
-    var name = param["Name"];
-    var boxName = param["_Box.Name"];
+        try {
+            if (boxName === null || typeof boxName === "undefined") {
+                obj  = this.core.retrieve(name);
+            } else {
+                obj  = this.core.retrieve(name, boxName);
+            }
+            var role = new _p.Role(obj);
+            role.name = obj.getName() + "";
+            role.boxName = obj.getBoxName() + "";
+            return role;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-    try {
-        if (boxName === null || typeof boxName === "undefined") {
-            obj  = this.core.retrieve(name);
-        } else {
-            obj  = this.core.retrieve(name, boxName);
+    /**
+     * Roleデータを削除<br>
+     * 例：<br>
+     * cell().ctl.relation.del({"name":"role","_box.name":"boxName"});<br>
+     * @param {string} param {"name":"xxx", "_box.name":"xx"} というJSONを指定
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.RoleManager.prototype.del = function(param) {
+        var name = param["Name"];
+        var boxName = param["_Box.Name"];
+
+        try {
+            if (boxName == null || typeof boxName === "undefined") {
+                this.core.del(name);
+            } else {
+                this.core.del(name, boxName);
+            }
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-        var role = new _p.Role(obj);
-        role.name = obj.getName() + "";
-        role.boxName = obj.getBoxName() + "";
-        return role;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * Roleデータを削除<br>
- * 例：<br>
- * cell().ctl.relation.del({"name":"role","_box.name":"boxName"});<br>
- * @param {string} param {"name":"xxx", "_box.name":"xx"} というJSONを指定
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.RoleManager.prototype.del = function(param) {
-    var name = param["Name"];
-    var boxName = param["_Box.Name"];
+    /**
+     * 新しいExtRoleManagerオブジェクトを作成する.
+     * @class ExtRole操作クラス
+     * @augments _p.OData
+     */
+    _p.ExtRoleManager = function(obj) {
+        this.core = obj;
+    };
+    _p.ExtRoleManager.prototype = new _p.OData();
+
+    /**
+     * ExtRoleを登録する.
+     * @param {Object} param ExtRole作成に必要なJSON型オブジェクト
+     * @returns {_p.ExtRole} 作成したExtRoleオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ExtRoleManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var extRole = new _p.ExtRole(obj);
+            extRole.name = obj.getName() + "";
+            extRole.relationName = obj.getRelationName() + "";
+            extRole.relationBoxName = obj.getRelationBoxName() + "";
+            return extRole;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-    try {
-        if (boxName == null || typeof boxName === "undefined") {
-            this.core.del(name);
-        } else {
-            this.core.del(name, boxName);
+    /**
+     * ExtRoleを取得<br>
+     * 例：<br>
+     * cell().ctl.extRole.retrieve({"ExtRole":"http://extrole/jp","_Relation.Name":"relation","_Relation._Box.Name":"boxName"});<br>
+     * @param {string} param {"ExtRole":"http://extrole/jp","_Relation.Name":"relation","_Relation._Box.Name":"boxName"} というJSONを指定
+     * @returns {_p.ExtRole} 作成したExtRoleオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ExtRoleManager.prototype.retrieve = function(param) {
+        var obj;
+        var name = param["ExtRole"];
+        var relationName = param["_Relation.Name"];
+        var relationBoxName = param["_Relation._Box.Name"];
+
+        try {
+            if (relationName === null || typeof relationName === "undefined") {
+                obj  = this.core.retrieve(name, null, null);
+            } else {
+                obj  = this.core.retrieve(name, relationName, relationBoxName);
+            }
+            var extRole = new _p.ExtRole(obj);
+            extRole.name = obj.getName() + "";
+            extRole.relationName = obj.getRelationName() + "";
+            extRole.relationBoxName = obj.getRelationBoxName() + "";
+            return extRole;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * 新しいExtRoleManagerオブジェクトを作成する.
- * @class ExtRole操作クラス
- * @augments _p.OData
- */
-_p.ExtRoleManager = function(obj) {
-    this.core = obj;
-};
-_p.ExtRoleManager.prototype = new _p.OData();
+    /**
+     * ExtRoleデータを削除<br>
+     * 例：<br>
+     * cell().ctl.extRole.del({"ExtRole":"http://extrole/jp","_Relation.Name":"relation","_Relation._Box.Name":"boxName"});<br>
+     * @param {string} param {"ExtRole":"http://extrole/jp","_Relation.Name":"relation","_Relation._Box.Name":"boxName"} というJSONを指定
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ExtRoleManager.prototype.del = function(param) {
+        var name = param["ExtRole"];
+        var relationName = param["_Relation.Name"];
+        var relationBoxName = param["_Relation._Box.Name"];
 
-/**
- * ExtRoleを登録する.
- * @param {Object} param ExtRole作成に必要なJSON型オブジェクト
- * @returns {_p.ExtRole} 作成したExtRoleオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ExtRoleManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var extRole = new _p.ExtRole(obj);
-        extRole.name = obj.getName() + "";
-        extRole.relationName = obj.getRelationName() + "";
-        extRole.relationBoxName = obj.getRelationBoxName() + "";
-        return extRole;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+        try {
+            if (relationName === null || typeof relationName === "undefined") {
+                obj  = this.core.del(name, null, null);
+            } else {
+                if (relationBoxName === null || typeof relationBoxName === "undefined") {
+                    obj  = this.core.del(name, relationName, null);
+                } else {
+                    obj  = this.core.del(name, relationName, relationBoxName);
+                }
+            }
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * ExtRoleを取得<br>
- * 例：<br>
- * cell().ctl.extRole.retrieve({"ExtRole":"http://extrole/jp","_Relation.Name":"relation","_Relation._Box.Name":"boxName"});<br>
- * @param {string} param {"ExtRole":"http://extrole/jp","_Relation.Name":"relation","_Relation._Box.Name":"boxName"} というJSONを指定
- * @returns {_p.ExtRole} 作成したExtRoleオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ExtRoleManager.prototype.retrieve = function(param) {
-    var obj;
-    var name = param["ExtRole"];
-    var relationName = param["_Relation.Name"];
-    var relationBoxName = param["_Relation._Box.Name"];
+    /**
+     * 新しいExtCellManagerオブジェクトを作成する.
+     * @class ExtCellManager操作クラス
+     * @augments _p.OData
+     */
+    _p.ExtCellManager = function(obj) {
+        this.core = obj;
+    };
+    _p.ExtCellManager.prototype = new _p.OData();
+
+    /**
+     * ExtCellを登録する.
+     * @param {Object} param ExtCell作成に必要なJSON型オブジェクト
+     * @returns {_p.ExtCell} 作成したExtCellオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ExtCellManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var extcell = new _p.ExtCell(obj);
+            extcell.url = obj.getUrl() + "";
+            return extcell;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-    try {
-        if (relationName === null || typeof relationName === "undefined") {
-            obj  = this.core.retrieve(name, null, null);
-        } else {
-            obj  = this.core.retrieve(name, relationName, relationBoxName);
+    /**
+     * ExtCellを取得する.
+     * @param {string} url ExtCell取得に必要なurl
+     * @returns {_p.ExtCell} 取得したExtCellオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ExtCellManager.prototype.retrieve = function(url) {
+        try {
+            var obj = this.internalRetrieve(url);
+            var extCell = new _p.ExtCell(obj);
+            extCell.url = obj.getUrl() + "";
+            return extCell;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-        var extRole = new _p.ExtRole(obj);
-        extRole.name = obj.getName() + "";
-        extRole.relationName = obj.getRelationName() + "";
-        extRole.relationBoxName = obj.getRelationBoxName() + "";
-        return extRole;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
+});
 
-/**
- * ExtRoleデータを削除<br>
- * 例：<br>
- * cell().ctl.extRole.del({"ExtRole":"http://extrole/jp","_Relation.Name":"relation","_Relation._Box.Name":"boxName"});<br>
- * @param {string} param {"ExtRole":"http://extrole/jp","_Relation.Name":"relation","_Relation._Box.Name":"boxName"} というJSONを指定
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ExtRoleManager.prototype.del = function(param) {
-    var name = param["ExtRole"];
-    var relationName = param["_Relation.Name"];
-    var relationBoxName = param["_Relation._Box.Name"];
+/*
+ * Unit操作クラス群. 最初にアクセスされた時に評価する.
+ */
+_p.lazyModule(["UnitManager", "UnitManagerCtl", "CellManager"], function() {
+
+    /**
+     * 新しいUnitManagerオブジェクトを作成する.
+     * @class Unit操作クラス
+     * @property {_p.UnitManagerCtl} ctl Unit内のCtl操作を行うためのプロパティ
+     */
+    _p.UnitManager = function(obj) {
+        this.core = obj;
+        this.ctl = new _p.UnitManagerCtl(obj);
+    };
 
-    try {
-        if (relationName === null || typeof relationName === "undefined") {
-            obj  = this.core.del(name, null, null);
-        } else {
-            if (relationBoxName === null || typeof relationBoxName === "undefined") {
-                obj  = this.core.del(name, relationName, null);
+    /**
+     * Get a Cell
+     * @param {string} Cell name or URL
+     * @returns {_p.Cell} Cell object
+     * @exception {_p.PersoniumException} DAO exception
+     */
+    _p.UnitManager.prototype.cell = function(url) {
+        try {
+            if (typeof url == 'string') {
+                return new _p.Cell(this.accessor.core.cell(url));
             } else {
-                obj  = this.core.del(name, relationName, relationBoxName);
+                return new _p.Cell(this.accessor.core.cell());
             }
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
-
-/**
- * 新しいExtCellManagerオブジェクトを作成する.
- * @class ExtCellManager操作クラス
- * @augments _p.OData
- */
-_p.ExtCellManager = function(obj) {
-    this.core = obj;
-};
-_p.ExtCellManager.prototype = new _p.OData();
+    };
 
-/**
- * ExtCellを登録する.
- * @param {Object} param ExtCell作成に必要なJSON型オブジェクト
- * @returns {_p.ExtCell} 作成したExtCellオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ExtCellManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var extcell = new _p.ExtCell(obj);
-        extcell.url = obj.getUrl() + "";
-        return extcell;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * Get Unit Admin token.
+     * @returns {Object} token
+     * @exception {_p.PersoniumException} DAO exception
+     */
+    _p.UnitManager.prototype.getToken = function() {
+        return this.token;
+    };
 
-/**
- * ExtCellを取得する.
- * @param {string} url ExtCell取得に必要なurl
- * @returns {_p.ExtCell} 取得したExtCellオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ExtCellManager.prototype.retrieve = function(url) {
-    try {
-        var obj = this.internalRetrieve(url);
-        var extCell = new _p.ExtCell(obj);
-        extCell.url = obj.getUrl() + "";
-        return extCell;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * UnitManager.ctl でアクセスされ、関連APIの呼び出しを行う.
+     * @class UnitManagerCtl操作クラス
+     * @property {_p.CellManager} CellのCRUDを行うためのプロパティ
+     */
+    _p.UnitManagerCtl = function(obj) {
+        this.core = obj;
+        this.cell = new _p.CellManager(this.core.cell);
+    };
 
-/**
- * 新しいUnitManagerオブジェクトを作成する.
- * @class Unit操作クラス
- * @property {_p.UnitManagerCtl} ctl Unit内のCtl操作を行うためのプロパティ
- */
-_p.UnitManager = function(obj) {
-    this.core = obj;
-    this.ctl = new _p.UnitManagerCtl(obj);
-};
+    /**
+     * 新しいCellManagerオブジェクトを作成する.
+     * @class CellManager操作クラス
+     * @augments _p.OData
+     */
+    _p.CellManager = function(obj) {
+        this.core = obj;
+    };
+    _p.CellManager.prototype = new _p.OData();
+
+    /**
+     * Cellを登録する.
+     * @param {Object} param Cell作成に必要なJSON型オブジェクト
+     * @returns {_p.Cell} 作成したCellオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.CellManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var cell = new _p.Cell(obj);
+            cell.name = obj.getName() + "";
+            return cell;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * Get a Cell
- * @param {string} Cell name or URL
- * @returns {_p.Cell} Cell object
- * @exception {_p.PersoniumException} DAO exception
- */
-_p.UnitManager.prototype.cell = function(url) {
-    try {
-        if (typeof url == 'string') {
-            return new _p.Cell(this.accessor.core.cell(url));
-        } else {
-            return new _p.Cell(this.accessor.core.cell());
+    /**
+     * Cellを更新する.
+     * @param {String} id 更新対象のCell ID
+     * @param {Object} json Cell更新に必要なJSON型オブジェクト
+     * @param {String} etag Etag情報
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.CellManager.prototype.update = function(id, json, etag) {
+        try {
+            this.internalUpdate(id, json, etag);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
-
-/**
- * Get Unit Admin token.
- * @returns {Object} token
- * @exception {_p.PersoniumException} DAO exception
- */
-_p.UnitManager.prototype.getToken = function() {
-    return this.token;
-};
-
-/**
- * UnitManager.ctl でアクセスされ、関連APIの呼び出しを行う.
- * @class UnitManagerCtl操作クラス
- * @property {_p.CellManager} CellのCRUDを行うためのプロパティ
- */
-_p.UnitManagerCtl = function(obj) {
-    this.core = obj;
-    this.cell = new _p.CellManager(this.core.cell);
-};
-
-/**
- * 新しいCellManagerオブジェクトを作成する.
- * @class CellManager操作クラス
- * @augments _p.OData
- */
-_p.CellManager = function(obj) {
-    this.core = obj;
-};
-_p.CellManager.prototype = new _p.OData();
-
-/**
- * Cellを登録する.
- * @param {Object} param Cell作成に必要なJSON型オブジェクト
- * @returns {_p.Cell} 作成したCellオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.CellManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var cell = new _p.Cell(obj);
-        cell.name = obj.getName() + "";
-        return cell;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
-
-/**
- * Cellを更新する.
- * @param {String} id 更新対象のCell ID
- * @param {Object} json Cell更新に必要なJSON型オブジェクト
- * @param {String} etag Etag情報
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.CellManager.prototype.update = function(id, json, etag) {
-    try {
-        this.internalUpdate(id, json, etag);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
-
-/**
- * Cellを取得する.
- * @param {string} id Cell取得に必要なid
- * @returns {_p.Cell} 取得したCellオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.CellManager.prototype.retrieve = function(id) {
-    try {
-        var obj = this.internalRetrieve(id);
-        var cell = new _p.Cell(obj);
-        cell.name = obj.getName() + "";
-        return cell;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
-
-/**
- * This method is used for Cell Recursive/force delete.
- * @param cellName cellName name of cell to be deleted
- * @throws DaoException Library Exception
- */
-_p.CellManager.prototype.recursiveDelete = function(cellName) {
-    try {
-        this.core.recursiveDelete(cellName);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
-
-/**
- * 新しいEntityTypeManagerオブジェクトを作成する.
- * @class EntityType操作クラス
- * @augments _p.OData
- */
-_p.EntityTypeManager = function(obj) {
-    this.core = obj;
-};
-_p.EntityTypeManager.prototype = new _p.OData();
-
-/**
- * EntityTypeManagerを登録する.
- * @param {Object} param EntityType作成に必要なJSON型オブジェクト
- * @returns {_p.EntityType} 作成したEntityTypeオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.EntityTypeManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var entityType = new _p.EntityType(obj);
-        entityType.name = obj.getName() + "";
-        return entityType;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
-
-/**
- * EntityTypeManagerを取得する.
- * @param {string} name 取得するEntityTypeの名前
- * @returns {_p.EntityType} 取得したEntityTypeオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.EntityTypeManager.prototype.retrieve = function(param) {
-    try {
-        var obj = this.internalRetrieve(param);
-        var entityType = new _p.EntityType(obj);
-        entityType.name = obj.getName() + "";
-        return entityType;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
+    /**
+     * Cellを取得する.
+     * @param {string} id Cell取得に必要なid
+     * @returns {_p.Cell} 取得したCellオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.CellManager.prototype.retrieve = function(id) {
+        try {
+            var obj = this.internalRetrieve(id);
+            var cell = new _p.Cell(obj);
+            cell.name = obj.getName() + "";
+            return cell;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * 新しいAssociationEndManagerオブジェクトを作成する.
- * @class AssociationEnd操作クラス
- * @augments _p.OData
- */
-_p.AssociationEndManager = function(obj) {
-    this.core = obj;
-}
-_p.AssociationEndManager.prototype = new _p.OData();
+    /**
+     * This method is used for Cell Recursive/force delete.
+     * @param cellName cellName name of cell to be deleted
+     * @throws DaoException Library Exception
+     */
+    _p.CellManager.prototype.recursiveDelete = function(cellName) {
+        try {
+            this.core.recursiveDelete(cellName);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
+});
 
-/**
- * AssociationEndを登録する.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.associationEnd.create({"Name":"name", "_EntityType.Name":"entity"});
- * @param {Object} param AssociationEnd作成に必要なJSON型オブジェクト
- * @returns {_p.AssociationEnd} 作成したAssociationEndオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.AssociationEndManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var AssociationEnd = new _p.AssociationEnd(obj);
-        AssociationEnd.name = obj.getName() + "";
-        AssociationEnd.entityTypeName = obj.getEntityTypeName() + "";
-        AssociationEnd.multiplicity = obj.getMultiplicity() + "";
-        return AssociationEnd;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+/*
+ * ODataスキーマ操作クラス群. 最初にアクセスされた時に評価する.
+ */
+_p.lazyModule(["EntityTypeManager", "AssociationEndManager", "ComplexTypeManager", "PropertyManager",
+        "ComplexTypePropertyManager"], function() {
+
+    /**
+     * 新しいEntityTypeManagerオブジェクトを作成する.
+     * @class EntityType操作クラス
+     * @augments _p.OData
+     */
+    _p.EntityTypeManager = function(obj) {
+        this.core = obj;
+    };
+    _p.EntityTypeManager.prototype = new _p.OData();
+
+    /**
+     * EntityTypeManagerを登録する.
+     * @param {Object} param EntityType作成に必要なJSON型オブジェクト
+     * @returns {_p.EntityType} 作成したEntityTypeオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.EntityTypeManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var entityType = new _p.EntityType(obj);
+            entityType.name = obj.getName() + "";
+            return entityType;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * AssociationEndを取得.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.associationEnd.retrieve({"Name":"name", "_EntityType.Name":"entity"});
- * @param {Object} 取得対象のキー
- * @param {string} entity 取得対象のEntityType.Name値
- * @returns {_p.AssociationEnd} 取得したAssociationEndオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.AssociationEndManager.prototype.retrieve = function(key) {
-    var name = key["Name"];
-    var entityTypeName = key["_EntityType.Name"];
-    try {
-        var obj = this.core.retrieve(name, entityTypeName);
-        var AssociationEnd = new _p.AssociationEnd(obj);
-        AssociationEnd.name = obj.getName() + "";
-        AssociationEnd.entityTypeName = obj.getEntityTypeName() + "";
-        AssociationEnd.multiplicity = obj.getMultiplicity() + "";
-        return AssociationEnd;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * EntityTypeManagerを取得する.
+     * @param {string} name 取得するEntityTypeの名前
+     * @returns {_p.EntityType} 取得したEntityTypeオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.EntityTypeManager.prototype.retrieve = function(param) {
+        try {
+            var obj = this.internalRetrieve(param);
+            var entityType = new _p.EntityType(obj);
+            entityType.name = obj.getName() + "";
+            return entityType;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * AssociationEndを削除.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.associationEnd.del({"Name":"name", "_EntityType.Name":"entity"});
- * @param {Object} key 削除対象のキー
- * @param {string} entity 削除対象のEntityType.Name値
- * @returns {_p.AssociationEnd} 取得したAssociationEndオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.AssociationEndManager.prototype.del = function(key) {
-    var name = key["Name"];
-    var entityTypeName = key["_EntityType.Name"];
-    try {
-        this.core.del(name, entityTypeName);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
 
-/**
- * 新しいComplexTypeManagerオブジェクトを作成する.
- * @class ComplexType操作クラス
- * @augments _p.OData
- */
-_p.ComplexTypeManager = function(obj) {
-    this.core = obj;
-}
-_p.ComplexTypeManager.prototype = new _p.OData();
+    /**
+     * 新しいAssociationEndManagerオブジェクトを作成する.
+     * @class AssociationEnd操作クラス
+     * @augments _p.OData
+     */
+    _p.AssociationEndManager = function(obj) {
+        this.core = obj;
+    }
+    _p.AssociationEndManager.prototype = new _p.OData();
+
+    /**
+     * AssociationEndを登録する.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.associationEnd.create({"Name":"name", "_EntityType.Name":"entity"});
+     * @param {Object} param AssociationEnd作成に必要なJSON型オブジェクト
+     * @returns {_p.AssociationEnd} 作成したAssociationEndオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.AssociationEndManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var AssociationEnd = new _p.AssociationEnd(obj);
+            AssociationEnd.name = obj.getName() + "";
+            AssociationEnd.entityTypeName = obj.getEntityTypeName() + "";
+            AssociationEnd.multiplicity = obj.getMultiplicity() + "";
+            return AssociationEnd;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * ComplexTypeを登録する.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.complexType.create({"Name":"name"});
- * @param {Object} param ComplexType作成に必要なJSON型オブジェクト
- * @returns {_p.ComplexType} 作成したComplexTypeオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ComplexTypeManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var ComplexType = new _p.ComplexType(obj);
-        ComplexType.name = obj.getName() + "";
-        return ComplexType;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * AssociationEndを取得.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.associationEnd.retrieve({"Name":"name", "_EntityType.Name":"entity"});
+     * @param {Object} 取得対象のキー
+     * @param {string} entity 取得対象のEntityType.Name値
+     * @returns {_p.AssociationEnd} 取得したAssociationEndオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.AssociationEndManager.prototype.retrieve = function(key) {
+        var name = key["Name"];
+        var entityTypeName = key["_EntityType.Name"];
+        try {
+            var obj = this.core.retrieve(name, entityTypeName);
+            var AssociationEnd = new _p.AssociationEnd(obj);
+            AssociationEnd.name = obj.getName() + "";
+            AssociationEnd.entityTypeName = obj.getEntityTypeName() + "";
+            AssociationEnd.multiplicity = obj.getMultiplicity() + "";
+            return AssociationEnd;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * ComplexTypeを取得.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.complexType.retrieve({"Name":"name"});
- * @param {Object} 取得対象のキー
- * @param {string} entity 取得対象のEntityType.Name値
- * @returns {_p.ComplexType} 取得したComplexTypeオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ComplexTypeManager.prototype.retrieve = function(key) {
-    var name = key["Name"];
-    try {
-        var obj = this.core.retrieve(name);
-        var ComplexType = new _p.ComplexType(obj);
-        ComplexType.name = obj.getName() + "";
-        return ComplexType;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * AssociationEndを削除.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.associationEnd.del({"Name":"name", "_EntityType.Name":"entity"});
+     * @param {Object} key 削除対象のキー
+     * @param {string} entity 削除対象のEntityType.Name値
+     * @returns {_p.AssociationEnd} 取得したAssociationEndオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.AssociationEndManager.prototype.del = function(key) {
+        var name = key["Name"];
+        var entityTypeName = key["_EntityType.Name"];
+        try {
+            this.core.del(name, entityTypeName);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * ComplexTypeを削除.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.complexType.del({"Name":"name"});
- * @param {Object} key 削除対象のキー
- * @param {string} entity 削除対象のComplexType.Name値
- * @returns {_p.ComplexType} 取得したComplexTypeオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ComplexTypeManager.prototype.del = function(key) {
-    var name = key["Name"];
-    try {
-        this.core.del(name);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * 新しいComplexTypeManagerオブジェクトを作成する.
+     * @class ComplexType操作クラス
+     * @augments _p.OData
+     */
+    _p.ComplexTypeManager = function(obj) {
+        this.core = obj;
+    }
+    _p.ComplexTypeManager.prototype = new _p.OData();
+
+    /**
+     * ComplexTypeを登録する.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.complexType.create({"Name":"name"});
+     * @param {Object} param ComplexType作成に必要なJSON型オブジェクト
+     * @returns {_p.ComplexType} 作成したComplexTypeオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ComplexTypeManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var ComplexType = new _p.ComplexType(obj);
+            ComplexType.name = obj.getName() + "";
+            return ComplexType;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * 新しいPropertyManagerオブジェクトを作成する.
- * @class Property操作クラス
- * @augments _p.OData
- */
-_p.PropertyManager = function(obj) {
-    this.core = obj;
-}
-_p.PropertyManager.prototype = new _p.OData();
+    /**
+     * ComplexTypeを取得.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.complexType.retrieve({"Name":"name"});
+     * @param {Object} 取得対象のキー
+     * @param {string} entity 取得対象のEntityType.Name値
+     * @returns {_p.ComplexType} 取得したComplexTypeオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ComplexTypeManager.prototype.retrieve = function(key) {
+        var name = key["Name"];
+        try {
+            var obj = this.core.retrieve(name);
+            var ComplexType = new _p.ComplexType(obj);
+            ComplexType.name = obj.getName() + "";
+            return ComplexType;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * Propertyを登録する.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.property.create({"Name": "PetName",
- * "_EntityType.Name": "Profile","Type": "Edm.String"});
- * @param {Object} param Property作成に必要なJSON型オブジェクト
- * @returns {_p.Property} 作成したPropertyオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.PropertyManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var Property = new _p.Property(obj);
-        Property.name = obj.getName() + "";
-        Property.entityTypeName = obj.getEntityTypeName() + "";
-        Property.type = obj.getType() + "";
-        Property.nullable = obj.getNullable();
-        if (Property.type === "Edm.String") {
-            Property.defaultValue = obj.getDefaultValue() + "";
-        } else {
-            Property.defaultValue = obj.getDefaultValue();
+    /**
+     * ComplexTypeを削除.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.complexType.del({"Name":"name"});
+     * @param {Object} key 削除対象のキー
+     * @param {string} entity 削除対象のComplexType.Name値
+     * @returns {_p.ComplexType} 取得したComplexTypeオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ComplexTypeManager.prototype.del = function(key) {
+        var name = key["Name"];
+        try {
+            this.core.del(name);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-        Property.collectionKind = obj.getCollectionKind() + "";
-        Property.isKey = obj.getIsKey();
-        Property.uniqueKey = obj.getUniqueKey() + "";
-        return Property;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * Propertyを取得.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.property.retrieve({"Name":"name","_EntityType.Name": "Profile"});
- * @param {Object} 取得対象のキー
- * @returns {_p.Property} 取得したPropertyオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.PropertyManager.prototype.retrieve = function(key) {
-    var name = key["Name"];
-    var entityTypeName = key["_EntityType.Name"];
-    try {
-        var obj = this.core.retrieve(name, entityTypeName);
-        var Property = new _p.Property(obj);
-        Property.name = obj.getName() + "";
-        Property.entityTypeName = obj.getEntityTypeName() + "";
-        Property.type = obj.getType() + "";
-        Property.nullable = obj.getNullable();
-        if (Property.type === "Edm.String") {
-            Property.defaultValue = obj.getDefaultValue() + "";
-        } else {
-            Property.defaultValue = obj.getDefaultValue();
+    /**
+     * 新しいPropertyManagerオブジェクトを作成する.
+     * @class Property操作クラス
+     * @augments _p.OData
+     */
+    _p.PropertyManager = function(obj) {
+        this.core = obj;
+    }
+    _p.PropertyManager.prototype = new _p.OData();
+
+    /**
+     * Propertyを登録する.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.property.create({"Name": "PetName",
+     * "_EntityType.Name": "Profile","Type": "Edm.String"});
+     * @param {Object} param Property作成に必要なJSON型オブジェクト
+     * @returns {_p.Property} 作成したPropertyオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.PropertyManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var Property = new _p.Property(obj);
+            Property.name = obj.getName() + "";
+            Property.entityTypeName = obj.getEntityTypeName() + "";
+            Property.type = obj.getType() + "";
+            Property.nullable = obj.getNullable();
+            if (Property.type === "Edm.String") {
+                Property.defaultValue = obj.getDefaultValue() + "";
+            } else {
+                Property.defaultValue = obj.getDefaultValue();
+            }
+            Property.collectionKind = obj.getCollectionKind() + "";
+            Property.isKey = obj.getIsKey();
+            Property.uniqueKey = obj.getUniqueKey() + "";
+            return Property;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-        Property.collectionKind = obj.getCollectionKind() + "";
-        Property.isKey = obj.getIsKey();
-        Property.uniqueKey = obj.getUniqueKey() + "";
-        return Property;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * Propertyを削除.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.property.del({"Name":"name","_EntityType.Name": "Profile"});
- * @param {Object} key 削除対象のキー
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.PropertyManager.prototype.del = function(key) {
-    var name = key["Name"];
-    var entityTypeName = key["_EntityType.Name"];
-    try {
-        this.core.del(name, entityTypeName);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * Propertyを取得.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.property.retrieve({"Name":"name","_EntityType.Name": "Profile"});
+     * @param {Object} 取得対象のキー
+     * @returns {_p.Property} 取得したPropertyオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.PropertyManager.prototype.retrieve = function(key) {
+        var name = key["Name"];
+        var entityTypeName = key["_EntityType.Name"];
+        try {
+            var obj = this.core.retrieve(name, entityTypeName);
+            var Property = new _p.Property(obj);
+            Property.name = obj.getName() + "";
+            Property.entityTypeName = obj.getEntityTypeName() + "";
+            Property.type = obj.getType() + "";
+            Property.nullable = obj.getNullable();
+            if (Property.type === "Edm.String") {
+                Property.defaultValue = obj.getDefaultValue() + "";
+            } else {
+                Property.defaultValue = obj.getDefaultValue();
+            }
+            Property.collectionKind = obj.getCollectionKind() + "";
+            Property.isKey = obj.getIsKey();
+            Property.uniqueKey = obj.getUniqueKey() + "";
+            return Property;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * 新しいComplexTypePropertyManagerオブジェクトを作成する.
- * @class ComplexTypeProperty操作クラス
- * @augments _p.OData
- */
-_p.ComplexTypePropertyManager = function(obj) {
-    this.core = obj;
-}
-_p.ComplexTypePropertyManager.prototype = new _p.OData();
+    /**
+     * Propertyを削除.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.property.del({"Name":"name","_EntityType.Name": "Profile"});
+     * @param {Object} key 削除対象のキー
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.PropertyManager.prototype.del = function(key) {
+        var name = key["Name"];
+        var entityTypeName = key["_EntityType.Name"];
+        try {
+            this.core.del(name, entityTypeName);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
 
-/**
- * ComplexTypePropertyを登録する.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.complexTypeProperty.create({"Name": "PetName",
- * "_ComplexType.Name": "Profile","Type": "Edm.String"});
- * @param {Object} param ComplexTypeProperty作成に必要なJSON型オブジェクト
- * @returns {_p.ComplexTypeProperty} 作成したComplexTypePropertyオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ComplexTypePropertyManager.prototype.create = function(param) {
-    try {
-        var obj = this.internalCreate(param);
-        var Property = new _p.ComplexTypeProperty(obj);
-        Property.name = obj.getName() + "";
-        Property.complexTypeName = obj.getComplexTypeName() + "";
-        Property.type = obj.getType() + "";
-        Property.nullable = obj.getNullable();
-        if (Property.type === "Edm.String") {
-            Property.defaultValue = obj.getDefaultValue() + "";
-        } else {
-            Property.defaultValue = obj.getDefaultValue();
+    /**
+     * 新しいComplexTypePropertyManagerオブジェクトを作成する.
+     * @class ComplexTypeProperty操作クラス
+     * @augments _p.OData
+     */
+    _p.ComplexTypePropertyManager = function(obj) {
+        this.core = obj;
+    }
+    _p.ComplexTypePropertyManager.prototype = new _p.OData();
+
+    /**
+     * ComplexTypePropertyを登録する.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.complexTypeProperty.create({"Name": "PetName",
+     * "_ComplexType.Name": "Profile","Type": "Edm.String"});
+     * @param {Object} param ComplexTypeProperty作成に必要なJSON型オブジェクト
+     * @returns {_p.ComplexTypeProperty} 作成したComplexTypePropertyオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ComplexTypePropertyManager.prototype.create = function(param) {
+        try {
+            var obj = this.internalCreate(param);
+            var Property = new _p.ComplexTypeProperty(obj);
+            Property.name = obj.getName() + "";
+            Property.complexTypeName = obj.getComplexTypeName() + "";
+            Property.type = obj.getType() + "";
+            Property.nullable = obj.getNullable();
+            if (Property.type === "Edm.String") {
+                Property.defaultValue = obj.getDefaultValue() + "";
+            } else {
+                Property.defaultValue = obj.getDefaultValue();
+            }
+            Property.collectionKind = obj.getCollectionKind() + "";
+            return Property;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-        Property.collectionKind = obj.getCollectionKind() + "";
-        return Property;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * ComplexTypePropertyを取得.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.complexTypeProperty.retrieve({"Name":"name","_ComplexType.Name": "Profile"});
- * @param {Object} 取得対象のキー
- * @returns {_p.ComplexTypeProperty} 取得したComplexTypePropertyオブジェクト
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ComplexTypePropertyManager.prototype.retrieve = function(key) {
-    var name = key["Name"];
-    var complexTypeName = key["_ComplexType.Name"];
-    try {
-        var obj = this.core.retrieve(name, complexTypeName);
-        var Property = new _p.ComplexTypeProperty(obj);
-        Property.name = obj.getName() + "";
-        Property.entityTypeName = obj.getComplexTypeName() + "";
-        Property.type = obj.getType() + "";
-        Property.nullable = obj.getNullable();
-        if (Property.type === "Edm.String") {
-            Property.defaultValue = obj.getDefaultValue() + "";
-        } else {
-            Property.defaultValue = obj.getDefaultValue();
+    /**
+     * ComplexTypePropertyを取得.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.complexTypeProperty.retrieve({"Name":"name","_ComplexType.Name": "Profile"});
+     * @param {Object} 取得対象のキー
+     * @returns {_p.ComplexTypeProperty} 取得したComplexTypePropertyオブジェクト
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ComplexTypePropertyManager.prototype.retrieve = function(key) {
+        var name = key["Name"];
+        var complexTypeName = key["_ComplexType.Name"];
+        try {
+            var obj = this.core.retrieve(name, complexTypeName);
+            var Property = new _p.ComplexTypeProperty(obj);
+            Property.name = obj.getName() + "";
+            Property.entityTypeName = obj.getComplexTypeName() + "";
+            Property.type = obj.getType() + "";
+            Property.nullable = obj.getNullable();
+            if (Property.type === "Edm.String") {
+                Property.defaultValue = obj.getDefaultValue() + "";
+            } else {
+                Property.defaultValue = obj.getDefaultValue();
+            }
+            Property.collectionKind = obj.getCollectionKind() + "";
+            return Property;
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
         }
-        Property.collectionKind = obj.getCollectionKind() + "";
-        return Property;
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    };
 
-/**
- * ComplexTypePropertyを削除.<br>
- * 例：<br>
- *   odata("odata").entitySet("entity").schema.complexTypeProperty.del({"Name":"name","_ComplexType.Name": "Profile"});
- * @param {Object} key 削除対象のキー
- * @exception {_p.PersoniumException} DAO例外
- */
-_p.ComplexTypePropertyManager.prototype.del = function(key) {
-    var name = key["Name"];
-    var complexTypeName = key["_ComplexType.Name"];
-    try {
-        this.core.del(name, complexTypeName);
-    } catch (e) {
-        throw new _p.PersoniumException(e.message);
-    }
-};
+    /**
+     * ComplexTypePropertyを削除.<br>
+     * 例：<br>
+     *   odata("odata").entitySet("entity").schema.complexTypeProperty.del({"Name":"name","_ComplexType.Name": "Profile"});
+     * @param {Object} key 削除対象のキー
+     * @exception {_p.PersoniumException} DAO例外
+     */
+    _p.ComplexTypePropertyManager.prototype.del = function(key) {
+        var name = key["Name"];
+        var complexTypeName = key["_ComplexType.Name"];
+        try {
+            this.core.del(name, complexTypeName);
+        } catch (e) {
+            throw new _p.PersoniumException(e.message);
+        }
+    };
+});
 
 /**
  * トークンの取得.<br>
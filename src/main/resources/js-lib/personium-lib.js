@@ -14,8 +14,12 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-_p.pjvm = pjvm;
-_p.dcjvm = pjvm;
+// pjvm is bound per request. When this library is evaluated into the shared scope,
+// pjvm does not exist yet and the engine sets it on the per-request _p instead.
+if (typeof pjvm !== "undefined") {
+    _p.pjvm = pjvm;
+    _p.dcjvm = pjvm;
+}
 
 _p.util = {};
 
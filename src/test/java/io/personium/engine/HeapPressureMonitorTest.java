@@ -0,0 +1,114 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.engine.HeapPressureMonitor.Stage;
+import io.personium.engine.model.ScriptCache;
+import io.personium.engine.model.ScriptCacheMap;
+import io.personium.test.categories.Unit;
+
+/**
+ * HeapPressureMonitor unit test.
+ */
+@Category({Unit.class })
+public class HeapPressureMonitorTest {
+
+    private ScriptCacheMap userScriptCache;
+    private HeapPressureMonitor monitor;
+
+    /**
+     * Fill the caches with interpreted and compiled scripts, half of them used often.
+     */
+    @Before
+    public void before() {
+        userScriptCache = new ScriptCacheMap(Long.MAX_VALUE / 2);
+        for (int i = 0; i < 10; i++) {
+            userScriptCache.put("interpreted" + i, new ScriptCache(null, null, -1, 1000, null));
+            userScriptCache.put("compiled" + i, new ScriptCache(null, null, 9, 1000, null));
+        }
+        for (int i = 0; i < 5; i++) {
+            for (int n = 0; n < 5; n++) {
+                userScriptCache.get("interpreted" + i);
+                userScriptCache.get("compiled" + i);
+            }
+        }
+        monitor = new HeapPressureMonitor(0.85, 0.7, userScriptCache);
+    }
+
+    /**
+     * Nothing is shed below the high watermark.
+     */
+    @Test
+    public void noPressure() {
+        assertEquals(Stage.NONE, monitor.update(80, 100));
+        assertEquals(20, userScriptCache.size());
+        assertEquals(0L, (long) monitor.getStats().get("events"));
+    }
+
+    /**
+     * The coldest entries are shed first, then the compiled scripts, then all.
+     */
+    @Test
+    public void shedInStages() {
+        assertEquals(Stage.COLDEST, monitor.update(90, 100));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(userScriptCache.containsKey("interpreted" + i));
+            assertTrue(userScriptCache.containsKey("compiled" + i));
+        }
+        assertTrue(userScriptCache.size() < 20);
+
+        assertEquals(Stage.COMPILED, monitor.update(90, 100));
+        for (int i = 0; i < 10; i++) {
+            assertFalse(userScriptCache.containsKey("compiled" + i));
+        }
+        assertTrue(userScriptCache.containsKey("interpreted0"));
+
+        assertEquals(Stage.ALL, monitor.update(90, 100));
+        assertEquals(0, userScriptCache.size());
+        assertEquals(Stage.ALL, monitor.update(90, 100));
+
+        Map<String, Long> stats = monitor.getStats();
+        assertEquals(3L, (long) stats.get("events"));
+        assertEquals(20L, (long) stats.get("shedEntries"));
+        assertEquals(20L, (long) userScriptCache.getStats().get("shed"));
+    }
+
+    /**
+     * Shedding stops below the low watermark and starts over from the first stage.
+     */
+    @Test
+    public void recover() {
+        monitor.update(90, 100);
+        assertEquals(Stage.COLDEST, monitor.update(80, 100));
+        assertEquals(Stage.NONE, monitor.update(60, 100));
+        assertEquals(1L, (long) monitor.getStats().get("recoveries"));
+        int size = userScriptCache.size();
+        assertEquals(Stage.NONE, monitor.update(80, 100));
+        assertEquals(size, userScriptCache.size());
+        assertEquals(Stage.COLDEST, monitor.update(90, 100));
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.ClassCache;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import io.personium.engine.adapter.PersoniumEngineDao;
+import io.personium.test.categories.Benchmark;
+import io.personium.test.categories.Unit;
+
+/**
+ * PersoniumClassCache unit test.
+ */
+@Category({Unit.class })
+public class PersoniumClassCacheTest extends RhinoTestBase {
+
+    /**
+     * Every scope shares one ClassCache, and gets its own functions calling the reflected methods.
+     * @throws Exception exception
+     */
+    @Test
+    public void reflectedMembersAreSharedAcrossScopes() throws Exception {
+        ScriptableObject scope1 = PersoniumClassCache.initStandardObjects(cx, false);
+        ScriptableObject scope2 = PersoniumClassCache.initStandardObjects(cx, false);
+        assertSame(PersoniumClassCache.getInstance(cx), ClassCache.get(scope1));
+        assertSame(PersoniumClassCache.getInstance(cx), ClassCache.get(scope2));
+
+        Object method1 = wrap(newDao(), scope1).get("asServiceSubject", null);
+        assertSame(method1, wrap(newDao(), scope1).get("asServiceSubject", null));
+        assertNotSame(method1, wrap(newDao(), scope2).get("asServiceSubject", null));
+    }
+
+    /**
+     * A script cannot modify the reflected methods for the other scopes.
+     * @throws Exception exception
+     */
+    @Test
+    public void reflectedMethodsAreNotModifiedAcrossScopes() throws Exception {
+        ScriptableObject scope1 = PersoniumClassCache.initStandardObjects(cx, false);
+        ScriptableObject.putProperty(scope1, "dao", wrap(newDao(), scope1));
+        assertEquals("hijacked|true", cx.evaluateString(scope1, "var m = dao.hashCode; m.leak = 'hijacked';"
+                + " m.__proto__ = {toString: function() { return 'hijacked'; }};"
+                + " String(m) + '|' + (typeof dao.hashCode() === 'number')", "test", 1, null));
+
+        ScriptableObject scope2 = PersoniumClassCache.initStandardObjects(cx, false);
+        ScriptableObject.putProperty(scope2, "dao", wrap(newDao(), scope2));
+        assertEquals("undefined|true|true", cx.evaluateString(scope2, "var m = dao.hashCode;"
+                + " typeof m.leak + '|' + (m instanceof Function) + '|' + (typeof dao.hashCode() === 'number')",
+                "test", 1, null));
+    }
+
+    /**
+     * Benchmark of the per-request reflection cost of pjvm.
+     * @throws Exception exception
+     */
+    @Test
+    @Category({Benchmark.class })
+    public void benchmarkPerRequestReflection() throws Exception {
+        long[] perScope = new long[2];
+        long[] shared = new long[2];
+        for (int i = 0; i < BENCHMARK_REQUESTS; i++) {
+            PersoniumEngineDao dao = newDao();
+            ScriptableObject scope = cx.initStandardObjects();
+            measure(perScope, () -> wrap(dao, scope).get("asServiceSubject", null));
+
+            ScriptableObject sharedScope = PersoniumClassCache.initStandardObjects(cx, false);
+            measure(shared, () -> wrap(dao, sharedScope).get("asServiceSubject", null));
+        }
+        logPerRequest("pjvm reflection", "per-scope ClassCache", perScope, "shared ClassCache", shared);
+    }
+
+    private PersoniumEngineDao newDao() throws Exception {
+        return new PersoniumEngineDao("http://localhost/", "cell", "", "box", true);
+    }
+
+    private Scriptable wrap(Object obj, Scriptable scope) {
+        return (Scriptable) Context.javaToJS(obj, scope);
+    }
+}
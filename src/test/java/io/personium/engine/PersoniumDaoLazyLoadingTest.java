@@ -0,0 +1,116 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+import io.personium.test.categories.Benchmark;
+import io.personium.test.categories.Unit;
+
+/**
+ * Lazy loading of the personium-dao.js classes.
+ */
+@Category({Unit.class })
+public class PersoniumDaoLazyLoadingTest extends RhinoTestBase {
+    /** Touches every class of _p, which is what the whole library evaluation used to do. */
+    private static final String LOAD_ALL = "for (var k in _p) { _p[k]; }";
+
+    /** Typical access path of a service script. Core objects are stubbed. */
+    private static final String TYPICAL_USE = "var cell = new _p.Cell({});"
+            + "var box = new _p.Box({getName: function() {}, getSchema: function() {}});"
+            + "new _p.ODataCollection({});";
+
+    /** Touches the properties of the objects above, which used to be created in the constructors. */
+    private static final String TOUCH_PROPERTIES = "cell.ctl; cell.event; cell.currentLog; cell.archiveLog;"
+            + "box.ctl; new _p.ODataCollection({}).schema;";
+
+    /**
+     * Classes are materialised on first access and behave as before.
+     * @throws Exception exception
+     */
+    @Test
+    public void classesAreMaterialisedOnFirstAccess() throws Exception {
+        Scriptable scope = newDaoScope();
+        assertEquals(true, eval(scope, "typeof Object.getOwnPropertyDescriptor(_p, 'RoleManager').get"
+                + " === 'function'"));
+        assertEquals(true, eval(scope, "new _p.RoleManager({}) instanceof _p.OData"));
+        assertEquals(true, eval(scope, "typeof Object.getOwnPropertyDescriptor(_p, 'ExtCellManager').value"
+                + " === 'function'"));
+        assertEquals(true, eval(scope, "typeof Object.getOwnPropertyDescriptor(_p, 'EventManager').get"
+                + " === 'function'"));
+
+        assertEquals(true, eval(scope, TYPICAL_USE + "cell.ctl instanceof _p.CellCtl"
+                + " && cell.hasOwnProperty('ctl') && cell.ctl === cell.ctl"
+                + " && cell.ctl.role instanceof _p.RoleManager && box.ctl instanceof _p.BoxCtl"));
+        assertEquals(true, eval(scope, "_p.Cell.prototype.ctl === undefined"));
+        assertEquals(true, eval(scope, "cell.event = 'x'; cell.event === 'x'"));
+    }
+
+    /**
+     * The shared scope is sealed with every class materialised.
+     * @throws Exception exception
+     */
+    @Test
+    public void sharedScopeMaterialisesEveryClass() throws Exception {
+        Scriptable scope = PersoniumSharedScope.newRequestScope(cx);
+        assertEquals(true, eval(scope, "var d = Object.getOwnPropertyDescriptor(Object.getPrototypeOf(_p),"
+                + " 'ComplexTypePropertyManager'); typeof d.value === 'function'"));
+        assertEquals(true, eval(scope, TYPICAL_USE + "cell.ctl.extCell instanceof _p.ExtCellManager"));
+    }
+
+    /**
+     * Benchmark of the per-request evaluation and allocation saved by the lazy loading.
+     * @throws Exception exception
+     */
+    @Test
+    @Category({Benchmark.class })
+    public void benchmarkLazyLoading() throws Exception {
+        Script dao = PersoniumEngineContext.getEngineLib(cx, "personium-dao");
+        Script typical = cx.compileString(TYPICAL_USE, "bench", 1, null);
+        Script all = cx.compileString(TYPICAL_USE + LOAD_ALL + TOUCH_PROPERTIES, "bench", 1, null);
+        long[] lazy = new long[2];
+        long[] eager = new long[2];
+        for (int i = 0; i < BENCHMARK_REQUESTS; i++) {
+            measure(lazy, dao, typical);
+            measure(eager, dao, all);
+        }
+        logPerRequest("personium-dao.js", "all classes", eager, "lazy", lazy);
+    }
+
+    private void measure(long[] total, Script dao, Script script) {
+        Scriptable scope = cx.initStandardObjects();
+        measure(total, () -> {
+            dao.exec(cx, scope);
+            script.exec(cx, scope);
+        });
+    }
+
+    private Scriptable newDaoScope() throws Exception {
+        Scriptable scope = cx.initStandardObjects();
+        PersoniumEngineContext.getEngineLib(cx, "personium-dao").exec(cx, scope);
+        return scope;
+    }
+
+    private Object eval(Scriptable scope, String source) {
+        return cx.evaluateString(scope, source, "test", 1, null);
+    }
+}
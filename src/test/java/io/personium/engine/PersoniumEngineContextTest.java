@@ -0,0 +1,191 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Script;
+
+import io.personium.engine.model.DavMetadataFile;
+import io.personium.engine.model.ScriptCache;
+import io.personium.engine.source.FsServiceResourceSourceManager;
+import io.personium.engine.utils.PersoniumEngineConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * Compilation of user scripts by PersoniumEngineContext.
+ */
+@Category({Unit.class })
+public class PersoniumEngineContextTest {
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PersoniumJsContext cx;
+
+    /**
+     * Enter Rhino context.
+     */
+    @Before
+    public void before() {
+        cx = (PersoniumJsContext) new PersoniumJsContextFactory().enterContext();
+    }
+
+    /**
+     * Exit Rhino context.
+     */
+    @After
+    public void after() {
+        Context.exit();
+        PersoniumEngineConfig.reload();
+    }
+
+    /**
+     * A script of a collection at level 9 is compiled to bytecode.
+     * @throws Exception exception
+     */
+    @Test
+    public void compiledAtCollectionLevel() throws Exception {
+        ScriptCache cache = compile(9, "var f = function(a) { return a * 2; }; f(21);");
+        assertEquals(9, cache.getCurrentOptimizationLevel());
+        assertFalse(isInterpreted(cache.getScript()));
+        assertEquals(42, Context.toNumber(cache.getScript().exec(cx, cx.initStandardObjects())), 0);
+    }
+
+    /**
+     * Syntax errors are reported as they are, whatever the level.
+     * @throws Exception exception
+     */
+    @Test
+    public void syntaxErrorIsReported() throws Exception {
+        for (int level : new int[] {-1, 9}) {
+            try {
+                compile(level, "var = ;");
+                fail();
+            } catch (EvaluatorException e) {
+                assertEquals("missing variable name", e.details());
+            }
+        }
+    }
+
+    /**
+     * A script too large for a JVM method runs on the interpreter, with or without the disk cache.
+     * @throws Exception exception
+     */
+    @Test
+    public void tooLargeForBytecodeIsInterpreted() throws Exception {
+        StringBuilder source = new StringBuilder("var x = 0;\n");
+        for (int i = 0; i < 20000; i++) {
+            source.append("x = x + 1;\n");
+        }
+        source.append("x;");
+        PersoniumEngineConfig.getProperties().setProperty(PersoniumEngineConfig.Engine.SCRIPT_DISK_CACHE_DIR,
+                folder.newFolder().getPath());
+        for (String diskCache : new String[] {"false", "true"}) {
+            PersoniumEngineConfig.getProperties().setProperty(
+                    PersoniumEngineConfig.Engine.SCRIPT_DISK_CACHE_ENABLED, diskCache);
+            ScriptCache cache = compile(9, source.toString());
+            assertTrue(diskCache, isInterpreted(cache.getScript()));
+            assertEquals(diskCache, 20000, Context.toNumber(cache.getScript().exec(cx, cx.initStandardObjects())),
+                    0);
+        }
+    }
+
+    /**
+     * The script timeout applies to compiled code through the instruction observer.
+     * @throws Exception exception
+     */
+    @Test
+    public void compiledScriptTimesOut() throws Exception {
+        cx.setScriptTimeout(200);
+        cx.setInstructionObserverThreshold(1000);
+        ScriptCache cache = compile(9, "while (true) {}");
+        assertFalse(isInterpreted(cache.getScript()));
+        long start = System.nanoTime();
+        try {
+            cache.getScript().exec(cx, cx.initStandardObjects());
+            fail();
+        } catch (Error e) {
+            // timed out
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        }
+    }
+
+    /**
+     * A missing script is reported before the request is prepared, e.g. before the DAO is created from it.
+     * @throws Exception exception
+     */
+    @Test
+    public void missingScriptFailsBeforeLibrariesAreLoaded() throws Exception {
+        File dir = collection(-1);
+        try (PersoniumEngineContext context = new PersoniumEngineContext()) {
+            context.setSourceManager(new FsServiceResourceSourceManager(dir.getPath(), "cell"));
+            context.runJsgi(null, null, null, "engine", 0, "test.js");
+            fail();
+        } catch (PersoniumEngineException e) {
+            assertEquals(PersoniumEngineException.STATUSCODE_NOTFOUND, e.getStatusCode());
+        }
+    }
+
+    private boolean isInterpreted(Script script) {
+        return "org.mozilla.javascript.InterpretedFunction".equals(script.getClass().getName());
+    }
+
+    private ScriptCache compile(int level, String content) throws Exception {
+        File dir = collection(level);
+        File sourceDir = new File(dir, "__src" + File.separator + "test.js");
+        sourceDir.mkdirs();
+        write(sourceDir, "{\"u\":1}");
+        Files.write(new File(sourceDir, "content").toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        FsServiceResourceSourceManager sourceManager = new FsServiceResourceSourceManager(dir.getPath(), "cell");
+        return PersoniumEngineContext.recompileAndCache(cx, sourceManager, "test.js", "test.js", "", "");
+    }
+
+    /**
+     * @return service collection of the path "test" to "test.js" without the source
+     */
+    private File collection(int level) throws IOException {
+        File dir = folder.newFolder();
+        write(dir, "{\"u\":1,\"d\":{\"service@urn:x-personium:xmlns\":\"<service subject=\\\"engine\\\">"
+                + "<path name=\\\"test\\\" src=\\\"test.js\\\"/></service>\","
+                + "\"optimizationLevel@urn:x-personium:xmlns\":\"" + level + "\"}}");
+        return dir;
+    }
+
+    private void write(File dir, String json) throws IOException {
+        Files.write(new File(dir, DavMetadataFile.DAV_META_FILE_NAME).toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * PersoniumExtensionScope unit test.
+ */
+@Category({Unit.class })
+public class PersoniumExtensionScopeTest {
+
+    private Context cx;
+
+    /**
+     * Enter Rhino context.
+     */
+    @Before
+    public void before() {
+        cx = PersoniumJsContextFactory.getShared().enterThreadContext();
+    }
+
+    /**
+     * Exit Rhino context.
+     */
+    @After
+    public void after() {
+        Context.exit();
+    }
+
+    /**
+     * Without the shared scope, the classes are defined into the request namespace, which stays writable.
+     * @throws Exception exception
+     */
+    @Test
+    public void classesAreDefinedIntoRequestNamespace() throws Exception {
+        ScriptableObject scope = PersoniumClassCache.initStandardObjects(cx, false);
+        Scriptable extension = cx.newObject(scope);
+        PersoniumExtensionScope.defineClasses(cx, extension);
+        assertFalse(((ScriptableObject) extension).isSealed());
+        assertSame(ScriptableObject.getObjectPrototype(scope), extension.getPrototype());
+    }
+
+    /**
+     * _p.extension of a request scope is writable and inherits the shared classes.
+     * @throws Exception exception
+     */
+    @Test
+    public void requestExtensionInheritsSharedClasses() throws Exception {
+        Scriptable scope = PersoniumSharedScope.newRequestScope(cx);
+        assertEquals(true, cx.evaluateString(scope,
+                "var shared = Object.getPrototypeOf(_p).extension;"
+                + "_p.extension.Local = 1;"
+                + "Object.getPrototypeOf(_p.extension) === shared && shared.Local === undefined",
+                "test", 1, null));
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.Context;
+
+import io.personium.engine.utils.PersoniumEngineConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * PersoniumJsContextFactory unit test.
+ */
+@Category({Unit.class })
+public class PersoniumJsContextFactoryTest {
+
+    /**
+     * Each thread keeps one configured Context across requests.
+     * @throws Exception exception
+     */
+    @Test
+    public void threadContextIsReusedAcrossRequests() throws Exception {
+        PersoniumJsContextFactory factory = PersoniumJsContextFactory.getShared();
+        PersoniumJsContext first = factory.enterThreadContext();
+        Context.exit();
+        assertNull(Context.getCurrentContext());
+
+        PersoniumJsContext second = factory.enterThreadContext();
+        try {
+            assertSame(first, second);
+            assertSame(factory, second.getFactory());
+            assertEquals(Context.VERSION_ES6, second.getLanguageVersion());
+        } finally {
+            Context.exit();
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            PersoniumJsContext other = executor.submit(() -> {
+                PersoniumJsContext cx = factory.enterThreadContext();
+                Context.exit();
+                return cx;
+            }).get();
+            assertNotSame(first, other);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The configuration is read when the factory is built, not for each Context or feature check.
+     * @throws Exception exception
+     */
+    @Test
+    public void configurationIsReadOnce() throws Exception {
+        PersoniumJsContextFactory factory = new PersoniumJsContextFactory();
+        int threshold = PersoniumEngineConfig.getScriptConnectionTimeout() / 10;
+        boolean dynamicScope = PersoniumEngineConfig.getScriptSharedScopeEnabled();
+        PersoniumEngineConfig.getProperties().setProperty(PersoniumEngineConfig.Engine.SCRIPT_CONNECTION_TIMEOUT,
+                String.valueOf(threshold * 10 + 1000));
+        PersoniumEngineConfig.getProperties().setProperty(PersoniumEngineConfig.Engine.SCRIPT_SHARED_SCOPE_ENABLED,
+                String.valueOf(!dynamicScope));
+        // A thread without the Context of another factory.
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> {
+                PersoniumJsContext cx = factory.enterThreadContext();
+                try {
+                    assertEquals(threshold, cx.getInstructionObserverThreshold());
+                    assertEquals(dynamicScope, cx.hasFeature(Context.FEATURE_DYNAMIC_SCOPE));
+                } finally {
+                    Context.exit();
+                }
+            }).get();
+        } finally {
+            executor.shutdown();
+            PersoniumEngineConfig.reload();
+        }
+    }
+
+    /**
+     * The installed application class loader replaces the one thread contexts cached before the installation.
+     * @throws Exception exception
+     */
+    @Test
+    public void installedClassLoaderIsAppliedToThreadContexts() throws Exception {
+        PersoniumJsContextFactory factory = new PersoniumJsContextFactory();
+        ClassLoader loader = new URLClassLoader(new URL[0], PersoniumJsContextFactory.class.getClassLoader());
+        ExecutorService before = Executors.newSingleThreadExecutor();
+        ExecutorService installing = Executors.newSingleThreadExecutor();
+        try {
+            ClassLoader cached = before.submit(() -> {
+                PersoniumJsContext cx = factory.enterThreadContext();
+                try {
+                    return cx.getApplicationClassLoader();
+                } finally {
+                    Context.exit();
+                }
+            }).get();
+            assertNotSame(loader, cached);
+
+            assertSame(loader, installing.submit(() -> {
+                PersoniumJsContext cx = factory.enterThreadContext();
+                try {
+                    cx.getApplicationClassLoader();
+                    factory.installApplicationClassLoader(loader);
+                    return cx.getApplicationClassLoader();
+                } finally {
+                    Context.exit();
+                }
+            }).get());
+
+            assertSame(loader, before.submit(() -> {
+                PersoniumJsContext cx = factory.enterThreadContext();
+                try {
+                    return cx.getApplicationClassLoader();
+                } finally {
+                    Context.exit();
+                }
+            }).get());
+        } finally {
+            before.shutdown();
+            installing.shutdown();
+        }
+    }
+}
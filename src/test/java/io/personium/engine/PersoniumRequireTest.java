@@ -0,0 +1,278 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+import io.personium.engine.model.ScriptCache;
+import io.personium.engine.model.ScriptSource;
+import io.personium.engine.source.ISourceManager;
+import io.personium.engine.utils.PersoniumEngineConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * require unit test.
+ */
+@Category({Unit.class })
+public class PersoniumRequireTest {
+
+    /**
+     * Restore the configuration.
+     */
+    @After
+    public void after() {
+        PersoniumEngineConfig.reload();
+    }
+
+    /**
+     * A module is evaluated once in a request, and its source is read only when compiled.
+     * @throws Exception exception
+     */
+    @Test
+    public void moduleIsEvaluatedOncePerRequest() throws Exception {
+        SourceManager sourceManager = new SourceManager("once");
+        sourceManager.sources.put("counter.js", "this.loads = (this.loads || 0) + 1; exports.loads = this.loads;");
+
+        Scriptable exports;
+        try (PersoniumEngineContext context = new PersoniumEngineContext()) {
+            context.setSourceManager(sourceManager);
+            exports = (Scriptable) context.requireJs("counter");
+            assertSame(exports, context.requireJs("./counter.js"));
+            assertEquals(1, ((Number) exports.get("loads", exports)).intValue());
+        }
+        assertEquals(1, sourceManager.reads);
+
+        // The next request evaluates the cached module again, without reading the source.
+        try (PersoniumEngineContext context = new PersoniumEngineContext()) {
+            context.setSourceManager(sourceManager);
+            Scriptable other = (Scriptable) context.requireJs("counter");
+            assertNotSame(exports, other);
+            assertEquals(1, ((Number) other.get("loads", other)).intValue());
+        }
+        assertEquals(1, sourceManager.reads);
+    }
+
+    /**
+     * module.exports replaces the exports, and no global is left behind by the module.
+     * @throws Exception exception
+     */
+    @Test
+    public void moduleExportsReplacesExports() throws Exception {
+        SourceManager sourceManager = new SourceManager("exports");
+        sourceManager.sources.put("twice.js", "var local = 2;\nmodule.exports = function(v) { return v * local; };"
+                + " // no line break at the end");
+        sourceManager.sources.put("globals.js", "exports.local = typeof local;");
+
+        try (PersoniumEngineContext context = new PersoniumEngineContext()) {
+            context.setSourceManager(sourceManager);
+            Function twice = (Function) context.requireJs("twice");
+            assertEquals(42, ((Number) twice.call(Context.getCurrentContext(), twice, twice,
+                    new Object[] {21})).intValue());
+            Scriptable globals = (Scriptable) context.requireJs("globals");
+            assertEquals("undefined", globals.get("local", globals));
+        }
+    }
+
+    /**
+     * A module declaring "use shared" is evaluated once per source version, and its exports are frozen.
+     * @throws Exception exception
+     */
+    @Test
+    public void sharedModuleIsEvaluatedOncePerVersion() throws Exception {
+        enableSharedModule();
+        SourceManager sourceManager = new SourceManager("shared");
+        sourceManager.sources.put("table.js", "\"use shared\";\nvar evaluated = new Date().getTime() + Math.random();"
+                + "\nexports.table = {a: [1, 2]}; exports.evaluated = evaluated;");
+
+        Scriptable exports;
+        try (PersoniumEngineContext context = new PersoniumEngineContext()) {
+            context.setSourceManager(sourceManager);
+            exports = (Scriptable) context.requireJs("table");
+            try {
+                Context.getCurrentContext().evaluateString(exports, "table.a.push(3);", "test", 1, null);
+                fail();
+            } catch (EvaluatorException e) {
+                // sealed
+            }
+            assertEquals("{\"a\":[1,2]}", Context.getCurrentContext().evaluateString(exports,
+                    "table.a[0] = 9; table.b = 1; JSON.stringify(table)", "test", 1, null));
+        }
+        try (PersoniumEngineContext context = new PersoniumEngineContext()) {
+            context.setSourceManager(sourceManager);
+            assertSame(exports, context.requireJs("table"));
+        }
+
+        // A new version of the source is a new cache entry.
+        sourceManager.cache.clear();
+        try (PersoniumEngineContext context = new PersoniumEngineContext()) {
+            context.setSourceManager(sourceManager);
+            Scriptable updated = (Scriptable) context.requireJs("table");
+            assertNotSame(exports, updated);
+            assertNotEquals(exports.get("evaluated", exports), updated.get("evaluated", updated));
+        }
+    }
+
+    /**
+     * Objects held only by closures of a shared module are not frozen, and are shared by the requests.
+     * @throws Exception exception
+     */
+    @Test
+    public void sharedModuleClosureStateIsMutable() throws Exception {
+        enableSharedModule();
+        SourceManager sourceManager = new SourceManager("sharedClosure");
+        sourceManager.sources.put("counter.js", "'use shared';\nvar state = {count: 0};"
+                + "\nexports.increment = function() { return ++state.count; };");
+        for (int expected = 1; expected <= 2; expected++) {
+            try (PersoniumEngineContext context = new PersoniumEngineContext()) {
+                context.setSourceManager(sourceManager);
+                Function increment = (Function) ((Scriptable) context.requireJs("counter")).get("increment", null);
+                Context cx = Context.getCurrentContext();
+                assertEquals(expected, ((Number) increment.call(cx, increment, increment, new Object[0])).intValue());
+            }
+        }
+    }
+
+    private void enableSharedModule() {
+        PersoniumEngineConfig.getProperties().setProperty(PersoniumEngineConfig.Engine.SCRIPT_SHARED_MODULE_ENABLED,
+                "true");
+    }
+
+    /**
+     * Shared modules are evaluated per request by default.
+     * @throws Exception exception
+     */
+    @Test
+    public void sharedModuleDisabled() throws Exception {
+        SourceManager sourceManager = new SourceManager("sharedDisabled");
+        sourceManager.sources.put("table.js", "'use shared'; exports.table = {};");
+        Object first;
+        try (PersoniumEngineContext context = new PersoniumEngineContext()) {
+            context.setSourceManager(sourceManager);
+            first = context.requireJs("table");
+        }
+        try (PersoniumEngineContext context = new PersoniumEngineContext()) {
+            context.setSourceManager(sourceManager);
+            assertNotSame(first, context.requireJs("table"));
+        }
+    }
+
+    /**
+     * Names outside the service sources are not resolved.
+     * @throws Exception exception
+     */
+    @Test
+    public void invalidModuleNames() throws Exception {
+        assertEquals("lib", PersoniumEngineContext.resolveModule("lib"));
+        assertEquals("lib", PersoniumEngineContext.resolveModule("./lib.js"));
+        for (String name : new String[] {"", ".", "..", "../lib", "dir/lib", "..\\lib", ".js", null}) {
+            try {
+                PersoniumEngineContext.resolveModule(name);
+                fail(name);
+            } catch (PersoniumEngineException e) {
+                assertEquals(PersoniumEngineException.STATUSCODE_NOTFOUND, e.getStatusCode());
+            }
+        }
+    }
+
+    /**
+     * Source manager of the sources in memory.
+     */
+    private static final class SourceManager implements ISourceManager {
+        private final String collection;
+        private final Map<String, String> sources = new HashMap<String, String>();
+        private final Map<String, ScriptCache> cache = new ConcurrentHashMap<String, ScriptCache>();
+        private int reads;
+
+        SourceManager(String collection) {
+            this.collection = collection;
+        }
+
+        @Override
+        public String getServiceSubject() {
+            return "engine";
+        }
+
+        @Override
+        public String getScriptNameForServicePath(String servicePath) {
+            return servicePath;
+        }
+
+        @Override
+        public int getOptimizationLevel() {
+            return -1;
+        }
+
+        @Override
+        public String getCacheKey(String sourceName) {
+            return "/" + collection + "/__src/" + sourceName;
+        }
+
+        @Override
+        public boolean isWatched() {
+            return false;
+        }
+
+        @Override
+        public ScriptCache createCachedScript(Script script, String sourceName, int sourceLength,
+                Map<String, ScriptCache> userScriptCache) {
+            ScriptCache created = new ScriptCache(script, null, -1, sourceLength, null);
+            cache.put(sourceName, created);
+            return created;
+        }
+
+        @Override
+        public ScriptCache getCachedScript(String sourceName, Map<String, ScriptCache> userScriptCache) {
+            return cache.get(sourceName);
+        }
+
+        @Override
+        public ScriptSource getSource(String scriptFileName, String prefix, String suffix)
+                throws PersoniumEngineException {
+            reads++;
+            String source = sources.get(scriptFileName);
+            if (source == null) {
+                throw new PersoniumEngineException("404 Not Found", PersoniumEngineException.STATUSCODE_NOTFOUND);
+            }
+            byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+            try {
+                return ScriptSource.read(new ByteArrayInputStream(bytes), bytes.length, prefix, suffix);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Scriptable;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * PersoniumSharedScope unit test.
+ */
+@Category({Unit.class })
+public class PersoniumSharedScopeTest extends RhinoTestBase {
+
+    /**
+     * Request scopes inherit the shared scope but own their _p namespace.
+     * @throws Exception exception
+     */
+    @Test
+    public void requestScopesShareLibrariesButNotBindings() throws Exception {
+        Scriptable scope1 = PersoniumSharedScope.newRequestScope(cx);
+        Scriptable scope2 = PersoniumSharedScope.newRequestScope(cx);
+        assertSame(scope1.getPrototype(), scope2.getPrototype());
+
+        Scriptable p1 = (Scriptable) scope1.get("_p", scope1);
+        Scriptable p2 = (Scriptable) scope2.get("_p", scope2);
+        assertNotSame(p1, p2);
+        assertSame(p1.getPrototype(), p2.getPrototype());
+
+        cx.evaluateString(scope1, "_p.foo = 'bar';", "test", 1, null);
+        assertEquals("bar", cx.evaluateString(scope1, "_p.foo", "test", 1, null));
+        assertEquals("undefined", cx.evaluateString(scope2, "typeof _p.foo", "test", 1, null));
+        assertEquals("function", cx.evaluateString(scope2, "typeof _p.as", "test", 1, null));
+    }
+
+    /**
+     * Objects of the shared scope cannot be modified by user scripts.
+     * @throws Exception exception
+     */
+    @Test
+    public void sharedObjectsAreSealed() throws Exception {
+        Scriptable scope = PersoniumSharedScope.newRequestScope(cx);
+        try {
+            cx.evaluateString(scope, "_p.util.escape4xss = function() {};", "test", 1, null);
+            fail();
+        } catch (EvaluatorException e) {
+            // expected
+        }
+        try {
+            cx.evaluateString(scope, "Array.prototype.foo = 1;", "test", 1, null);
+            fail();
+        } catch (EvaluatorException e) {
+            // expected
+        }
+    }
+}
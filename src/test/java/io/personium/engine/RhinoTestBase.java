@@ -0,0 +1,96 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.mozilla.javascript.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class of the unit tests evaluating scripts in a Rhino Context of the engine, interpreted in ES6.
+ * Benchmarks measure each variant per simulated request with measure, and log them with logPerRequest.
+ */
+public abstract class RhinoTestBase {
+    /** Number of simulated requests in the benchmarks. */
+    protected static final int BENCHMARK_REQUESTS = 200;
+
+    /** Rhino context. */
+    protected Context cx;
+
+    /**
+     * Enter Rhino context.
+     */
+    @Before
+    public void enterContext() {
+        cx = new PersoniumJsContextFactory().enterContext();
+        cx.setLanguageVersion(Context.VERSION_ES6);
+        cx.setOptimizationLevel(-1);
+    }
+
+    /**
+     * Exit Rhino context.
+     */
+    @After
+    public void exitContext() {
+        Context.exit();
+    }
+
+    /**
+     * Run a simulated request and add its elapsed time and allocated bytes to the total.
+     * @param total elapsed time(ns) and allocated bytes. Bytes are -1 per request if the JVM does not tell.
+     * @param request simulated request
+     */
+    protected static void measure(long[] total, Runnable request) {
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        request.run();
+        total[0] += System.nanoTime() - start;
+        total[1] += allocated < 0 ? -1 : allocatedBytes() - allocated;
+    }
+
+    /**
+     * Log the totals of two variants per request.
+     * @param subject what is measured
+     * @param baselineName name of the baseline variant
+     * @param baseline totals of the baseline variant
+     * @param name name of the measured variant
+     * @param measured totals of the measured variant
+     */
+    protected void logPerRequest(String subject, String baselineName, long[] baseline, String name,
+            long[] measured) {
+        Logger log = LoggerFactory.getLogger(getClass());
+        log.info(String.format("%s per request: %s %d ns / %d bytes, %s %d ns / %d bytes", subject,
+                baselineName, baseline[0] / BENCHMARK_REQUESTS, baseline[1] / BENCHMARK_REQUESTS,
+                name, measured[0] / BENCHMARK_REQUESTS, measured[1] / BENCHMARK_REQUESTS));
+    }
+
+    /**
+     * @return bytes allocated by the current thread, or -1 if the JVM does not tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
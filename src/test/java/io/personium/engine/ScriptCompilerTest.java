@@ -0,0 +1,239 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.engine.model.ScriptCache;
+import io.personium.engine.model.ScriptSource;
+import io.personium.engine.utils.PersoniumEngineConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * ScriptCompiler unit test.
+ */
+@Category({Unit.class })
+public class ScriptCompilerTest {
+
+    private static final int REQUESTS = 8;
+
+    private ExecutorService executor;
+
+    /**
+     * Start request threads.
+     */
+    @Before
+    public void before() {
+        executor = Executors.newFixedThreadPool(REQUESTS);
+    }
+
+    /**
+     * Stop request threads and restore the configuration.
+     */
+    @After
+    public void after() {
+        executor.shutdownNow();
+        PersoniumEngineConfig.reload();
+    }
+
+    /**
+     * Concurrent requests for the same script share one read of the source and one compilation.
+     * @throws Exception exception
+     */
+    @Test
+    public void concurrentRequestsShareOneCompilation() throws Exception {
+        ScriptCache compiled = new ScriptCache(null, null);
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger compilations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        long deduplicated = ScriptCompiler.getDeduplicatedCount();
+
+        List<Future<ScriptCache>> results = submit("shared", () -> {
+            reads.incrementAndGet();
+            return ScriptSource.of("source");
+        }, source -> {
+            compilations.incrementAndGet();
+            pause(release);
+            return compiled;
+        });
+        awaitWaiters(deduplicated);
+        release.countDown();
+
+        for (Future<ScriptCache> result : results) {
+            assertSame(compiled, result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, reads.get());
+        assertEquals(1, compilations.get());
+        assertEquals(deduplicated + REQUESTS - 1, ScriptCompiler.getDeduplicatedCount());
+    }
+
+    /**
+     * A missing source is reported to every waiting request.
+     * @throws Exception exception
+     */
+    @Test
+    public void missingSourceIsReportedToAllWaiters() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        long deduplicated = ScriptCompiler.getDeduplicatedCount();
+
+        List<Future<ScriptCache>> results = submit("missing", () -> {
+            pause(release);
+            throw new PersoniumEngineException("404 Not Found", PersoniumEngineException.STATUSCODE_NOTFOUND);
+        }, source -> {
+            throw new IllegalStateException();
+        });
+        awaitWaiters(deduplicated);
+        release.countDown();
+
+        for (Future<ScriptCache> result : results) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals(PersoniumEngineException.STATUSCODE_NOTFOUND,
+                        ((PersoniumEngineException) e.getCause()).getStatusCode());
+            }
+        }
+    }
+
+    /**
+     * Waiting requests give up after the script timeout, while the compilation goes on.
+     * @throws Exception exception
+     */
+    @Test
+    public void waitersTimeOut() throws Exception {
+        PersoniumEngineConfig.getProperties().setProperty(
+                PersoniumEngineConfig.Engine.SCRIPT_CONNECTION_TIMEOUT, "100");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ScriptCache compiled = new ScriptCache(null, null);
+        Future<ScriptCache> running = executor.submit(() -> ScriptCompiler.compile("slow",
+                () -> ScriptSource.of("source"), source -> {
+                    started.countDown();
+                    pause(release);
+                    return compiled;
+                }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        try {
+            ScriptCompiler.compile("slow", () -> ScriptSource.of("source"), source -> compiled);
+            fail();
+        } catch (PersoniumEngineException e) {
+            assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+        } finally {
+            release.countDown();
+        }
+        assertSame(compiled, running.get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A failed compilation is reported to every waiting request, and the next request compiles again.
+     * @throws Exception exception
+     */
+    @Test
+    public void failureIsReportedToAllWaiters() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        long deduplicated = ScriptCompiler.getDeduplicatedCount();
+        long failed = ScriptCompiler.getFailedCount();
+
+        List<Future<ScriptCache>> results = submit("failing", () -> ScriptSource.of("source"), source -> {
+            pause(release);
+            throw new PersoniumEngineException("Server Error", PersoniumEngineException.STATUSCODE_SERVER_ERROR);
+        });
+        awaitWaiters(deduplicated);
+        release.countDown();
+
+        for (Future<ScriptCache> result : results) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof PersoniumEngineException);
+            }
+        }
+        assertEquals(failed + 1, ScriptCompiler.getFailedCount());
+
+        ScriptCache compiled = new ScriptCache(null, null);
+        assertSame(compiled, ScriptCompiler.compile("failing", () -> ScriptSource.of("source"), source -> compiled));
+    }
+
+    /**
+     * A recompilation of the changed source does not join the compilation in progress,
+     * which may have read the source before the change. Requests arriving later wait for the recompilation.
+     * @throws Exception exception
+     */
+    @Test
+    public void recompilationDoesNotJoin() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ScriptCache old = new ScriptCache(null, null);
+        Future<ScriptCache> running = executor.submit(() -> ScriptCompiler.compile("updated",
+                () -> ScriptSource.of("old"), source -> {
+                    started.countDown();
+                    pause(release);
+                    return old;
+                }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        ScriptCache updated = new ScriptCache(null, null);
+        assertSame(updated, ScriptCompiler.recompile("updated", () -> ScriptSource.of("new"), source -> updated));
+        release.countDown();
+        assertSame(old, running.get(10, TimeUnit.SECONDS));
+    }
+
+    private List<Future<ScriptCache>> submit(String key, ScriptCompiler.SourceReader reader,
+            ScriptCompiler.Compilation compilation) {
+        List<Future<ScriptCache>> results = new ArrayList<Future<ScriptCache>>();
+        for (int i = 0; i < REQUESTS; i++) {
+            results.add(executor.submit(() -> ScriptCompiler.compile(key, reader, compilation)));
+        }
+        return results;
+    }
+
+    private static void pause(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void awaitWaiters(long deduplicated) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (ScriptCompiler.getDeduplicatedCount() < deduplicated + REQUESTS - 1
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
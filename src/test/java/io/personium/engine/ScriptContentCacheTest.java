@@ -0,0 +1,87 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+import io.personium.engine.model.ScriptSource;
+import io.personium.test.categories.Unit;
+
+/**
+ * ScriptContentCache unit test.
+ */
+@Category({Unit.class })
+public class ScriptContentCacheTest {
+
+    private static final String SOURCE = "fn_jsgi = function(request) { return 'cell'; };";
+
+    private Context cx;
+
+    /**
+     * Enter Rhino context.
+     */
+    @Before
+    public void before() {
+        cx = PersoniumJsContextFactory.getShared().enterThreadContext();
+    }
+
+    /**
+     * Exit Rhino context.
+     */
+    @After
+    public void after() {
+        cx.setOptimizationLevel(-1);
+        Context.exit();
+    }
+
+    /**
+     * Identical sources share one compiled script.
+     */
+    @Test
+    public void identicalSourcesShareScript() {
+        String source = SOURCE + "// shared";
+        long hits = ScriptContentCache.getHitCount();
+        Script cell1 = ScriptContentCache.compile(cx, ScriptSource.of(source), null);
+        Script cell2 = ScriptContentCache.compile(cx, ScriptSource.of(new String(source)), null);
+        assertSame(cell1, cell2);
+        assertEquals(hits + 1, ScriptContentCache.getHitCount());
+
+        assertNotSame(cell1, ScriptContentCache.compile(cx, ScriptSource.of(SOURCE), null));
+        assertNotSame(cell1, ScriptContentCache.compile(cx, ScriptSource.of(source), "module"));
+    }
+
+    /**
+     * Scripts compiled at another optimization level are not shared.
+     */
+    @Test
+    public void otherOptimizationLevelIsNotShared() {
+        Script interpreted = ScriptContentCache.compile(cx, ScriptSource.of(SOURCE), null);
+        cx.setOptimizationLevel(9);
+        Script compiled = ScriptContentCache.compile(cx, ScriptSource.of(SOURCE), null);
+        assertNotSame(interpreted, compiled);
+        assertSame(compiled, ScriptContentCache.compile(cx, ScriptSource.of(SOURCE), null));
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.engine.model.ScriptSource;
+import io.personium.engine.utils.PersoniumEngineConfig;
+import io.personium.test.categories.Benchmark;
+import io.personium.test.categories.Unit;
+
+/**
+ * ScriptDiskCache unit test.
+ */
+@Category({Unit.class })
+public class ScriptDiskCacheTest {
+    /** Logger Object. */
+    private static Logger log = LoggerFactory.getLogger(ScriptDiskCacheTest.class);
+
+    /** Number of simulated restarts in the benchmark. */
+    private static final int BENCHMARK_RESTARTS = 20;
+
+    private static final String SOURCE = "var f = function(a) { return [a].map(function(v) { return v * 2; })[0]; };"
+            + " f(21);";
+
+    /** Cache directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context cx;
+
+    /**
+     * Enable the disk cache and enter Rhino context.
+     */
+    @Before
+    public void before() {
+        PersoniumEngineConfig.getProperties().setProperty(
+                PersoniumEngineConfig.Engine.SCRIPT_DISK_CACHE_ENABLED, "true");
+        PersoniumEngineConfig.getProperties().setProperty(
+                PersoniumEngineConfig.Engine.SCRIPT_DISK_CACHE_DIR, folder.getRoot().getPath());
+        cx = PersoniumJsContextFactory.getShared().enterThreadContext();
+    }
+
+    /**
+     * Exit Rhino context and restore the configuration.
+     */
+    @After
+    public void after() {
+        cx.setOptimizationLevel(-1);
+        Context.exit();
+        PersoniumEngineConfig.reload();
+    }
+
+    /**
+     * Scripts compiled to JVM bytecode are read back from the disk.
+     */
+    @Test
+    public void compiledScriptIsReadFromDisk() {
+        cx.setOptimizationLevel(9);
+        Script compiled = ScriptDiskCache.compile(cx, ScriptSource.of(SOURCE), "test");
+        assertEquals(1, folder.getRoot().listFiles().length);
+
+        long hits = ScriptDiskCache.getHitCount();
+        Script read = ScriptDiskCache.compile(cx, ScriptSource.of(SOURCE), "test");
+        assertEquals(hits + 1, ScriptDiskCache.getHitCount());
+        assertNotSame(compiled, read);
+        assertEquals(compiled.getClass().getName(), read.getClass().getName());
+        assertEquals(42, ((Number) read.exec(cx, cx.initStandardObjects())).intValue());
+    }
+
+    /**
+     * Interpreted scripts are not stored.
+     */
+    @Test
+    public void interpretedScriptIsNotStored() {
+        Script script = ScriptDiskCache.compile(cx, ScriptSource.of(SOURCE), "test");
+        assertEquals(0, folder.getRoot().listFiles().length);
+        assertEquals(42, ((Number) script.exec(cx, cx.initStandardObjects())).intValue());
+    }
+
+    /**
+     * A script too large for bytecode is run by the interpreter, also when the disk cache is disabled.
+     */
+    @Test
+    public void tooLargeForBytecodeIsInterpretedWithoutDiskCache() {
+        PersoniumEngineConfig.getProperties().setProperty(
+                PersoniumEngineConfig.Engine.SCRIPT_DISK_CACHE_ENABLED, "false");
+        StringBuilder source = new StringBuilder("var x = 0;\n");
+        for (int i = 0; i < 20000; i++) {
+            source.append("x = x + 1;\n");
+        }
+        source.append("x;");
+        cx.setOptimizationLevel(9);
+        try {
+            Script script = ScriptDiskCache.compile(cx, ScriptSource.of(source.toString()), "test");
+            assertEquals(20000, ((Number) script.exec(cx, cx.initStandardObjects())).intValue());
+        } finally {
+            cx.setOptimizationLevel(-1);
+        }
+    }
+
+    /**
+     * An unreadable entry is replaced by a newly compiled script.
+     * @throws Exception exception
+     */
+    @Test
+    public void unreadableEntryIsRecompiled() throws Exception {
+        cx.setOptimizationLevel(9);
+        ScriptDiskCache.compile(cx, ScriptSource.of(SOURCE), "test");
+        File[] entries = folder.getRoot().listFiles();
+        assertEquals(1, entries.length);
+        Files.write(entries[0].toPath(), new byte[] {1, 2, 3});
+
+        long hits = ScriptDiskCache.getHitCount();
+        Script script = ScriptDiskCache.compile(cx, ScriptSource.of(SOURCE), "test");
+        assertEquals(hits, ScriptDiskCache.getHitCount());
+        assertEquals(42, ((Number) script.exec(cx, cx.initStandardObjects())).intValue());
+        assertTrue(entries[0].length() > 3);
+    }
+
+    /**
+     * An entry failing authentication is removed and replaced by a newly compiled script, without being defined.
+     * @throws Exception exception
+     */
+    @Test
+    public void tamperedEntryIsRecompiled() throws Exception {
+        cx.setOptimizationLevel(9);
+        ScriptDiskCache.compile(cx, ScriptSource.of(SOURCE), "test");
+        File entry = folder.getRoot().listFiles()[0];
+        byte[] written = Files.readAllBytes(entry.toPath());
+
+        // Another secret, as if the entry was written by someone without the unit secret.
+        PersoniumEngineConfig.getProperties().setProperty(PersoniumEngineConfig.Security.TOKEN_SECRET_KEY,
+                "0123456789abcdef");
+        long hits = ScriptDiskCache.getHitCount();
+        Script script = ScriptDiskCache.compile(cx, ScriptSource.of(SOURCE), "test");
+        assertEquals(hits, ScriptDiskCache.getHitCount());
+        assertEquals(42, ((Number) script.exec(cx, cx.initStandardObjects())).intValue());
+        assertFalse(Arrays.equals(written, Files.readAllBytes(entry.toPath())));
+
+        // A modified class.
+        written = Files.readAllBytes(entry.toPath());
+        written[written.length / 2] ^= 1;
+        Files.write(entry.toPath(), written);
+        ScriptDiskCache.compile(cx, ScriptSource.of(SOURCE), "test");
+        assertEquals(hits, ScriptDiskCache.getHitCount());
+    }
+
+    /**
+     * Scripts of sources encrypted at rest are not stored.
+     */
+    @Test
+    public void encryptedSourceIsNotStored() {
+        cx.setOptimizationLevel(9);
+        Script script = ScriptDiskCache.compile(cx, ScriptSource.of(SOURCE).asEncrypted(), "test");
+        assertEquals(0, folder.getRoot().listFiles().length);
+        assertEquals(42, ((Number) script.exec(cx, cx.initStandardObjects())).intValue());
+    }
+
+    /**
+     * The least recently used entries are removed when the size bound is exceeded.
+     * @throws Exception exception
+     */
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws Exception {
+        File dir = folder.getRoot();
+        for (int i = 0; i < 4; i++) {
+            File entry = new File(dir, "entry" + i);
+            Files.write(entry.toPath(), new byte[100]);
+            entry.setLastModified(1000000L * (i + 1));
+        }
+        ScriptDiskCache.evict(dir, 250);
+        assertFalse(new File(dir, "entry0").exists());
+        assertFalse(new File(dir, "entry1").exists());
+        assertTrue(new File(dir, "entry2").exists());
+        assertTrue(new File(dir, "entry3").exists());
+    }
+
+    /**
+     * Benchmark of compiling personium-lib.js to JVM bytecode after a restart, with and without the disk cache.
+     * @throws Exception exception
+     */
+    @Test
+    @Category({Benchmark.class })
+    public void benchmarkDiskCache() throws Exception {
+        String source;
+        try (Reader reader = new InputStreamReader(
+                getClass().getResourceAsStream("/js-lib/personium-lib.js"), StandardCharsets.UTF_8)) {
+            source = IOUtils.toString(reader);
+        }
+        cx.setOptimizationLevel(9);
+        ScriptDiskCache.compile(cx, ScriptSource.of(source), "bench");
+        long compile = 0;
+        long read = 0;
+        for (int i = 0; i < BENCHMARK_RESTARTS; i++) {
+            long start = System.nanoTime();
+            cx.compileString(source, "bench", 1, null);
+            compile += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ScriptDiskCache.compile(cx, ScriptSource.of(source), "bench");
+            read += System.nanoTime() - start;
+        }
+        log.info(String.format("personium-lib.js compiled to bytecode: compile %d ns, disk cache %d ns",
+                compile / BENCHMARK_RESTARTS, read / BENCHMARK_RESTARTS));
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+import io.personium.engine.model.ScriptCache;
+import io.personium.engine.model.ScriptSource;
+import io.personium.test.categories.Unit;
+
+/**
+ * ScriptPromoter unit test.
+ */
+@Category({Unit.class })
+public class ScriptPromoterTest extends RhinoTestBase {
+
+    private static final String SOURCE = "var f = function(a) { return a * 2; }; f(21);";
+
+    /**
+     * A script becomes hot when one of the thresholds is crossed.
+     */
+    @Test
+    public void scriptBecomesHotAtEitherThreshold() {
+        ScriptCache cache = new ScriptCache(cx.compileString(SOURCE, "test", 1, null), null, -1);
+        assertFalse(ScriptPromoter.isHot(cache, 2, 1000));
+        cache.recordExecution(1);
+        cache.recordExecution(1);
+        assertTrue(ScriptPromoter.isHot(cache, 2, 1000));
+
+        cache = new ScriptCache(cx.compileString(SOURCE, "test", 1, null), null, -1);
+        cache.recordExecution(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertTrue(ScriptPromoter.isHot(cache, 2, 1000));
+    }
+
+    /**
+     * The promoted script replaces the interpreted one and gives the same result.
+     */
+    @Test
+    public void promotionSwapsInCompiledScript() {
+        Script interpreted = cx.compileString(SOURCE, "test", 1, null);
+        ScriptCache cache = new ScriptCache(interpreted, null, -1, SOURCE.length(), null);
+        int[] resized = new int[1];
+        cache.setPromotableSource(() -> ScriptSource.of(SOURCE), ScriptSource.of(SOURCE).contentKey(), "test",
+                () -> resized[0]++);
+        long interpretedSize = cache.getEstimatedSize();
+        assertTrue(cache.beginPromotion());
+        assertFalse(cache.beginPromotion());
+        assertEquals(ScriptCache.Tier.PROMOTING, cache.getTier());
+        assertSame(interpreted, cache.getScript());
+
+        ScriptPromoter.promote(cache, 9);
+        assertEquals(ScriptCache.Tier.OPTIMIZED, cache.getTier());
+        assertEquals(9, cache.getCurrentOptimizationLevel());
+        assertEquals(-1, cache.getOptimizationLevel());
+        assertNotSame(interpreted, cache.getScript());
+        assertFalse(cache.isPromotable());
+        assertTrue(cache.getEstimatedSize() > interpretedSize);
+        assertEquals(1, resized[0]);
+
+        Scriptable scope = cx.initStandardObjects();
+        assertEquals(42, ((Number) cache.getScript().exec(cx, scope)).intValue());
+    }
+
+    /**
+     * A script that cannot be recompiled stays in its tier.
+     */
+    @Test
+    public void failedPromotionKeepsScript() {
+        Script interpreted = cx.compileString(SOURCE, "test", 1, null);
+        ScriptCache cache = new ScriptCache(interpreted, null, -1);
+        cache.setPromotableSource(() -> ScriptSource.of("var = ;"), ScriptSource.of("var = ;").contentKey(),
+                "test", null);
+        assertTrue(cache.beginPromotion());
+
+        ScriptPromoter.promote(cache, 9);
+        assertEquals(ScriptCache.Tier.FAILED, cache.getTier());
+        assertSame(interpreted, cache.getScript());
+        assertFalse(cache.beginPromotion());
+    }
+
+    /**
+     * The source is read again for the promotion, and a source changed since compiled is not promoted.
+     */
+    @Test
+    public void sourceIsReadAgainForPromotion() {
+        Script interpreted = cx.compileString(SOURCE, "test", 1, null);
+        ScriptCache cache = new ScriptCache(interpreted, null, -1);
+        int[] reads = new int[1];
+        cache.setPromotableSource(() -> {
+            reads[0]++;
+            return ScriptSource.of("var f = function(a) { return a * 3; }; f(21);");
+        }, ScriptSource.of(SOURCE).contentKey(), "test", null);
+        assertEquals(0, reads[0]);
+        assertTrue(cache.beginPromotion());
+
+        ScriptPromoter.promote(cache, 9);
+        assertEquals(1, reads[0]);
+        assertEquals(ScriptCache.Tier.FAILED, cache.getTier());
+        assertSame(interpreted, cache.getScript());
+        assertFalse(cache.isPromotable());
+    }
+
+    /**
+     * A script Rhino produced by the interpreter is recorded at level -1, whatever level was requested.
+     */
+    @Test
+    public void interpretedScriptIsRecordedAtInterpreterLevel() {
+        assertEquals(-1, ScriptPromoter.producedLevel(cx.compileString(SOURCE, "test", 1, null), 9));
+        cx.setOptimizationLevel(9);
+        assertEquals(9, ScriptPromoter.producedLevel(cx.compileString(SOURCE, "test", 1, null), 9));
+    }
+}
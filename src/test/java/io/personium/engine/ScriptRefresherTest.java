@@ -0,0 +1,128 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.ScriptableObject;
+
+import io.personium.engine.model.ScriptCache;
+import io.personium.engine.model.ScriptSource;
+import io.personium.engine.source.ISourceManager;
+import io.personium.test.categories.Unit;
+
+/**
+ * ScriptRefresher unit test.
+ */
+@Category({Unit.class })
+public class ScriptRefresherTest {
+
+    /**
+     * A changed script is removed from the cache and compiled again from the current source.
+     * @throws Exception exception
+     */
+    @Test
+    public void changedScriptIsRecompiled() throws Exception {
+        Map<String, ScriptCache> cache = new ConcurrentHashMap<String, ScriptCache>();
+        SourceManager sourceManager = new SourceManager(cache);
+        cache.put("/col/__src/hello.js", new ScriptCache(null, null));
+        ScriptRefresher.register(sourceManager, "hello.js", null, "var result = ", "");
+
+        sourceManager.source = "2";
+        new ScriptRefresher(cache).changed("/col", "/col/__src/hello.js");
+        assertTrue(sourceManager.cached.await(10, TimeUnit.SECONDS));
+
+        ScriptCache refreshed = cache.get("/col/__src/hello.js");
+        assertNotNull(refreshed.getScript());
+        Context cx = PersoniumJsContextFactory.getShared().enterThreadContext();
+        try {
+            ScriptableObject scope = cx.initStandardObjects();
+            refreshed.getScript().exec(cx, scope);
+            assertEquals(2, ((Number) scope.get("result", scope)).intValue());
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Source manager of a watched collection at /col.
+     */
+    private static final class SourceManager implements ISourceManager {
+        private final Map<String, ScriptCache> cache;
+        private final CountDownLatch cached = new CountDownLatch(1);
+        private volatile String source;
+
+        SourceManager(Map<String, ScriptCache> cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public String getServiceSubject() {
+            return "engine";
+        }
+
+        @Override
+        public String getScriptNameForServicePath(String servicePath) {
+            return servicePath;
+        }
+
+        @Override
+        public int getOptimizationLevel() {
+            return -1;
+        }
+
+        @Override
+        public String getCacheKey(String sourceName) {
+            return "/col/__src/" + sourceName;
+        }
+
+        @Override
+        public boolean isWatched() {
+            return true;
+        }
+
+        @Override
+        public ScriptCache createCachedScript(Script script, String sourceName, int sourceLength,
+                Map<String, ScriptCache> userScriptCache) {
+            ScriptCache created = new ScriptCache(script, null, -1, sourceLength, null);
+            cache.put(getCacheKey(sourceName), created);
+            cached.countDown();
+            return created;
+        }
+
+        @Override
+        public ScriptCache getCachedScript(String sourceName, Map<String, ScriptCache> userScriptCache) {
+            return cache.get(getCacheKey(sourceName));
+        }
+
+        @Override
+        public ScriptSource getSource(String scriptFileName, String prefix, String suffix) {
+            return ScriptSource.of(prefix + source + suffix);
+        }
+    }
+}
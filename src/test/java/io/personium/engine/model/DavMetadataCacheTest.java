@@ -0,0 +1,196 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import io.personium.engine.PersoniumEngineException;
+import io.personium.engine.utils.PersoniumEngineConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * DavMetadataCache unit test.
+ */
+@Category({Unit.class })
+public class DavMetadataCacheTest {
+
+    /** Metadata of a service collection as written by personium-core. */
+    private static final String COLLECTION_META = "{\"i\":\"id\",\"t\":\"col.svc\",\"u\":1600000000000,"
+            + "\"a\":{\"ace\":[{\"principal\":{\"all\":null},\"grant\":{\"privilege\":[{\"exec\":null}]}}]},"
+            + "\"d\":{\"service@urn:x-personium:xmlns\":\"<service subject=\\\"engine\\\"/>\","
+            + "\"optimizationLevel@urn:x-personium:xmlns\":\"9\",\"other@urn:x\":\"x\"},\"p\":1500000000000}";
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The fields used by the engine are parsed.
+     * @throws Exception exception
+     */
+    @Test
+    public void parsesUsedFields() throws Exception {
+        File dir = folder.newFolder();
+        write(dir, COLLECTION_META);
+        DavMetadataCache.Metadata metadata = DavMetadataCache.get(dir.getPath());
+        assertEquals(Long.valueOf(1600000000000L), metadata.getUpdated());
+        assertNull(metadata.getEncryptionType());
+        assertEquals("<service subject=\"engine\"/>", metadata.getProperty(DavMetadataCache.PROP_SERVICE));
+        assertEquals("9", metadata.getProperty(DavMetadataCache.PROP_OPTIMIZATION_LEVEL));
+        assertNull(metadata.getProperty("other@urn:x"));
+
+        write(dir, "{\"u\":1,\"et\":\"AES/CBC/PKCS5Padding\",\"cl\":10}");
+        assertEquals("AES/CBC/PKCS5Padding", DavMetadataCache.get(dir.getPath()).getEncryptionType());
+    }
+
+    /**
+     * The file is read again only when it has changed.
+     * @throws Exception exception
+     */
+    @Test
+    public void reloadsChangedFile() throws Exception {
+        File dir = folder.newFolder();
+        File file = write(dir, "{\"u\":1}");
+        DavMetadataCache.Metadata first = DavMetadataCache.get(dir.getPath());
+        long loads = DavMetadataCache.getStats().get("loads");
+        assertSame(first, DavMetadataCache.get(dir.getPath()));
+        assertEquals(loads, (long) DavMetadataCache.getStats().get("loads"));
+
+        write(dir, "{\"u\":2}");
+        file.setLastModified(file.lastModified() + 1000);
+        DavMetadataCache.Metadata second = DavMetadataCache.get(dir.getPath());
+        assertNotSame(first, second);
+        assertEquals(Long.valueOf(2), second.getUpdated());
+    }
+
+    /**
+     * Broken files fail.
+     * @throws Exception exception
+     */
+    @Test
+    public void brokenFile() throws Exception {
+        File dir = folder.newFolder();
+        write(dir, "{\"u\":1");
+        try {
+            DavMetadataCache.get(dir.getPath());
+            fail();
+        } catch (PersoniumEngineException e) {
+            assertEquals(PersoniumEngineException.STATUSCODE_SERVER_ERROR, e.getStatusCode());
+        }
+    }
+
+    /**
+     * A missing file fails without waiting for the load timeout, and is remembered as missing.
+     * @throws Exception exception
+     */
+    @Test
+    public void missingFileFailsAtOnce() throws Exception {
+        PersoniumEngineConfig.getProperties().setProperty(
+                PersoniumEngineConfig.Engine.METADATA_CACHE_LOAD_TIMEOUT, "5000");
+        try {
+            File dir = folder.newFolder();
+            long start = System.nanoTime();
+            try {
+                DavMetadataCache.get(dir.getPath());
+                fail();
+            } catch (PersoniumEngineException e) {
+                assertEquals(PersoniumEngineException.STATUSCODE_SERVER_ERROR, e.getStatusCode());
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+            assertTrue(NegativeCache.isMissing(new File(dir, DavMetadataFile.DAV_META_FILE_NAME).getPath()));
+        } finally {
+            PersoniumEngineConfig.reload();
+        }
+    }
+
+    /**
+     * A file being written is served from its last version, and waited for only when there is none.
+     * @throws Exception exception
+     */
+    @Test
+    public void tornFileServesLastVersion() throws Exception {
+        File dir = folder.newFolder();
+        File file = write(dir, "{\"u\":1}");
+        DavMetadataCache.Metadata first = DavMetadataCache.get(dir.getPath());
+
+        write(dir, "{\"u\":2,");
+        file.setLastModified(System.currentTimeMillis());
+        long stale = DavMetadataCache.getStats().get("stale");
+        assertSame(first, DavMetadataCache.get(dir.getPath()));
+        assertEquals(stale + 1, (long) DavMetadataCache.getStats().get("stale"));
+
+        // broken for longer than the load timeout
+        file.setLastModified(System.currentTimeMillis() - 60000);
+        try {
+            DavMetadataCache.get(dir.getPath());
+            fail();
+        } catch (PersoniumEngineException e) {
+            assertEquals(PersoniumEngineException.STATUSCODE_SERVER_ERROR, e.getStatusCode());
+        }
+
+        write(dir, "{\"u\":2}");
+        file.setLastModified(System.currentTimeMillis() - 30000);
+        assertEquals(Long.valueOf(2), DavMetadataCache.get(dir.getPath()).getUpdated());
+    }
+
+    /**
+     * Without a last version, the file is read again until the load timeout.
+     * @throws Exception exception
+     */
+    @Test
+    public void brokenFileWithoutLastVersionIsWaitedFor() throws Exception {
+        PersoniumEngineConfig.getProperties().setProperty(
+                PersoniumEngineConfig.Engine.METADATA_CACHE_LOAD_TIMEOUT, "200");
+        try {
+            File dir = folder.newFolder();
+            write(dir, "{\"u\":1");
+            long start = System.nanoTime();
+            try {
+                DavMetadataCache.get(dir.getPath());
+                fail();
+            } catch (PersoniumEngineException e) {
+                assertEquals(PersoniumEngineException.STATUSCODE_SERVER_ERROR, e.getStatusCode());
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsed >= 200 && elapsed < 1000);
+        } finally {
+            PersoniumEngineConfig.reload();
+        }
+    }
+
+    private File write(File dir, String json) throws IOException {
+        File file = new File(dir, DavMetadataFile.DAV_META_FILE_NAME);
+        Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
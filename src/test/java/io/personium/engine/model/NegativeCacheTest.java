@@ -0,0 +1,133 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import io.personium.engine.PersoniumEngineException;
+import io.personium.engine.utils.PersoniumEngineConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * NegativeCache unit test.
+ */
+@Category({Unit.class })
+public class NegativeCacheTest {
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Restore the configuration.
+     */
+    @After
+    public void after() {
+        PersoniumEngineConfig.reload();
+    }
+
+    /**
+     * Missing resources are remembered until expired or invalidated.
+     * @throws Exception exception
+     */
+    @Test
+    public void missingUntilExpiredOrInvalidated() throws Exception {
+        String path = new File(folder.getRoot(), "missing").getPath();
+        assertFalse(NegativeCache.isMissing(path));
+        NegativeCache.putMissing(path);
+        assertTrue(NegativeCache.isMissing(path));
+        NegativeCache.invalidate(path);
+        assertFalse(NegativeCache.isMissing(path));
+
+        PersoniumEngineConfig.getProperties().setProperty(PersoniumEngineConfig.Engine.NEGATIVE_CACHE_TTL, "1");
+        NegativeCache.putMissing(path);
+        Thread.sleep(10);
+        assertFalse(NegativeCache.isMissing(path));
+
+        PersoniumEngineConfig.getProperties().setProperty(PersoniumEngineConfig.Engine.NEGATIVE_CACHE_TTL, "0");
+        NegativeCache.putMissing(path);
+        assertFalse(NegativeCache.isMissing(path));
+    }
+
+    /**
+     * A missing metafile is read again only after the resource is invalidated.
+     * @throws Exception exception
+     */
+    @Test
+    public void missingMetafileIsNotReadAgain() throws Exception {
+        File dir = new File(folder.getRoot(), "col");
+        try {
+            DavMetadataCache.get(dir.getPath());
+            fail();
+        } catch (PersoniumEngineException e) {
+            assertEquals(PersoniumEngineException.STATUSCODE_SERVER_ERROR, e.getStatusCode());
+        }
+        assertTrue(NegativeCache.isMissing(new File(dir, DavMetadataFile.DAV_META_FILE_NAME).getPath()));
+        assertFalse(NegativeCache.isMissing(dir.getPath()));
+
+        dir.mkdirs();
+        Files.write(new File(dir, DavMetadataFile.DAV_META_FILE_NAME).toPath(),
+                "{\"u\":1}".getBytes(StandardCharsets.UTF_8));
+        long start = System.nanoTime();
+        try {
+            DavMetadataCache.get(dir.getPath());
+            fail();
+        } catch (PersoniumEngineException e) {
+            // no retry
+            assertTrue(System.nanoTime() - start < 100000000L);
+        }
+        DavMetadataCache.invalidate(dir.getPath());
+        assertEquals(Long.valueOf(1), DavMetadataCache.get(dir.getPath()).getUpdated());
+    }
+
+    /**
+     * Files are remembered missing one by one, and forgotten together when their directory is invalidated.
+     * @throws Exception exception
+     */
+    @Test
+    public void filesOfResourceAreKeyedSeparately() throws Exception {
+        File dir = folder.newFolder("hello.js");
+        Files.write(new File(dir, DavMetadataFile.DAV_META_FILE_NAME).toPath(),
+                "{\"u\":1}".getBytes(StandardCharsets.UTF_8));
+        String content = new File(dir, "content").getPath();
+        String other = new File(folder.getRoot(), "other").getPath();
+        NegativeCache.putMissing(content);
+        NegativeCache.putMissing(other);
+
+        // The metafile is found although the content is missing.
+        assertEquals(Long.valueOf(1), DavMetadataCache.get(dir.getPath()).getUpdated());
+        assertTrue(NegativeCache.isMissing(content));
+
+        DavMetadataCache.invalidate(dir.getPath());
+        assertFalse(NegativeCache.isMissing(content));
+        assertTrue(NegativeCache.isMissing(other));
+        NegativeCache.invalidate(other);
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.test.categories.Benchmark;
+import io.personium.test.categories.Unit;
+
+/**
+ * ScriptCacheMap unit test.
+ */
+@Category({Unit.class })
+public class ScriptCacheMapTest {
+    /** Logger Object. */
+    private static Logger log = LoggerFactory.getLogger(ScriptCacheMapTest.class);
+
+    /** Estimated size of an interpreted script of 1000 characters. */
+    private static final long ENTRY_SIZE = ScriptCache.estimateSize(-1, 1000);
+
+    /** Number of lookups per thread in the benchmark. */
+    private static final int BENCHMARK_LOOKUPS = 1000000;
+
+    /**
+     * Entries are counted by their estimated size.
+     */
+    @Test
+    public void entriesAreBoundedByEstimatedSize() {
+        ScriptCacheMap cache = new ScriptCacheMap(ENTRY_SIZE * 10);
+        for (int i = 0; i < 30; i++) {
+            cache.put("script" + i, newEntry());
+        }
+        assertEquals(10, cache.size());
+        assertEquals(ENTRY_SIZE * 10, cache.getWeightedSize());
+        Map<String, Long> stats = cache.getStats();
+        assertEquals(20, stats.get("evictions") + stats.get("rejections"));
+
+        cache.remove(cache.keySet().iterator().next());
+        assertEquals(ENTRY_SIZE * 9, cache.getWeightedSize());
+    }
+
+    /**
+     * Entries are bounded by number as well, when maxEntries is set.
+     */
+    @Test
+    public void entriesAreBoundedByNumber() {
+        ScriptCacheMap cache = new ScriptCacheMap(Long.MAX_VALUE / 2, 10, Long.MAX_VALUE / 2, 0);
+        for (int i = 0; i < 30; i++) {
+            cache.put("script" + i, newEntry());
+        }
+        assertEquals(10, cache.size());
+        Map<String, Long> stats = cache.getStats();
+        assertEquals(20, stats.get("evictions") + stats.get("rejections"));
+    }
+
+    /**
+     * Frequently used scripts are kept, and scripts used once do not push them out.
+     */
+    @Test
+    public void frequentlyUsedEntriesSurviveScan() {
+        ScriptCacheMap cache = new ScriptCacheMap(ENTRY_SIZE * 10);
+        for (int i = 0; i < 5; i++) {
+            cache.put("hot" + i, newEntry());
+        }
+        for (int n = 0; n < 10; n++) {
+            for (int i = 0; i < 5; i++) {
+                assertNotNull(cache.get("hot" + i));
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            if (cache.get("cold" + i) == null) {
+                cache.put("cold" + i, newEntry());
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(cache.get("hot" + i));
+        }
+        assertTrue(cache.getStats().get("rejections") > 0);
+    }
+
+    /**
+     * Hits and misses are counted, and a replaced entry is returned.
+     */
+    @Test
+    public void hitsAndMissesAreCounted() {
+        ScriptCacheMap cache = new ScriptCacheMap(ENTRY_SIZE * 10);
+        ScriptCache first = newEntry();
+        assertNull(cache.get("script"));
+        cache.put("script", first);
+        assertSame(first, cache.get("script"));
+        assertSame(first, cache.put("script", newEntry()));
+        assertEquals(1L, (long) cache.getStats().get("hits"));
+        assertEquals(1L, (long) cache.getStats().get("misses"));
+        assertEquals(ENTRY_SIZE, cache.getWeightedSize());
+    }
+
+    /**
+     * An entry larger than the cache is not kept.
+     */
+    @Test
+    public void oversizedEntryIsRejected() {
+        ScriptCacheMap cache = new ScriptCacheMap(ENTRY_SIZE - 1);
+        cache.put("script", newEntry());
+        assertEquals(0, cache.size());
+        assertEquals(1L, (long) cache.getStats().get("rejections"));
+    }
+
+    /**
+     * A cell cannot hold more than its partition max size, and evicts its own entries beyond that.
+     */
+    @Test
+    public void noisyCellEvictsOwnEntries() {
+        ScriptCacheMap cache = new ScriptCacheMap(ENTRY_SIZE * 20, ENTRY_SIZE * 5, 0);
+        for (int i = 0; i < 5; i++) {
+            cache.put("quiet" + i, newEntry("quiet"));
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.put("noisy" + i, newEntry("noisy"));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(cache.get("quiet" + i));
+        }
+        Map<String, Map<String, Long>> stats = cache.getPartitionStats();
+        assertEquals(ENTRY_SIZE * 5, (long) stats.get("noisy").get("weightedSize"));
+        assertEquals(100L, (long) stats.get("noisy").get("loads"));
+        assertEquals(0L, (long) stats.get("quiet").get("evictions"));
+        assertEquals(5L, (long) stats.get("quiet").get("hits"));
+    }
+
+    /**
+     * Entries within the reserved size of a cell are not evicted for other cells.
+     */
+    @Test
+    public void reservedEntriesSurviveOtherCells() {
+        ScriptCacheMap cache = new ScriptCacheMap(ENTRY_SIZE * 10, ENTRY_SIZE * 10, ENTRY_SIZE * 2);
+        cache.put("quiet0", newEntry("quiet"));
+        cache.put("quiet1", newEntry("quiet"));
+        for (int i = 0; i < 2000; i++) {
+            if (cache.get("noisy" + i) == null) {
+                cache.put("noisy" + i, newEntry("noisy"));
+            }
+        }
+        assertTrue(cache.containsKey("quiet0"));
+        assertTrue(cache.containsKey("quiet1"));
+        assertTrue(cache.getWeightedSize() <= ENTRY_SIZE * 10);
+    }
+
+    /**
+     * Only cells holding entries have a partition.
+     */
+    @Test
+    public void partitionsAreKeptOnlyWhileHoldingEntries() {
+        ScriptCacheMap cache = new ScriptCacheMap(ENTRY_SIZE * 2, ENTRY_SIZE * 2, 0);
+        cache.put("large", new ScriptCache(null, null, -1, 100000, "rejected"));
+        assertTrue(cache.getPartitionStats().isEmpty());
+
+        cache.put("cell0", newEntry("cell0"));
+        cache.put("cell1", newEntry("cell1"));
+        assertEquals(2, cache.getPartitionStats().size());
+        cache.remove("cell0");
+        assertEquals(1, cache.getPartitionStats().size());
+
+        // Emptied by evictions for other cells.
+        for (int i = 0; i < 10 && cache.getPartitionStats().containsKey("cell1"); i++) {
+            for (int n = 0; n < 5; n++) {
+                cache.get("cell2_" + i);
+            }
+            cache.put("cell2_" + i, newEntry("cell2"));
+        }
+        assertEquals(Collections.singleton("cell2"), cache.getPartitionStats().keySet());
+        assertEquals(cache.getWeightedSize(), (long) cache.getPartitionStats().get("cell2").get("weightedSize"));
+    }
+
+    /**
+     * An entry promoted to bytecode is counted by its new size, and makes room for it.
+     */
+    @Test
+    public void promotedEntryIsReweighed() {
+        long compiledSize = ScriptCache.estimateSize(9, 1000);
+        ScriptCacheMap cache = new ScriptCacheMap(compiledSize + ENTRY_SIZE * 2 - 1);
+        ScriptCache promoted = newEntry();
+        cache.put("promoted", promoted);
+        for (int n = 0; n < 5; n++) {
+            cache.get("promoted");
+        }
+        cache.put("other0", newEntry());
+        cache.put("other1", newEntry());
+        assertEquals(ENTRY_SIZE * 3, cache.getWeightedSize());
+
+        promoted.completePromotion(null, 9);
+        assertEquals(compiledSize, promoted.getEstimatedSize());
+        cache.reweigh("promoted", promoted);
+        assertTrue(cache.containsKey("promoted"));
+        assertEquals(2, cache.size());
+        assertEquals(compiledSize + ENTRY_SIZE, cache.getWeightedSize());
+
+        // Not applied to another entry of the key.
+        cache.reweigh("other0", newEntry());
+        cache.reweigh("other1", newEntry());
+        assertEquals(compiledSize + ENTRY_SIZE, cache.getWeightedSize());
+    }
+
+    /**
+     * Benchmark of concurrent lookups, compared with the synchronized access-ordered LinkedHashMap.
+     * @throws Exception exception
+     */
+    @Test
+    @Category({Benchmark.class })
+    public void benchmarkConcurrentLookups() throws Exception {
+        ScriptCacheMap cache = new ScriptCacheMap(ENTRY_SIZE * 1000);
+        Map<String, ScriptCache> synchronizedMap = Collections.synchronizedMap(
+                new LinkedHashMap<String, ScriptCache>(16, 0.75f, true)); //CHECKSTYLE IGNORE 16, 0.75 is default.
+        for (int i = 0; i < 1000; i++) {
+            cache.put("script" + i, newEntry());
+            synchronizedMap.put("script" + i, newEntry());
+        }
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        // warm up
+        measureLookups(cache, threads);
+        measureLookups(synchronizedMap, threads);
+        log.info(String.format("%d threads: ScriptCacheMap %d ns, synchronized LinkedHashMap %d ns per lookup",
+                threads, measureLookups(cache, threads), measureLookups(synchronizedMap, threads)));
+    }
+
+    private long measureLookups(Map<String, ScriptCache> map, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < BENCHMARK_LOOKUPS; i++) {
+                        map.get("script" + random.nextInt(1000));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            return (System.nanoTime() - start) / BENCHMARK_LOOKUPS;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private ScriptCache newEntry() {
+        return newEntry(null);
+    }
+
+    private ScriptCache newEntry(String routingId) {
+        return new ScriptCache(null, null, -1, 1000, routingId);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.Context;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * ScriptSource unit test.
+ */
+@Category({Unit.class })
+public class ScriptSourceTest {
+
+    private static final String CONTENT = "function(request) { return 'こんにちは'; }";
+
+    /**
+     * The content is placed between the prefix and the suffix, whether the stream is shorter or longer than expected.
+     * @throws Exception exception
+     */
+    @Test
+    public void readBetweenPrefixAndSuffix() throws Exception {
+        byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+        String expected = "fn_jsgi = " + CONTENT + ";";
+        for (long size : new long[] {content.length, content.length + 16, 3, 0}) {
+            ScriptSource source = ScriptSource.read(new ByteArrayInputStream(content), size, "fn_jsgi = ", ";");
+            assertEquals(expected, source.getText());
+            assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, source.length());
+            assertEquals(ScriptSource.of(expected), source);
+            assertEquals(ScriptSource.of(expected).hashCode(), source.hashCode());
+            try (Reader reader = source.openReader()) {
+                assertEquals(expected, IOUtils.toString(reader));
+            }
+        }
+        assertNotEquals(ScriptSource.of(CONTENT), ScriptSource.of("fn_jsgi = " + CONTENT));
+    }
+
+    /**
+     * Directives are found in the directive prologue of the file content only.
+     * @throws Exception exception
+     */
+    @Test
+    public void directivePrologue() throws Exception {
+        String[] found = {"\"use shared\";", "'use shared'", "\uFEFF// module\n/* table */ \"use strict\";\n\"use shared\"\nvar a;",
+            "\"use shared\" // shared\nvar a;"};
+        for (String content : found) {
+            assertTrue(content, read(content).hasDirective("use shared"));
+        }
+        String[] notFound = {"", "var a = \"use shared\";", "\"use shared\" + a;", "\"use\\x20shared\";",
+            "\"use shared\n\";", "foo();\n\"use shared\";", "\"use shared2\";"};
+        for (String content : notFound) {
+            assertFalse(content, read(content).hasDirective("use shared"));
+        }
+    }
+
+    private ScriptSource read(String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return ScriptSource.read(new ByteArrayInputStream(bytes), bytes.length, "(function(exports) {", "\n})");
+    }
+
+    /**
+     * The script compiled from the reader is the same as the one compiled from the String.
+     * @throws Exception exception
+     */
+    @Test
+    public void compiledFromReader() throws Exception {
+        ScriptSource source = ScriptSource.read(new ByteArrayInputStream("21 * 2".getBytes(StandardCharsets.UTF_8)),
+                6, "var x = ", "; x");
+        Context cx = Context.enter();
+        try {
+            try (Reader reader = source.openReader()) {
+                Object result = cx.compileReader(reader, "test", 1, null).exec(cx, cx.initStandardObjects());
+                assertEquals(42, Context.toNumber(result), 0);
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+}
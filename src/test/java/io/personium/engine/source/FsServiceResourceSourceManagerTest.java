@@ -0,0 +1,120 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import io.personium.engine.PersoniumEngineException;
+import io.personium.engine.model.DavMetadataFile;
+import io.personium.engine.utils.PersoniumEngineConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * FsServiceResourceSourceManager unit test.
+ */
+@Category({Unit.class })
+public class FsServiceResourceSourceManagerTest {
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Repeated misses do not extend the negative cache entry, so a source created later is found after the TTL.
+     * @throws Exception exception
+     */
+    @Test
+    public void repeatedMissesExpireAfterTtl() throws Exception {
+        PersoniumEngineConfig.getProperties().setProperty(PersoniumEngineConfig.Engine.NEGATIVE_CACHE_TTL, "500");
+        try {
+            File dir = folder.newFolder();
+            write(dir, collectionMeta(null));
+            FsServiceResourceSourceManager sourceManager = new FsServiceResourceSourceManager(dir.getPath(), "cell");
+
+            long start = System.nanoTime();
+            assertNotFound(sourceManager);
+            File sourceDir = new File(dir, "__src" + File.separator + "hello.js");
+            sourceDir.mkdirs();
+            write(sourceDir, "{\"u\":1}");
+            Files.write(new File(sourceDir, "content").toPath(), "1 + 1".getBytes(StandardCharsets.UTF_8));
+
+            // Still missing within the TTL, without extending it.
+            sleepUntil(start, 250);
+            assertNotFound(sourceManager);
+            sleepUntil(start, 600);
+            assertEquals("1 + 1", sourceManager.getSource("hello.js", "", "").getText());
+        } finally {
+            PersoniumEngineConfig.reload();
+        }
+    }
+
+    /**
+     * The optimization level property of the collection overrides the configured one.
+     * @throws Exception exception
+     */
+    @Test
+    public void optimizationLevelOfCollection() throws Exception {
+        File dir = folder.newFolder();
+        write(dir, collectionMeta(null));
+        assertEquals(PersoniumEngineConfig.getScriptOptimizationLevel(),
+                new FsServiceResourceSourceManager(dir.getPath(), "cell").getOptimizationLevel());
+
+        File compiled = folder.newFolder();
+        write(compiled, collectionMeta("9"));
+        assertEquals(9, new FsServiceResourceSourceManager(compiled.getPath(), "cell").getOptimizationLevel());
+    }
+
+    private String collectionMeta(String optimizationLevel) {
+        String props = "\"service@urn:x-personium:xmlns\":\"<service subject=\\\"engine\\\">"
+                + "<path name=\\\"hello\\\" src=\\\"hello.js\\\"/></service>\"";
+        if (optimizationLevel != null) {
+            props += ",\"optimizationLevel@urn:x-personium:xmlns\":\"" + optimizationLevel + "\"";
+        }
+        return "{\"u\":1,\"d\":{" + props + "}}";
+    }
+
+    private void assertNotFound(FsServiceResourceSourceManager sourceManager) {
+        try {
+            sourceManager.getSource("hello.js", "", "");
+            fail();
+        } catch (PersoniumEngineException e) {
+            assertEquals(PersoniumEngineException.STATUSCODE_NOTFOUND, e.getStatusCode());
+        }
+    }
+
+    private void sleepUntil(long start, long millis) throws InterruptedException {
+        long remaining = millis - (System.nanoTime() - start) / 1000000L;
+        if (remaining > 0) {
+            Thread.sleep(remaining);
+        }
+    }
+
+    private void write(File dir, String json) throws IOException {
+        Files.write(new File(dir, DavMetadataFile.DAV_META_FILE_NAME).toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -17,18 +17,37 @@
 package io.personium.engine.source;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
+import io.personium.test.categories.Benchmark;
 import io.personium.test.categories.Unit;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.glassfish.jersey.uri.UriTemplate;
 import org.junit.experimental.categories.Category;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * FilenameResolver Unit Test.
  */
 @Category({Unit.class})
 public class PathResolverTest {
+    /** Logger. */
+    private static Logger log = LoggerFactory.getLogger(PathResolverTest.class);
+
+    /** Number of routes in the benchmark. */
+    private static final int BENCHMARK_ROUTES = 500;
+    /** Number of resolutions in the benchmark. */
+    private static final int BENCHMARK_RESOLUTIONS = 20000;
+
     /**
      * Test for static path resolver
      */
@@ -101,4 +120,129 @@ public class PathResolverTest {
         }
     
     }
-}
\ No newline at end of file
+
+    /**
+     * Test for template variables captured by the route
+     */
+    @Test
+    public void WhetherPathResolverCapturesPathParams() throws Exception {
+        PathResolverByURITemplate resolver = new PathResolverByURITemplate();
+        resolver.registerRoute("users/{userId}/boxes/{ box }", "box.js");
+        resolver.registerRoute("files/{id: \\d+}.json", "file.js");
+        resolver.registerRoute("{a}/{a}", "same.js");
+
+        Map<String, String> params = new HashMap<>();
+        assertEquals("box.js", resolver.resolve("users/u1/boxes/b1", params));
+        assertEquals(2, params.size());
+        assertEquals("u1", params.get("userId"));
+        assertEquals("b1", params.get("box"));
+
+        params.clear();
+        assertEquals("file.js", resolver.resolve("files/12.json", params));
+        assertEquals("12", params.get("id"));
+
+        params.clear();
+        assertEquals("same.js", resolver.resolve("x/x", params));
+        assertEquals("x", params.get("a"));
+        assertEquals(null, resolver.resolve("x/y", params));
+    }
+
+    /**
+     * Test that the compiled routes resolve as the UriTemplates in the registration order
+     */
+    @Test
+    public void WhetherPathResolverResolvesAsUriTemplates() throws Exception {
+        String[] routes = {"a", "a/", "/a", "a/b", "{x}", "{x}/b", "a/{y}", "{x}/{y}", "a//b", "{x}/b/",
+            "a.b", "a b", "a%20b", "{x: [0-9]+}", "a{x}", "{x}/{y}/c", "a/b/{z}", "b/{x}/c", "{x}/{x}"};
+        String[] paths = {"", "a", "a/", "/a", "a/b", "b", "b/b", "a/c", "c/d", "a//b", "b/b/", "a.b", "axb",
+            "a b", "a%20b", "12", "abc", "x/y/c", "a/b/c", "b/x/c", "a/b/c/d", "/", "//", "a/b/"};
+        Random random = new Random(1);
+        for (int n = 0; n < 200; n++) {
+            PathResolverByURITemplate resolver = new PathResolverByURITemplate();
+            List<String> registered = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                String route = routes[random.nextInt(routes.length)];
+                resolver.registerRoute(route, route);
+                registered.add(route);
+            }
+            for (String path : paths) {
+                String expected = null;
+                Map<String, String> expectedParams = new HashMap<>();
+                for (String route : registered) {
+                    if (new UriTemplate(route).match(path, expectedParams)) {
+                        expected = route;
+                        break;
+                    }
+                    expectedParams.clear();
+                }
+                Map<String, String> params = new HashMap<>();
+                assertEquals(registered + " " + path, expected, resolver.resolve(path, params));
+                assertEquals(registered + " " + path, expectedParams, params);
+            }
+        }
+    }
+
+    /**
+     * Test that every route of a large route set is resolved
+     */
+    @Test
+    public void WhetherPathResolverResolvesLargeRouteSet() throws Exception {
+        PathResolverByURITemplate resolver = new PathResolverByURITemplate();
+        for (int i = 0; i < BENCHMARK_ROUTES; i++) {
+            resolver.registerRoute("api" + i + "/items/{id}/detail", i + ".js");
+        }
+        for (int i = 0; i < BENCHMARK_ROUTES; i++) {
+            Map<String, String> params = new HashMap<>();
+            assertEquals(i + ".js", resolver.resolve("api" + i + "/items/" + (i * 7) + "/detail", params));
+            assertEquals(String.valueOf(i * 7), params.get("id"));
+        }
+        assertNull(resolver.resolve("api" + BENCHMARK_ROUTES + "/items/1/detail"));
+    }
+
+    /**
+     * Benchmark of a large route set, compared with matching the UriTemplates one by one.
+     */
+    @Test
+    @Category({Benchmark.class})
+    public void benchmarkLargeRouteSet() throws Exception {
+        PathResolverByURITemplate resolver = new PathResolverByURITemplate();
+        List<UriTemplate> templates = new ArrayList<>();
+        for (int i = 0; i < BENCHMARK_ROUTES; i++) {
+            String route = "api" + i + "/items/{id}/detail";
+            resolver.registerRoute(route, i + ".js");
+            templates.add(new UriTemplate(route));
+        }
+        String[] paths = new String[BENCHMARK_ROUTES];
+        for (int i = 0; i < BENCHMARK_ROUTES; i++) {
+            paths[i] = "api" + i + "/items/" + i + "/detail";
+        }
+        // warm up
+        measureResolutions(resolver, templates, paths, true);
+        measureResolutions(resolver, templates, paths, false);
+        long compiled = measureResolutions(resolver, templates, paths, true);
+        long linear = measureResolutions(resolver, templates, paths, false);
+        log.info(String.format("%d routes: compiled %d ns, UriTemplate scan %d ns per resolution",
+                BENCHMARK_ROUTES, compiled, linear));
+    }
+
+    private long measureResolutions(PathResolverByURITemplate resolver, List<UriTemplate> templates,
+            String[] paths, boolean compiled) {
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < BENCHMARK_RESOLUTIONS; i++) {
+            String path = paths[i % paths.length];
+            if (compiled) {
+                found += resolver.resolve(path) == null ? 0 : 1;
+            } else {
+                for (UriTemplate template : templates) {
+                    if (template.match(path, new HashMap<String, String>())) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+        }
+        assertEquals(BENCHMARK_RESOLUTIONS, found);
+        return (System.nanoTime() - start) / BENCHMARK_RESOLUTIONS;
+    }
+}
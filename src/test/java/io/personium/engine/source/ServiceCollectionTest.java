@@ -0,0 +1,130 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import io.personium.engine.PersoniumEngineException;
+import io.personium.engine.model.DavMetadataCache;
+import io.personium.engine.model.DavMetadataFile;
+import io.personium.test.categories.Unit;
+
+/**
+ * ServiceCollection unit test.
+ */
+@Category({Unit.class })
+public class ServiceCollectionTest {
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The service definition is parsed once and shared while the metadata is unchanged.
+     * @throws Exception exception
+     */
+    @Test
+    public void sharedWhileUnchanged() throws Exception {
+        File dir = folder.newFolder();
+        write(dir, 1, "<service subject=\\\"engine\\\"><path name=\\\"hello\\\" src=\\\"hello.js\\\"/></service>");
+        ServiceCollection collection = get(dir);
+        assertEquals("engine", collection.getServiceSubject());
+        assertEquals("hello.js", collection.getPathResolver().resolve("hello"));
+        assertNull(collection.getPathResolver().resolve("other"));
+        assertNull(collection.getOptimizationLevel());
+        assertSame(collection, get(dir));
+
+        File meta = write(dir, 2, "<service subject=\\\"engine2\\\"><path name=\\\"other\\\" src=\\\"other.js\\\"/>"
+                + "</service>");
+        meta.setLastModified(meta.lastModified() + 1000);
+        ServiceCollection changed = get(dir);
+        assertNotSame(collection, changed);
+        assertEquals("engine2", changed.getServiceSubject());
+        assertEquals("other.js", changed.getPathResolver().resolve("other"));
+    }
+
+    /**
+     * Collections without the service property are not found, until the property is set.
+     * @throws Exception exception
+     */
+    @Test
+    public void missingServiceProperty() throws Exception {
+        File dir = folder.newFolder();
+        Files.write(new File(dir, DavMetadataFile.DAV_META_FILE_NAME).toPath(),
+                "{\"u\":1,\"d\":{}}".getBytes(StandardCharsets.UTF_8));
+        long loads = ServiceCollection.getStats().get("loads");
+        for (int i = 0; i < 2; i++) {
+            try {
+                get(dir);
+                fail();
+            } catch (PersoniumEngineException e) {
+                assertEquals(PersoniumEngineException.STATUSCODE_NOTFOUND, e.getStatusCode());
+            }
+        }
+        // the error is cached as well
+        assertEquals(loads + 1, (long) ServiceCollection.getStats().get("loads"));
+
+        File meta = write(dir, 2, "<service subject=\\\"engine\\\"/>");
+        meta.setLastModified(meta.lastModified() + 1000);
+        assertEquals("engine", get(dir).getServiceSubject());
+    }
+
+    /**
+     * The optimization level property is read from its XML fragment, and ignored when invalid.
+     * @throws Exception exception
+     */
+    @Test
+    public void optimizationLevelProperty() throws Exception {
+        String[] values = {"<optimizationLevel xmlns=\\\"urn:x-personium:xmlns\\\">9</optimizationLevel>", " 0 ", "-1",
+            "<optimizationLevel xmlns=\\\"urn:x-personium:xmlns\\\">10</optimizationLevel>", "fast", "-2"};
+        Integer[] expected = {9, 0, -1, null, null, null};
+        for (int i = 0; i < values.length; i++) {
+            File dir = folder.newFolder();
+            String json = "{\"u\":1,\"d\":{\"" + DavMetadataCache.PROP_SERVICE
+                    + "\":\"<service subject=\\\"engine\\\"/>\",\"" + DavMetadataCache.PROP_OPTIMIZATION_LEVEL
+                    + "\":\"" + values[i] + "\"}}";
+            Files.write(new File(dir, DavMetadataFile.DAV_META_FILE_NAME).toPath(),
+                    json.getBytes(StandardCharsets.UTF_8));
+            assertEquals(values[i], expected[i], get(dir).getOptimizationLevel());
+        }
+    }
+
+    private ServiceCollection get(File dir) throws PersoniumEngineException {
+        return ServiceCollection.get(dir.getPath(), DavMetadataCache.get(dir.getPath()));
+    }
+
+    private File write(File dir, long updated, String service) throws IOException {
+        File file = new File(dir, DavMetadataFile.DAV_META_FILE_NAME);
+        String json = "{\"u\":" + updated + ",\"d\":{\"" + DavMetadataCache.PROP_SERVICE + "\":\"" + service + "\"}}";
+        Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import io.personium.engine.model.DavMetadataCache;
+import io.personium.engine.model.DavMetadataFile;
+import io.personium.engine.utils.PersoniumEngineConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * ServiceSourceWatcher unit test.
+ */
+@Category({Unit.class })
+public class ServiceSourceWatcherTest {
+
+    /** Max time(sec) to wait for a change to be detected. */
+    private static final long CHANGE_TIMEOUT = 10;
+
+    /** Changed directories notified to the listener. */
+    private static final BlockingQueue<String> CHANGES = new LinkedBlockingQueue<String>();
+
+    static {
+        ServiceSourceWatcher.addListener(new ServiceSourceWatcher.Listener() {
+            @Override
+            public void changed(String collectionPath, String dir) {
+                CHANGES.add(dir);
+            }
+
+            @Override
+            public void unwatched(String collectionPath) {
+            }
+        });
+    }
+
+    /** Service collection directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Enable the watcher.
+     */
+    @Before
+    public void before() {
+        PersoniumEngineConfig.getProperties().setProperty(PersoniumEngineConfig.Engine.SCRIPT_WATCH_ENABLED, "true");
+        PersoniumEngineConfig.getProperties().setProperty(
+                PersoniumEngineConfig.Engine.SCRIPT_WATCH_POLL_INTERVAL, "200");
+        CHANGES.clear();
+    }
+
+    /**
+     * Restore the configuration.
+     */
+    @After
+    public void after() {
+        PersoniumEngineConfig.reload();
+    }
+
+    /**
+     * Changes of the watched sources invalidate the metadata and are notified.
+     * @throws Exception exception
+     */
+    @Test
+    public void changesAreNotified() throws Exception {
+        File collection = folder.getRoot();
+        write(collection, DavMetadataFile.DAV_META_FILE_NAME, "{\"u\":1,\"d\":{}}");
+        File source = new File(collection, "__src/hello.js");
+        source.mkdirs();
+        write(source, DavMetadataFile.DAV_META_FILE_NAME, "{\"u\":1}");
+        write(source, "content", "function(request) {}");
+
+        assertTrue(ServiceSourceWatcher.watch(collection.getPath()));
+        assertTrue(ServiceSourceWatcher.isWatched(collection.getPath()));
+        assertEquals(Long.valueOf(1), DavMetadataCache.getUnchecked(source.getPath()).getUpdated());
+
+        File meta = write(source, DavMetadataFile.DAV_META_FILE_NAME, "{\"u\":22}");
+        meta.setLastModified(meta.lastModified() + 1000);
+        assertTrue(awaitChange(source));
+        assertEquals(Long.valueOf(22), DavMetadataCache.getUnchecked(source.getPath()).getUpdated());
+
+        File added = new File(collection, "__src/added.js");
+        added.mkdirs();
+        write(added, DavMetadataFile.DAV_META_FILE_NAME, "{\"u\":1}");
+        assertTrue(awaitChange(added));
+    }
+
+    /**
+     * Missing collections are not watched.
+     */
+    @Test
+    public void missingCollectionIsNotWatched() {
+        String path = new File(folder.getRoot(), "missing").getPath();
+        assertFalse(ServiceSourceWatcher.watch(path));
+        assertFalse(ServiceSourceWatcher.isWatched(path));
+    }
+
+    /**
+     * Nothing is watched when disabled.
+     */
+    @Test
+    public void disabled() {
+        PersoniumEngineConfig.getProperties().setProperty(PersoniumEngineConfig.Engine.SCRIPT_WATCH_ENABLED, "false");
+        assertFalse(ServiceSourceWatcher.watch(folder.getRoot().getPath()));
+    }
+
+    /**
+     * Wait for a change of the directory. A write may be notified more than once.
+     */
+    private boolean awaitChange(File dir) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CHANGE_TIMEOUT);
+        String changed;
+        while ((changed = CHANGES.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+            if (changed.equals(dir.getPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private File write(File dir, String name, String content) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.source;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.common.file.DataCryptor;
+import io.personium.test.categories.Benchmark;
+import io.personium.test.categories.Unit;
+
+/**
+ * SourceCryptor unit test.
+ */
+@Category({Unit.class })
+public class SourceCryptorTest {
+    /** Logger. */
+    private static Logger log = LoggerFactory.getLogger(SourceCryptorTest.class);
+
+    /** Key of 16 bytes. */
+    private static final String KEY = "0123456789abcdef";
+
+    /** Sizes of the files in the benchmark. */
+    private static final int[] BENCHMARK_SIZES = {1024, 64 * 1024, 1024 * 1024};
+    /** Bytes decoded for each size in the benchmark. */
+    private static final long BENCHMARK_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Set the keys.
+     */
+    @BeforeClass
+    public static void beforeClass() {
+        DataCryptor.setKeyString(KEY);
+    }
+
+    /**
+     * Files encrypted by DataCryptor are decrypted, also while another stream of the thread is open.
+     * @throws Exception exception
+     */
+    @Test
+    public void decodesAsDataCryptor() throws Exception {
+        byte[] plain = random(10000);
+        byte[] cellA = encode(plain, "cellA");
+        byte[] cellB = encode(plain, "cell-b-with-a-long-routing-id");
+        try (InputStream a = SourceCryptor.decode(new ByteArrayInputStream(cellA), "cellA",
+                DataCryptor.ENCRYPTION_TYPE_AES)) {
+            assertArrayEquals(plain, IOUtils.toByteArray(SourceCryptor.decode(new ByteArrayInputStream(cellB),
+                    "cell-b-with-a-long-routing-id", DataCryptor.ENCRYPTION_TYPE_AES)));
+            assertArrayEquals(plain, IOUtils.toByteArray(a));
+        }
+        assertArrayEquals(plain, IOUtils.toByteArray(SourceCryptor.decode(new ByteArrayInputStream(cellA), "cellA",
+                DataCryptor.ENCRYPTION_TYPE_AES)));
+        assertArrayEquals(plain, IOUtils.toByteArray(SourceCryptor.decode(new ByteArrayInputStream(plain), "cellA",
+                DataCryptor.ENCRYPTION_TYPE_NONE)));
+        assertArrayEquals(plain, IOUtils.toByteArray(SourceCryptor.decode(new ByteArrayInputStream(plain), "cellA",
+                null)));
+    }
+
+    /**
+     * Benchmark of decode throughput, compared with DataCryptor created for each file.
+     * @throws Exception exception
+     */
+    @Test
+    @Category({Benchmark.class })
+    public void benchmarkDecode() throws Exception {
+        for (int size : BENCHMARK_SIZES) {
+            byte[] plain = random(size);
+            byte[] encrypted = encode(plain, "cellA");
+            // warm up
+            measure(encrypted, DataCryptor.ENCRYPTION_TYPE_AES, true);
+            measure(encrypted, DataCryptor.ENCRYPTION_TYPE_AES, false);
+            log.info(String.format("%d bytes: encrypted %d MB/s (DataCryptor %d MB/s), plain %d MB/s", size,
+                    measure(encrypted, DataCryptor.ENCRYPTION_TYPE_AES, true),
+                    measure(encrypted, DataCryptor.ENCRYPTION_TYPE_AES, false),
+                    measure(plain, DataCryptor.ENCRYPTION_TYPE_NONE, true)));
+        }
+    }
+
+    /**
+     * @return MB per second
+     */
+    private long measure(byte[] file, String encryptionType, boolean sourceCryptor) throws IOException {
+        byte[] buffer = new byte[8192];
+        long start = System.nanoTime();
+        for (long decoded = 0; decoded < BENCHMARK_BYTES; decoded += file.length) {
+            InputStream in = new ByteArrayInputStream(file);
+            try (InputStream decoder = sourceCryptor ? SourceCryptor.decode(in, "cellA", encryptionType)
+                    : new DataCryptor("cellA").decode(in, encryptionType)) {
+                while (decoder.read(buffer) >= 0) {
+                    continue;
+                }
+            }
+        }
+        return BENCHMARK_BYTES * 1000 / (System.nanoTime() - start);
+    }
+
+    private static byte[] encode(byte[] plain, String fsRoutingId) throws IOException {
+        return IOUtils.toByteArray(new DataCryptor(fsRoutingId).encode(new ByteArrayInputStream(plain), true));
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
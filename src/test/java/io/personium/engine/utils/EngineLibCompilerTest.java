@@ -0,0 +1,92 @@
+/**
+ * Personium
+ * Copyright 2014-2021 - Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.engine.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.ScriptableObject;
+
+import io.personium.engine.RhinoTestBase;
+import io.personium.test.categories.Benchmark;
+import io.personium.test.categories.Unit;
+
+/**
+ * EngineLibCompiler unit test.
+ */
+@Category({Unit.class })
+public class EngineLibCompilerTest extends RhinoTestBase {
+
+    /**
+     * Library names are mapped to class names.
+     */
+    @Test
+    public void libNameIsMappedToClassName() {
+        assertEquals("io.personium.engine.lib.PersoniumDao", EngineLibCompiler.toClassName("personium-dao"));
+        assertEquals("io.personium.engine.lib.JsgiLib", EngineLibCompiler.toClassName("jsgi-lib"));
+    }
+
+    /**
+     * The library is precompiled into a Script class at build time.
+     * @throws Exception exception
+     */
+    @Test
+    public void precompiledLibIsEvaluated() throws Exception {
+        Object precompiled = Class.forName(EngineLibCompiler.toClassName("personium-dao"))
+                .getDeclaredConstructor().newInstance();
+        assertTrue(precompiled instanceof Script);
+        ScriptableObject scope = cx.initStandardObjects();
+        ((Script) precompiled).exec(cx, scope);
+        assertEquals("object", cx.evaluateString(scope, "typeof _p", "test", 1, null));
+    }
+
+    /**
+     * Benchmark of evaluating personium-dao.js per request, interpreted and precompiled.
+     * @throws Exception exception
+     */
+    @Test
+    @Category({Benchmark.class })
+    public void benchmarkPrecompiledLibInitialisation() throws Exception {
+        Script precompiled = (Script) Class.forName(EngineLibCompiler.toClassName("personium-dao"))
+                .getDeclaredConstructor().newInstance();
+
+        Script interpreted;
+        try (Reader reader = new InputStreamReader(
+                getClass().getResourceAsStream("/js-lib/personium-dao.js"), StandardCharsets.UTF_8)) {
+            interpreted = cx.compileReader(reader, "/js-lib/personium-dao.js", 1, null);
+        }
+
+        long[] interpretedTotal = new long[2];
+        long[] precompiledTotal = new long[2];
+        for (int i = 0; i < BENCHMARK_REQUESTS; i++) {
+            ScriptableObject scope = cx.initStandardObjects();
+            measure(interpretedTotal, () -> interpreted.exec(cx, scope));
+
+            ScriptableObject precompiledScope = cx.initStandardObjects();
+            measure(precompiledTotal, () -> precompiled.exec(cx, precompiledScope));
+        }
+        logPerRequest("personium-dao.js evaluation", "interpreted", interpretedTotal, "precompiled",
+                precompiledTotal);
+    }
+}